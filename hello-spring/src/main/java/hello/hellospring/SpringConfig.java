@@ -3,7 +3,11 @@ package hello.hellospring;
 import hello.hellospring.aop.TimeTraceApp;
 import hello.hellospring.repository.*;
 import hello.hellospring.service.MemberService;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.aspectj.AspectJExpressionPointcut;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -50,9 +54,20 @@ public class SpringConfig {
 
 
     // AOP 같은 경우, Config에 등록해서 쓰는게 알아보기 더 쉽기 때문에 선호
-//    @Bean
-//    public TimeTraceApp timeTraceApp(){
-//        return new TimeTraceApp();
-//    }
+    // timetrace.sample-every : N 번 호출에 1 번 꼴로 측정 (1 이면 전부)
+    // Advisor 는 다른 빈보다 먼저 만들어지므로 static 으로 (SpringConfig -> 리포지토리를 일찍 만들지 않도록)
+    @Bean
+    public static TimeTraceApp timeTraceApp(@Value("${timetrace.sample-every:1}") int sampleEvery){
+        return new TimeTraceApp(sampleEvery);
+    }
+
+    // 측정 결과를 보여주는 컨트롤러는 측정 대상에서 뺀다
+    @Bean
+    public static Advisor timeTraceAdvisor(TimeTraceApp timeTraceApp){
+        AspectJExpressionPointcut pointcut = new AspectJExpressionPointcut();
+        pointcut.setExpression("execution(* hello.hellospring..*(..))"
+                + " && !within(hello.hellospring.controller.TimeTraceController)");
+        return new DefaultPointcutAdvisor(pointcut, timeTraceApp);
+    }
 
 }
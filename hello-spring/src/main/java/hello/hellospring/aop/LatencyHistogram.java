@@ -0,0 +1,88 @@
+package hello.hellospring.aop;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+*   실행 시간(나노초) 분포 - HdrHistogram 과 같은 방식의 로그-선형 구간
+*   2배 구간마다 32칸으로 나눠서 오차는 최대 약 3% (1ms 를 기록하면 1ms ~ 1.03ms 사이 값으로 나옴)
+*   약 68초(2^36 ns) 보다 긴 값은 마지막 칸에 넣는다.
+*   배열은 생성할 때 한 번만 만들고, record 는 카운터만 올리므로 객체를 만들지 않는다.
+* */
+public class LatencyHistogram {
+
+    // 0 ~ 63ns 는 1ns 단위, 그 위로는 2배 구간마다 32칸
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_HALF = 1 << SUB_BUCKET_BITS;
+    private static final long SUB_BUCKET_MASK = (1L << (SUB_BUCKET_BITS + 1)) - 1;
+    private static final int MAX_MAGNITUDE = 36;
+    private static final long MAX_VALUE = (1L << MAX_MAGNITUDE) - 1;
+    private static final int BUCKETS = MAX_MAGNITUDE - SUB_BUCKET_BITS;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray((BUCKETS + 1) * SUB_BUCKET_HALF);
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.incrementAndGet(indexOf(value));
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /* 상위 (1 - quantile) 경계값 (ex. 0.99 -> p99), 기록이 없으면 0 */
+    public long percentile(double quantile) {
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueAt(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        max.set(0);
+    }
+
+    static int indexOf(long value) {
+        int bucket = 63 - Long.numberOfLeadingZeros(value | SUB_BUCKET_MASK) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> bucket);
+        return (bucket + 1) * SUB_BUCKET_HALF + subBucket - SUB_BUCKET_HALF;
+    }
+
+    // 칸에 들어가는 가장 큰 값
+    static long highestValueAt(int index) {
+        int bucket = Math.max(0, index / SUB_BUCKET_HALF - 1);
+        long subBucket = index - (long) bucket * SUB_BUCKET_HALF;
+        return ((subBucket + 1) << bucket) - 1;
+    }
+}
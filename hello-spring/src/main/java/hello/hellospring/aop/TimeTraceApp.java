@@ -1,27 +1,81 @@
 package hello.hellospring.aop;
 
-import org.aspectj.lang.ProceedingJoinPoint;
-import org.aspectj.lang.annotation.Around;
-import org.aspectj.lang.annotation.Aspect;
-import org.springframework.stereotype.Component;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 /*
 *   AOP의 장점 : 핵심 관심사항 <=> 공통 관심사항 분리
 *   핵심 관심사항을 깔끔하게 유지 가능하고, 변경도 여기서만 변경 가능
 *   원하는 적용대상을 선택할 수 있음
+*
+*   메서드별 실행 시간 분포 (결과는 GET /timetrace 에서 p50/p99/p999)
+*   - 호출마다 콘솔에 찍으면 System.out 의 동기화된 출력이 모든 요청을 줄 세우기 때문에 기록만 한다.
+*   - @Around(ProceedingJoinPoint) 는 호출마다 JoinPoint 객체를 만들어서 MethodInterceptor 로 직접 구현
+*     (적용 대상(pointcut)은 SpringConfig 에서 등록)
+*   - 메서드마다 히스토그램은 처음 호출될 때 한 번만 만들고, 그 뒤로는 조회 + 카운터 증가만 한다.
+*   - sampleEvery 가 N 이면 N 번에 1 번 꼴로만 측정한다. (나머지는 시간도 재지 않음)
 * */
-@Aspect
-@Component
-public class TimeTraceApp {
-    @Around("execution(* hello.hellospring..*(..))")
-    public Object execute(ProceedingJoinPoint joinPoint) throws Throwable {
-        long start = System.currentTimeMillis();
-        System.out.println("start : " +joinPoint.toString());
-        try{
-            return joinPoint.proceed();
+public class TimeTraceApp implements MethodInterceptor {
+
+    private final ConcurrentHashMap<Method, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final int sampleEvery;
+
+    public TimeTraceApp(int sampleEvery) {
+        if (sampleEvery < 1) {
+            throw new IllegalArgumentException("sampleEvery 는 1 이상이어야 합니다: " + sampleEvery);
+        }
+        this.sampleEvery = sampleEvery;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (sampleEvery > 1 && ThreadLocalRandom.current().nextInt(sampleEvery) != 0) {
+            return invocation.proceed();
+        }
+        LatencyHistogram histogram = histogramOf(invocation.getMethod());
+        long start = System.nanoTime();
+        try {
+            return invocation.proceed();
         } finally {
-            long finish = System.currentTimeMillis();
-            long timeMs = finish - start;
-            System.out.println("end : " +joinPoint.toString()+ " " + timeMs + "Ms");
+            histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    public List<LatencyHistogram> getHistograms() {
+        List<LatencyHistogram> result = new ArrayList<>(histograms.values());
+        result.sort(Comparator.comparing(LatencyHistogram::getName));
+        return result;
+    }
+
+    public void reset() {
+        histograms.values().forEach(LatencyHistogram::reset);
+    }
+
+    private LatencyHistogram histogramOf(Method method) {
+        LatencyHistogram histogram = histograms.get(method);
+        if (histogram == null) {
+            histogram = histograms.computeIfAbsent(method, m -> new LatencyHistogram(signature(m)));
+        }
+        return histogram;
+    }
+
+    // ex) MemberService.join(Member)
+    private static String signature(Method method) {
+        StringBuilder sb = new StringBuilder(method.getDeclaringClass().getSimpleName())
+                .append('.').append(method.getName()).append('(');
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(parameterTypes[i].getSimpleName());
         }
+        return sb.append(')').toString();
     }
 }
@@ -0,0 +1,86 @@
+package hello.hellospring.controller;
+
+import hello.hellospring.aop.LatencyHistogram;
+import hello.hellospring.aop.TimeTraceApp;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// TimeTraceApp 이 모은 메서드별 실행 시간 (단위 : 마이크로초)
+@Controller
+public class TimeTraceController {
+
+    private final TimeTraceApp timeTraceApp;
+
+    @Autowired
+    public TimeTraceController(TimeTraceApp timeTraceApp) {
+        this.timeTraceApp = timeTraceApp;
+    }
+
+    @GetMapping("/timetrace")
+    @ResponseBody
+    public List<MethodLatency> latencies(){
+        List<MethodLatency> result = new ArrayList<>();
+        for (LatencyHistogram histogram : timeTraceApp.getHistograms()) {
+            result.add(new MethodLatency(histogram));
+        }
+        return result;
+    }
+
+    @DeleteMapping("/timetrace")
+    @ResponseBody
+    public void reset(){
+        timeTraceApp.reset();
+    }
+
+    static class MethodLatency {
+        private final String method;
+        private final long count;
+        private final double p50;
+        private final double p99;
+        private final double p999;
+        private final double max;
+
+        MethodLatency(LatencyHistogram histogram) {
+            this.method = histogram.getName();
+            this.count = histogram.getCount();
+            this.p50 = micros(histogram.percentile(0.5));
+            this.p99 = micros(histogram.percentile(0.99));
+            this.p999 = micros(histogram.percentile(0.999));
+            this.max = micros(histogram.getMax());
+        }
+
+        private static double micros(long nanos) {
+            return Math.round(nanos / 100.0) / 10.0;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getP50() {
+            return p50;
+        }
+
+        public double getP99() {
+            return p99;
+        }
+
+        public double getP999() {
+            return p999;
+        }
+
+        public double getMax() {
+            return max;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package hello.hellospring.aop;
+
+import hello.hellospring.domain.Member;
+import hello.hellospring.repository.MemoryMemberRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.AspectJExpressionPointcut;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void 구간_경계값() {
+        // 64ns 까지는 1ns 단위, 그 위는 약 3% 이내
+        for (long value : new long[]{0, 1, 63, 64, 65, 1_000, 1_000_000, 123_456_789, 60_000_000_000L}) {
+            long highest = LatencyHistogram.highestValueAt(LatencyHistogram.indexOf(value));
+            assertThat(highest).isGreaterThanOrEqualTo(value);
+            assertThat(highest - value).isLessThanOrEqualTo(Math.max(0, value / 32));
+        }
+    }
+
+    @Test
+    public void 백분위수() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        // 1us ~ 1000us 고르게
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1_000L);
+        }
+
+        assertThat(histogram.getCount()).isEqualTo(1000);
+        assertThat(histogram.percentile(0.5)).isBetween(500_000L, 516_000L);
+        assertThat(histogram.percentile(0.99)).isBetween(990_000L, 1_000_000L);
+        assertThat(histogram.percentile(0.999)).isBetween(999_000L, 1_000_000L);
+        assertThat(histogram.getMax()).isEqualTo(1_000_000L);
+
+        histogram.reset();
+        assertThat(histogram.getCount()).isZero();
+        assertThat(histogram.percentile(0.99)).isZero();
+    }
+
+    @Test
+    public void 메서드별로_기록() {
+        MemoryMemberRepository repository = new MemoryMemberRepository();
+        TimeTraceApp timeTraceApp = new TimeTraceApp(1);
+        AspectJExpressionPointcut pointcut = new AspectJExpressionPointcut();
+        pointcut.setExpression("execution(* hello.hellospring..*(..))");
+        ProxyFactory proxyFactory = new ProxyFactory(repository);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvisor(new DefaultPointcutAdvisor(pointcut, timeTraceApp));
+        MemoryMemberRepository proxy = (MemoryMemberRepository) proxyFactory.getProxy();
+
+        for (int i = 0; i < 10; i++) {
+            Member member = new Member();
+            member.setName("spring" + i);
+            proxy.save(member);
+        }
+        proxy.findAll();
+
+        List<LatencyHistogram> histograms = timeTraceApp.getHistograms();
+        assertThat(histograms).extracting(LatencyHistogram::getName)
+                .containsExactly("MemoryMemberRepository.findAll()", "MemoryMemberRepository.save(Member)");
+        assertThat(histograms).extracting(LatencyHistogram::getCount).containsExactly(1L, 10L);
+    }
+}
@@ -0,0 +1,98 @@
+package jpabook.jpashop.benchmark;
+
+import jpabook.jpashop.repository.support.NameIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 회원 100만 명 이름 검색 - 회원 id 후보를 찾는 비용 비교
+ * - scanStartsWith / scanContains : 모든 이름을 훑음 (like 'x%' / like '%x%' 전체 스캔에서 I/O 를 뺀 비용)
+ * - indexStartsWith               : 정렬 배열 이진 탐색
+ * - indexContains                 : 트라이그램 목록 교집합 (후보, 최종 확인은 쿼리의 like)
+ * - rename                        : MemberService.update 한 건 반영 (remove + add)
+ * ex) ./gradlew jmh -PjmhIncludes=MemberNameIndexBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MemberNameIndexBenchmark {
+
+    private static final String[] FAMILY = {"김", "이", "박", "최", "정", "강", "조", "윤", "장", "임",
+            "한", "오", "서", "신", "권", "황", "안", "송", "류", "홍"};
+    private static final String[] GIVEN = {"민", "서", "준", "예", "도", "윤", "지", "하", "현", "우",
+            "주", "연", "수", "은", "건", "아", "시", "유", "진", "원", "채", "태", "성", "재", "경",
+            "소", "혜", "영", "호", "빈", "나", "다", "린", "율", "온", "솔", "별", "찬", "결", "담"};
+
+    @Param({"1000000"})
+    int members;
+
+    String[] names;
+    NameIndex index;
+    String prefix;
+    String contains;
+    long renameId;
+    String renameFrom;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        long[] ids = new long[members];
+        names = new String[members];
+        for (int i = 0; i < members; i++) {
+            ids[i] = i + 1;
+            // 이름 + 동명이인 구분용 번호 (ex. 김민준0417)
+            names[i] = FAMILY[random.nextInt(FAMILY.length)] + GIVEN[random.nextInt(GIVEN.length)]
+                    + GIVEN[random.nextInt(GIVEN.length)] + String.format("%04d", random.nextInt(10000));
+        }
+        index = NameIndex.build(ids, names, members);
+
+        prefix = names[members / 2].substring(0, 4);
+        contains = names[members / 3].substring(1, 6);
+        renameId = members / 4 + 1;
+        renameFrom = names[members / 4];
+    }
+
+    @Benchmark
+    public List<Integer> scanStartsWith() {
+        List<Integer> found = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].startsWith(prefix)) {
+                found.add(i);
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public long[] indexStartsWith() {
+        return index.startingWith(prefix, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public List<Integer> scanContains() {
+        List<Integer> found = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].contains(contains)) {
+                found.add(i);
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public long[] indexContains() {
+        return index.containing(contains, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public void rename() {
+        index.remove(renameId, renameFrom);
+        index.add(renameId, renameFrom + "x");
+        index.remove(renameId, renameFrom + "x");
+        index.add(renameId, renameFrom);
+    }
+}
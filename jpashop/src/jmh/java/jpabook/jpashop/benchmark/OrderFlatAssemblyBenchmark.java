@@ -0,0 +1,68 @@
+package jpabook.jpashop.benchmark;
+
+import jpabook.jpashop.domain.item.Address;
+import jpabook.jpashop.domain.item.OrderStatus;
+import jpabook.jpashop.repository.order.query.OrderFlatDto;
+import jpabook.jpashop.repository.order.query.OrderFlatDtoAssembler;
+import jpabook.jpashop.repository.order.query.OrderItemQueryDto;
+import jpabook.jpashop.repository.order.query.OrderQueryDto;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.*;
+
+/**
+ * V6 플랫 조회 결과 조립 비교
+ * - hashGrouping       : 기존 방식, row 마다 OrderQueryDto key 를 만들어 HashMap 으로 묶음
+ * - sortMergeAssembler : order id 순으로 정렬된 row 를 한 번 훑으면서 조립 (OrderFlatDtoAssembler)
+ * gc 프로파일러의 gc.alloc.rate.norm 으로 op 당 할당량을 같이 본다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class OrderFlatAssemblyBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    int rows;
+
+    // 주문 하나당 주문상품 수
+    @Param({"3"})
+    int itemsPerOrder;
+
+    List<OrderFlatDto> flats;
+
+    @Setup
+    public void setUp() {
+        flats = new ArrayList<>(rows);
+        Address address = new Address("서울", "강가", "01234");
+        LocalDateTime orderDate = LocalDateTime.now();
+        for (int i = 0; i < rows; i++) {
+            long orderId = i / itemsPerOrder + 1;
+            flats.add(new OrderFlatDto(orderId, "member" + orderId, orderDate, OrderStatus.ORDER, address,
+                    "item" + (i % itemsPerOrder), 10000, 1));
+        }
+    }
+
+    @Benchmark
+    public List<OrderQueryDto> hashGrouping() {
+        return flats.stream()
+                .collect(groupingBy(o -> new OrderQueryDto(o.getOrderId(),
+                                o.getName(), o.getOrderDate(), o.getOrderStatus(), o.getAddress()),
+                        mapping(o -> new OrderItemQueryDto(o.getOrderId(),
+                                o.getItemName(), o.getOrderPrice(), o.getCount()), toList())
+                )).entrySet().stream()
+                .map(e -> new OrderQueryDto(e.getKey().getOrderId(),
+                        e.getKey().getName(), e.getKey().getOrderDate(), e.getKey().getOrderStatus(),
+                        e.getKey().getAddress(), e.getValue()))
+                .collect(toList());
+    }
+
+    @Benchmark
+    public List<OrderQueryDto> sortMergeAssembler() {
+        return OrderFlatDtoAssembler.assemble(flats);
+    }
+}
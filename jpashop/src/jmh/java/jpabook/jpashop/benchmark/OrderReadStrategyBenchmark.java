@@ -0,0 +1,185 @@
+package jpabook.jpashop.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jpabook.jpashop.JpashopApplication;
+import jpabook.jpashop.controller.OrderApiController;
+import jpabook.jpashop.domain.item.*;
+import jpabook.jpashop.monitoring.SqlStatementStats;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 주문 조회 V2~V6 (OrderApiController) 비교 - 같은 주문 그래프를 읽어서 JSON 으로 만들기까지
+ * - 처리량(ops/s), op 당 할당량(gc 프로파일러의 gc.alloc.rate.norm), op 당 SQL 문 수
+ * - SQL 문 수: 보조 카운터 statements(문장/s)를 같은 벤치마크의 점수(op/s)로 나눈 값 (JMH 결과표에 같이 나온다)
+ *
+ * 내장 H2(메모리, 같은 JVM)에 orders x itemsPerOrder 주문상품, distinctItems 종류의 상품을 넣고 실행한다.
+ * DB 왕복 비용이 거의 없으므로 실제 DB 에서는 SQL 문이 많은 방식(V2, V4)의 차이가 더 커진다.
+ * V1 은 엔티티를 그대로 직렬화하는 예제라(양방향 연관관계 무한루프, 상태 조건 없으면 결과 없음) 비교하지 않는다.
+ * ex) ./gradlew jmh -PjmhIncludes=OrderReadStrategyBenchmark
+ *     ./gradlew jmhJar && java -jar build/libs/jpashop-0.0.1-SNAPSHOT-jmh.jar OrderReadStrategyBenchmark -p orders=100,1000
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class OrderReadStrategyBenchmark {
+
+    @Param({"100", "1000"})
+    int orders;
+
+    @Param({"3"})
+    int itemsPerOrder;
+
+    @Param({"100"})
+    int distinctItems;
+
+    ConfigurableApplicationContext context;
+    OrderApiController controller;
+    ObjectMapper objectMapper;
+    TransactionTemplate readOnly;
+
+    @Setup
+    public void setUp() throws Exception {
+        // application.yml 보다 우선하도록 커맨드라인 인자로 넘긴다
+        context = new SpringApplicationBuilder(JpashopApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:order-read-benchmark;DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.hibernate.ddl-auto=create",
+                        "--spring.devtools.restart.enabled=false",
+                        "--jpashop.init-db.enabled=false",
+                        "--decorator.datasource.p6spy.enable-logging=false",
+                        "--logging.level.root=warn",
+                        "--logging.level.org.hibernate.SQL=off",
+                        "--logging.level.org.hibernate.type=off");
+        controller = context.getBean(OrderApiController.class);
+        objectMapper = context.getBean(ObjectMapper.class);
+        TransactionTemplate transactionTemplate = context.getBean(TransactionTemplate.class);
+        readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnly.setReadOnly(true);
+        seed(transactionTemplate, context.getBean(EntityManager.class));
+
+        // 모든 방식이 같은 주문을 돌려주는지 확인
+        List<Callable<Collection<?>>> strategies = List.of(controller::ordersV2, controller::ordersV3,
+                controller::ordersV4, controller::ordersV5, controller::ordersV6);
+        for (Callable<Collection<?>> strategy : strategies) {
+            int size = readOnly.execute(status -> call(strategy)).size();
+            if (size != orders) {
+                throw new IllegalStateException("expected " + orders + " orders but was " + size);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    /* 스레드별 SQL 문 수 (보조 카운터, JMH 가 반복마다 0 으로 되돌리고 결과표에 문장/s 로 낸다) */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Statements {
+        public long statements;
+    }
+
+    // 엔티티 -> DTO, 지연 로딩 (default_batch_fetch_size 로 IN 조회)
+    @Benchmark
+    public byte[] v2_dto(Statements statements) throws Exception {
+        return render(statements, controller::ordersV2);
+    }
+
+    // 컬렉션까지 페치 조인 + distinct
+    @Benchmark
+    public byte[] v3_fetchJoin(Statements statements) throws Exception {
+        return render(statements, controller::ordersV3);
+    }
+
+    // DTO 직접 조회, 주문마다 주문상품 조회 (1 + N)
+    @Benchmark
+    public byte[] v4_queryDto(Statements statements) throws Exception {
+        return render(statements, controller::ordersV4);
+    }
+
+    // DTO 직접 조회, 주문상품은 IN 조회로 한 번에
+    @Benchmark
+    public byte[] v5_queryDtoIn(Statements statements) throws Exception {
+        return render(statements, controller::ordersV5);
+    }
+
+    // 플랫 조인 1번 + 애플리케이션에서 조립
+    @Benchmark
+    public byte[] v6_flat(Statements statements) throws Exception {
+        return render(statements, controller::ordersV6);
+    }
+
+    // 컨트롤러와 같은 경로(조회 + DTO 변환)를 OSIV 대신 읽기 전용 트랜잭션 안에서 실행하고 JSON 으로 직렬화
+    private byte[] render(Statements counter, Callable<?> endpoint) throws Exception {
+        try (SqlStatementStats stats = SqlStatementStats.begin()) {
+            byte[] json = readOnly.execute(status -> {
+                try {
+                    return objectMapper.writeValueAsBytes(endpoint.call());
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            counter.statements += stats.getStatementCount();
+            return json;
+        }
+    }
+
+    private static <T> T call(Callable<T> callable) {
+        try {
+            return callable.call();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void seed(TransactionTemplate transactionTemplate, EntityManager em) {
+        Long[] itemIds = transactionTemplate.execute(status -> {
+            Long[] ids = new Long[distinctItems];
+            for (int i = 0; i < distinctItems; i++) {
+                Book book = new Book();
+                book.setName("BOOK-" + i);
+                book.setPrice(10000 + i * 100);
+                book.setStockQuantity(Integer.MAX_VALUE);
+                em.persist(book);
+                ids[i] = book.getId();
+            }
+            return ids;
+        });
+
+        int chunk = 500;
+        for (int from = 0; from < orders; from += chunk) {
+            int start = from;
+            int end = Math.min(orders, from + chunk);
+            transactionTemplate.executeWithoutResult(status -> {
+                for (int o = start; o < end; o++) {
+                    Member member = new Member();
+                    member.setName("member-" + o);
+                    member.setAddress(new Address("서울", "강가", String.valueOf(o)));
+                    em.persist(member);
+
+                    Delivery delivery = new Delivery();
+                    delivery.setAddress(member.getAddress());
+                    OrderItem[] orderItems = new OrderItem[itemsPerOrder];
+                    for (int i = 0; i < itemsPerOrder; i++) {
+                        Item item = em.getReference(Item.class, itemIds[(o * itemsPerOrder + i) % distinctItems]);
+                        orderItems[i] = OrderItem.createOrderItem(item, 10000, 1);
+                    }
+                    em.persist(Order.createOrder(member, delivery, orderItems));
+                }
+                em.flush();
+                em.clear();
+            });
+        }
+    }
+}
@@ -1,14 +1,20 @@
 package jpabook.jpashop;
 
 import jpabook.jpashop.domain.item.*;
+import jpabook.jpashop.repository.OrderRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
 
+/**
+ * 샘플 데이터 (회원 2, 상품 4, 주문 2) - jpashop.init-db.enabled=false 면 넣지 않는다 (벤치마크 등 데이터를 직접 넣을 때)
+ */
 @Component
+@ConditionalOnProperty(name = "jpashop.init-db.enabled", havingValue = "true", matchIfMissing = true)
 @RequiredArgsConstructor
 public class InitDB {
     private final InitService initService;
@@ -25,6 +31,7 @@ public class InitDB {
     @RequiredArgsConstructor
     static class InitService{
         private final EntityManager em;
+        private final OrderRepository orderRepository;
 
         public void dbInit1(){
             Member member = createMember("userA", "서울", "1", "1111");
@@ -39,7 +46,7 @@ public class InitDB {
             OrderItem orderItem1 = OrderItem.createOrderItem(book1, 10000, 1);
             OrderItem orderItem2 = OrderItem.createOrderItem(book2, 10000, 2);
             Order order = Order.createOrder(member, createDelivery(member), orderItem1, orderItem2);
-            em.persist(order);
+            orderRepository.save(order);
         }
 
         public void dbInit2(){
@@ -55,7 +62,7 @@ public class InitDB {
             OrderItem orderItem1 = OrderItem.createOrderItem(book1, 20000, 3);
             OrderItem orderItem2 = OrderItem.createOrderItem(book2, 40000, 4);
             Order order = Order.createOrder(member, delivery, orderItem1, orderItem2);
-            em.persist(order);
+            orderRepository.save(order);
         }
 
         private Member createMember(String name, String city, String street, String zipcode){
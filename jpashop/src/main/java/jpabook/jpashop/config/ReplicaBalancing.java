@@ -0,0 +1,18 @@
+package jpabook.jpashop.config;
+
+import java.util.Locale;
+
+/**
+ * 읽기 전용 트랜잭션을 어느 복제 DB 로 보낼지 (jpashop.datasource.replica-balancing)
+ */
+public enum ReplicaBalancing {
+    // 차례대로
+    ROUND_ROBIN,
+    // 사용 중인 커넥션이 가장 적은 곳 (느린 복제 DB 에 요청이 쌓이지 않도록)
+    LEAST_OUTSTANDING;
+
+    // round-robin, least-outstanding 형식도 허용
+    public static ReplicaBalancing of(String value) {
+        return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+}
@@ -0,0 +1,81 @@
+package jpabook.jpashop.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * jpashop.datasource.replica-urls 가 있으면 spring.datasource.url(원본) + 복제 DB 들로 DataSource 를 만든다.
+ * (없으면 스프링 부트 기본 DataSource 하나)
+ *
+ * 로컬에서 확인: H2 에 DB 를 하나 더 만들고 원본을 복사해서 (원본에서 script to 'x.sql', 복제에서 runscript from 'x.sql')
+ * --jpashop.datasource.replica-urls=jdbc:h2:tcp://localhost/~/jpashop-replica 로 실행
+ * 실제 복제가 없으므로 복사한 뒤에 원본에 쓴 데이터는 read-your-writes 시간이 지나면 읽기 전용 조회에서 보이지 않는다.
+ * 커넥션은 트랜잭션마다 다시 꺼낸다 (releaseConnectionAfterTransaction) - OSIV 를 켜도 읽기 다음 쓰기는 원본으로 간다.
+ */
+@Configuration
+@ConditionalOnProperty(name = "jpashop.datasource.replica-urls")
+public class ReplicaDataSourceConfig {
+
+    // p6spy(SQL 집계)는 이 빈을 감싼다
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(
+            DataSourceProperties properties, MeterRegistry meterRegistry,
+            @Value("${jpashop.datasource.replica-urls}") List<String> replicaUrls,
+            @Value("${jpashop.datasource.replica-balancing:round-robin}") String balancing,
+            @Value("${jpashop.datasource.read-your-writes-window-ms:1000}") long readYourWritesMillis,
+            @Value("${jpashop.datasource.pool-size:10}") int poolSize) {
+        HikariDataSource primary = pool("primary", properties.determineUrl(), properties, poolSize, meterRegistry);
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            replicas.add(pool("replica-" + (i + 1), replicaUrls.get(i).trim(), properties, poolSize, meterRegistry));
+        }
+        return new ReplicaRoutingDataSource(primary, replicas, ReplicaBalancing.of(balancing),
+                readYourWritesMillis, meterRegistry);
+    }
+
+    // 읽기 전용 여부는 트랜잭션을 시작한 뒤에 정해지므로 첫 문장을 실행할 때 커넥션을 꺼낸다
+    // p6spy 로 감싸면 p6spy 가 getMetaData 로 커넥션을 바로 꺼내므로 제외 (decorator.datasource.exclude-beans)
+    @Bean
+    @Primary
+    public DataSource lazyRoutingDataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    // 트랜잭션이 끝나면 커넥션을 돌려준다 (스프링 기본값은 EntityManager 를 닫을 때까지 들고 있음)
+    // OSIV 로 요청 내내 열려 있는 EntityManager 가 읽기 전용 트랜잭션의 복제 DB 커넥션을 들고 있으면
+    // 같은 요청의 다음 쓰기 트랜잭션이 그 커넥션으로 복제 DB 에 쓴다
+    @Bean
+    public HibernatePropertiesCustomizer releaseConnectionAfterTransaction() {
+        return properties -> properties.put(AvailableSettings.CONNECTION_HANDLING,
+                PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+    }
+
+    private static HikariDataSource pool(String name, String url, DataSourceProperties properties, int poolSize,
+                                         MeterRegistry meterRegistry) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(name);
+        config.setJdbcUrl(url);
+        config.setUsername(properties.determineUsername());
+        config.setPassword(properties.determinePassword());
+        config.setDriverClassName(properties.determineDriverClassName());
+        config.setMaximumPoolSize(poolSize);
+        // hikaricp.connections.*{pool=name}
+        config.setMetricRegistry(meterRegistry);
+        return new HikariDataSource(config);
+    }
+}
@@ -0,0 +1,196 @@
+package jpabook.jpashop.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 읽기 전용 트랜잭션(@Transactional(readOnly = true))의 커넥션은 복제 DB 에서, 나머지는 원본 DB 에서 꺼낸다.
+ *
+ * - 트랜잭션이 읽기 전용인지는 트랜잭션을 시작한 뒤에 정해지므로 LazyConnectionDataSourceProxy 로 감싸서
+ *   첫 문장을 실행할 때 커넥션을 꺼내야 한다. (ReplicaDataSourceConfig)
+ * - 트랜잭션 밖의 조회(OSIV 지연 로딩, IsolatedQueryExecutor 등)는 원본으로 간다.
+ * - 복제 지연 때문에 방금 쓴 데이터가 복제 DB 에 아직 없을 수 있으므로, 쓰기 트랜잭션이 커밋되면
+ *   read-your-writes 시간 동안은 같은 사용자의 읽기 전용 트랜잭션도 원본으로 보낸다.
+ *   웹 요청이면 쿠키(다음 요청까지), 그 외에는 스레드 단위로 기억한다.
+ * - 지표: jpashop.datasource.connections{route=풀 이름, reason=read-write|read-only|read-your-writes},
+ *   풀별 hikaricp.connections.*{pool=풀 이름}
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource implements Closeable {
+
+    public static final String STICKY_COOKIE = "jpashop-primary-until";
+    private static final String STICKY_ATTRIBUTE = ReplicaRoutingDataSource.class.getName() + ".PRIMARY_UNTIL";
+
+    private final HikariDataSource primary;
+    private final List<HikariDataSource> replicas;
+    private final ReplicaBalancing balancing;
+    private final long readYourWritesMillis;
+    private final AtomicInteger next = new AtomicInteger();
+    // 웹 요청이 아닐 때 마지막 쓰기 이후 원본을 쓰는 시각
+    private final ThreadLocal<Long> primaryUntil = ThreadLocal.withInitial(() -> 0L);
+
+    private final Counter primaryReadWrite;
+    private final Counter primaryReadYourWrites;
+    private final Counter primaryReadOnly;
+    private final List<Counter> replicaReadOnly = new ArrayList<>();
+
+    public ReplicaRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicas,
+                                    ReplicaBalancing balancing, long readYourWritesMillis, MeterRegistry registry) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.balancing = balancing;
+        this.readYourWritesMillis = readYourWritesMillis;
+        this.primaryReadWrite = routeCounter(registry, primary, "read-write");
+        this.primaryReadYourWrites = routeCounter(registry, primary, "read-your-writes");
+        this.primaryReadOnly = routeCounter(registry, primary, "read-only");
+        for (HikariDataSource replica : replicas) {
+            replicaReadOnly.add(routeCounter(registry, replica, "read-only"));
+        }
+    }
+
+    private static Counter routeCounter(MeterRegistry registry, HikariDataSource pool, String reason) {
+        return Counter.builder("jpashop.datasource.connections")
+                .description("커넥션을 꺼낸 DB 와 이유")
+                .tag("route", pool.getPoolName())
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return route().getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return route().getConnection(username, password);
+    }
+
+    public HikariDataSource getPrimary() {
+        return primary;
+    }
+
+    public List<HikariDataSource> getReplicas() {
+        return replicas;
+    }
+
+    DataSource route() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            primaryReadWrite.increment();
+            rememberCommit();
+            return primary;
+        }
+        if (replicas.isEmpty()) {
+            primaryReadOnly.increment();
+            return primary;
+        }
+        if (isReadYourWrites()) {
+            primaryReadYourWrites.increment();
+            return primary;
+        }
+        int index = balancing == ReplicaBalancing.LEAST_OUTSTANDING ? leastOutstanding() : roundRobin();
+        replicaReadOnly.get(index).increment();
+        return replicas.get(index);
+    }
+
+    private int roundRobin() {
+        return Math.floorMod(next.getAndIncrement(), replicas.size());
+    }
+
+    // 사용 중인 커넥션이 가장 적은 복제 DB (같으면 돌아가면서)
+    private int leastOutstanding() {
+        int start = roundRobin();
+        int best = start;
+        int bestActive = Integer.MAX_VALUE;
+        for (int i = 0; i < replicas.size(); i++) {
+            int index = (start + i) % replicas.size();
+            HikariPoolMXBean pool = replicas.get(index).getHikariPoolMXBean();
+            int active = pool == null ? 0 : pool.getActiveConnections();
+            if (active < bestActive) {
+                best = index;
+                bestActive = active;
+            }
+        }
+        return best;
+    }
+
+    // 쓰기 트랜잭션이 커밋되면 그 때부터 read-your-writes 시간 동안 원본 사용
+    private void rememberCommit() {
+        if (readYourWritesMillis <= 0 || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                stickToPrimary(System.currentTimeMillis() + readYourWritesMillis);
+            }
+        });
+    }
+
+    private void stickToPrimary(long until) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            primaryUntil.set(until);
+            return;
+        }
+        attributes.setAttribute(STICKY_ATTRIBUTE, until, RequestAttributes.SCOPE_REQUEST);
+        HttpServletResponse response = ((ServletRequestAttributes) attributes).getResponse();
+        if (response != null && !response.isCommitted()) {
+            Cookie cookie = new Cookie(STICKY_COOKIE, String.valueOf(until));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            cookie.setMaxAge((int) Math.max(1, (readYourWritesMillis + 999) / 1000));
+            response.addCookie(cookie);
+        }
+    }
+
+    private boolean isReadYourWrites() {
+        long now = System.currentTimeMillis();
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return primaryUntil.get() > now;
+        }
+        Long until = (Long) attributes.getAttribute(STICKY_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (until == null) {
+            Cookie cookie = WebUtils.getCookie(((ServletRequestAttributes) attributes).getRequest(), STICKY_COOKIE);
+            until = parse(cookie);
+            attributes.setAttribute(STICKY_ATTRIBUTE, until, RequestAttributes.SCOPE_REQUEST);
+        }
+        return until > now;
+    }
+
+    private static long parse(Cookie cookie) {
+        if (cookie == null) {
+            return 0L;
+        }
+        try {
+            return Long.parseLong(cookie.getValue());
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    @Override
+    public void close() {
+        replicas.forEach(HikariDataSource::close);
+        primary.close();
+    }
+}
@@ -0,0 +1,66 @@
+package jpabook.jpashop.controller;
+
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.service.CategoryService;
+import jpabook.jpashop.service.CategoryTree;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toList;
+
+@RestController
+@RequiredArgsConstructor
+public class CategoryApiController {
+
+    private final CategoryService categoryService;
+
+    // 카테고리 트리 - 메모리 스냅샷에서 바로 응답 (카테고리가 바뀌기 전까지 쿼리 없음)
+    @GetMapping("/api/v1/categories")
+    public Result<List<CategoryTree.Node>> categories() {
+        return new Result<>(categoryService.getTree().getRoots());
+    }
+
+    // 하위 카테고리까지 포함한 상품 목록 (쿼리 1번, 페이징)
+    @GetMapping("/api/v1/categories/{id}/items")
+    public Result<List<CategoryItemDto>> categoryItems(@PathVariable Long id,
+                                                       @RequestParam(value = "offset", defaultValue = "0") int offset,
+                                                       @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        List<Item> items = categoryService.findItemsInSubtree(id, offset, limit);
+        return new Result<>(items.stream().map(CategoryItemDto::new).collect(toList()));
+    }
+
+    // 카테고리 id 별 (하위 포함) 상품 수 (쿼리 1번)
+    @GetMapping("/api/v1/categories/item-counts")
+    public Result<Map<Long, Long>> categoryItemCounts() {
+        return new Result<>(categoryService.countItemsBySubtree());
+    }
+
+    @Data
+    @AllArgsConstructor
+    static class Result<T> {
+        private T data;
+    }
+
+    @Data
+    static class CategoryItemDto {
+        private Long itemId;
+        private String name;
+        private int price;
+        private int stockQuantity;
+
+        public CategoryItemDto(Item item) {
+            itemId = item.getId();
+            name = item.getName();
+            price = item.getPrice();
+            stockQuantity = item.getStockQuantity();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package jpabook.jpashop.controller;
+
+import jpabook.jpashop.repository.NameOptionDto;
+import jpabook.jpashop.service.ItemService;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+public class ItemApiController {
+    // 이름 검색 한 번에 돌려주는 최대 건수
+    private static final int SEARCH_MAX_RESULTS = 20;
+
+    private final ItemService itemService;
+
+    // 이름 검색 (주문 화면 상품 자동완성) - 전체 상품 대신 이름 앞부분이 같은 상품만 최대 20건
+    @GetMapping("/api/v1/items/search")
+    public Result<List<NameOptionDto>> searchItems(@RequestParam("q") String q,
+                                                   @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        if (!StringUtils.hasText(q)) {
+            return new Result<>(List.of());
+        }
+        int capped = Math.max(1, Math.min(limit, SEARCH_MAX_RESULTS));
+        return new Result<>(itemService.searchItems(q.trim(), capped));
+    }
+
+    @Data
+    @AllArgsConstructor
+    static class Result<T> {
+        private T data;
+    }
+}
@@ -1,12 +1,16 @@
 package jpabook.jpashop.controller;
 
 import jpabook.jpashop.domain.item.Member;
+import jpabook.jpashop.repository.NameOptionDto;
 import jpabook.jpashop.service.MemberService;
+import jpabook.jpashop.service.ResourceVersions;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.Value;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.validation.Valid;
 import java.util.List;
@@ -15,7 +19,11 @@ import java.util.stream.Collectors;
 @RestController
 @RequiredArgsConstructor
 public class MemberApiController {
+    // 이름 검색 한 번에 돌려주는 최대 건수
+    private static final int SEARCH_MAX_RESULTS = 20;
+
     private final MemberService memberService;
+    private final ResourceVersions resourceVersions;
 
     /**
      * 등록 V1: 요청 값으로 Member 엔티티를 직접 받는다.
@@ -111,14 +119,30 @@ public class MemberApiController {
         /*
         엔티티를 DTO로 변환해서 반환한다.
         엔티티가 변해도 API 스펙이 변경되지 않는다.
-        추가로 Result 클래스로 컬렉션을 감싸서 향후 필요한 필드를 추가할 수 있다. */
+        추가로 Result 클래스로 컬렉션을 감싸서 향후 필요한 필드를 추가할 수 있다.
+        회원이 바뀌지 않았으면 (If-None-Match 가 현재 ETag 와 같으면) 조회 없이 304 (ResourceVersions) */
         @GetMapping("/api/v2/members")
-        public Result memebrsV2(){
+        public Result memebrsV2(WebRequest webRequest){
+            String etag = resourceVersions.etag(ResourceVersions.MEMBERS);
+            if (etag != null && webRequest.checkNotModified(etag)) {
+                return null;
+            }
             List<Member> findMembers = memberService.findMembers();
             List<MemberDto> collect = findMembers.stream().map(m->new MemberDto(m.getName())).collect(Collectors.toList());
             return new Result(collect);
         }
 
+        // 이름 검색 (주문 화면 회원 자동완성) - 전체 회원 대신 이름 앞부분이 같은 회원만 최대 20건
+        @GetMapping("/api/v1/members/search")
+        public Result<List<NameOptionDto>> searchMembers(@RequestParam("q") String q,
+                                                         @RequestParam(value = "limit", defaultValue = "20") int limit){
+            if (!StringUtils.hasText(q)) {
+                return new Result<>(List.of());
+            }
+            int capped = Math.max(1, Math.min(limit, SEARCH_MAX_RESULTS));
+            return new Result<>(memberService.searchMembers(q.trim(), capped));
+        }
+
         @Data
         @AllArgsConstructor
         static class Result<T> {
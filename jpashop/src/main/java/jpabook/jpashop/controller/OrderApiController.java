@@ -4,22 +4,45 @@ import jpabook.jpashop.domain.item.Address;
 import jpabook.jpashop.domain.item.Order;
 import jpabook.jpashop.domain.item.OrderItem;
 import jpabook.jpashop.domain.item.OrderStatus;
+import jpabook.jpashop.monitoring.SqlStatementStats;
+import jpabook.jpashop.monitoring.StatementBudget;
+import jpabook.jpashop.repository.OrderCursor;
 import jpabook.jpashop.repository.OrderRepository;
 import jpabook.jpashop.repository.OrderSearch;
 import jpabook.jpashop.repository.order.query.OrderFlatDto;
-import jpabook.jpashop.repository.order.query.OrderItemQueryDto;
+import jpabook.jpashop.repository.order.query.OrderFlatDtoAssembler;
 import jpabook.jpashop.repository.order.query.OrderQueryDto;
 import jpabook.jpashop.repository.order.query.OrderQueryRepository;
+import jpabook.jpashop.repository.support.ReadOnlyQuery;
+import jpabook.jpashop.service.OrderExportService;
+import jpabook.jpashop.service.OrderIntakePipeline;
+import jpabook.jpashop.service.OrderLine;
+import jpabook.jpashop.service.OrderService;
+import jpabook.jpashop.service.ResourceVersions;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
 
 import static java.util.stream.Collectors.*;
 
+import javax.servlet.http.HttpServletResponse;
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Positive;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * V1. 엔티티 직접 노출
@@ -65,8 +88,15 @@ import java.util.List;
 @RestController
 @RequiredArgsConstructor
 public class OrderApiController {
+    // 키셋 페이지 최대 크기 - 주문상품/상품을 IN 한 번씩으로 읽는 default_batch_fetch_size 까지 (@StatementBudget(3))
+    private static final int KEYSET_MAX_LIMIT = 1000;
+
     private final OrderRepository orderRepository;
     private final OrderQueryRepository orderQueryRepository;
+    private final OrderExportService orderExportService;
+    private final OrderService orderService;
+    private final ObjectProvider<OrderIntakePipeline> orderIntakePipeline;
+    private final ResourceVersions resourceVersions;
 
     /**
      * V1. 엔티티 직접 노출
@@ -118,17 +148,15 @@ public class OrderApiController {
     // 주문 조회 V3: 엔티티를 DTO로 변환 - 페치 조인 최적화
     // DB입장에서 1:N인 경우 조인하면 N으로 뻥튀기 됨(왜냐면 N개만큼의 데이터가 연결되어 있기 때문)
     // DB는 이걸 어떤식으로 다룰지 모른다 > 우리는 오더 자체에 대해서는 뻥튀기 하고싶지 않음
+    // 조회만 하는 요청 - DTO 로 바꾸는 동안의 지연 로딩까지 읽기 전용 영속성 컨텍스트로 (ReadOnlyQueryAspect)
+    @ReadOnlyQuery
+    @StatementBudget(1)
     @GetMapping("/api/v3/orders")
     public List<OrderDto> ordersV3() {
         List<Order> orders = orderRepository.findAllWithItem();
         List<OrderDto> result = orders.stream().map(o -> new OrderDto(o))
                 .collect(toList());
 
-        for (Order order : orders) {
-            System.out.println("order ref= " + order);
-            System.out.println("order id= " + order.getId());
-        }
-
         return result;
     }
 
@@ -213,11 +241,17 @@ public class OrderApiController {
         * 하지만 애플리케이션은 100이든 1000이든 결국 전체 데이터를 로딩해야 하므로 메모리 사용량이 같다.
         * 1000으로 설정하는 것이 성능상 가장 좋지만, 결국 DB든 애플리케이션이든 순간 부하를 어디까지 견딜 수 있는지로 결정하면 된다.
         * */
+    // 주문/회원/상품이 바뀌지 않았으면 (If-None-Match 가 현재 ETag 와 같으면) 조회 없이 304 (ResourceVersions)
+    @ReadOnlyQuery
+    @StatementBudget(3) // 주문(+회원, 배송) 1번, 주문상품 IN 1번, 상품 IN 1번 (limit <= default_batch_fetch_size)
     @GetMapping("/api/v3.1/orders")
     public List<OrderDto> ordersV3_page(@RequestParam(value = "offset",
             defaultValue = "0") int offset,
                                         @RequestParam(value = "limit", defaultValue
-                                                = "100") int limit) {
+                                                = "100") int limit, WebRequest webRequest) {
+        if (notModified(webRequest)) {
+            return null;
+        }
         List<Order> orders = orderRepository.findAllWithMemberDelivery(offset,
                 limit);
         List<OrderDto> result = orders.stream()
@@ -226,6 +260,55 @@ public class OrderApiController {
         return result;
     }
 
+    /**
+     * V3.1 키셋(seek) 페이징 모드
+     * - after 파라미터가 있으면 offset 대신 커서 다음부터 조회
+     * - 첫 페이지도 after 파라미터가 있어야 이 모드로 온다: /api/v3.1/orders?after= (값을 비움, after 가 없으면 offset 모드)
+     * - 응답의 next 를 다음 요청의 after 로 넘기면 된다. 더 이상 없으면 null
+     * - limit 은 1 이상 (아니면 400), KEYSET_MAX_LIMIT 보다 크면 KEYSET_MAX_LIMIT 로 줄인다. 잘못된 커서도 400
+     * - offset 처럼 앞 페이지 row 를 읽고 버리지 않으므로 뒤쪽 페이지도 조회 시간이 일정하다
+     */
+    @ReadOnlyQuery
+    @StatementBudget(3)
+    @GetMapping(value = "/api/v3.1/orders", params = "after")
+    public CursorResult<List<OrderDto>> ordersV3_keyset(@RequestParam("after") String after,
+                                                      @RequestParam(value = "limit", defaultValue = "100") int limit,
+                                                      WebRequest webRequest) {
+        if (limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit 은 1 이상이어야 합니다.");
+        }
+        if (notModified(webRequest)) {
+            return null;
+        }
+        OrderCursor cursor;
+        try {
+            cursor = StringUtils.hasText(after) ? OrderCursor.decode(after) : null;
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+        limit = Math.min(limit, KEYSET_MAX_LIMIT);
+        List<Order> orders = orderRepository.findAllWithMemberDelivery(cursor, limit);
+        List<OrderDto> result = orders.stream()
+                .map(o -> new OrderDto(o))
+                .collect(toList());
+
+        String next = orders.isEmpty() || orders.size() < limit ? null : OrderCursor.of(orders.get(orders.size() - 1)).encode();
+        return new CursorResult<>(result, next);
+    }
+
+    // V3.1 응답은 주문, 회원 이름, 상품 이름으로 만들어지므로 셋 중 하나라도 바뀌면 ETag 가 바뀐다
+    private boolean notModified(WebRequest webRequest) {
+        String etag = resourceVersions.etag(ResourceVersions.ORDERS, ResourceVersions.MEMBERS, ResourceVersions.ITEMS);
+        return etag != null && webRequest.checkNotModified(etag);
+    }
+
+    @Data
+    @AllArgsConstructor
+    static class CursorResult<T> {
+        private T data;
+        private String next;
+    }
+
     /*
     * Query: 루트 1번, 컬렉션 N 번 실행
         ToOne(N:1, 1:1) 관계들을 먼저 조회하고, ToMany(1:N) 관계는 각각 별도로 처리한다.
@@ -244,24 +327,123 @@ public class OrderApiController {
         return orderQueryRepository.findAllByDto_optimization();
     }
 
+    // V5.1 주문 id 범위를 알고 있을 때 루트 조회와 컬렉션 조회를 동시에 실행
+    @GetMapping("/api/v5.1/orders")
+    public List<OrderQueryDto> ordersV5_concurrent(@RequestParam("fromId") Long fromId,
+                                                   @RequestParam("toId") Long toId) {
+        return orderQueryRepository.findAllByDto_concurrent(fromId, toId);
+    }
+
     // 쿼리 1번으로 통으로 다 묶어서 dto에 때려박기
     // 쿼리는 한번이지만 조인으로 인해 DB에서 App에 전달하는 데이터가 중복 데이터가 추가되므로 V5보다 더 느릴 수 있음( 케이스바이케이스)
     // App 추가 작업이 크고 페이징이 안된다
+    // groupingBy 로 row 마다 OrderQueryDto key 를 만들어 HashMap 에 묶던 방식 대신,
+    // order id 순으로 정렬된 결과를 한 번 훑으면서 주문이 바뀔 때마다 끊어서 조립한다 (중간 Map 없음, 순서 유지)
+    @StatementBudget(1)
     @GetMapping("/api/v6/orders")
     public List<OrderQueryDto> ordersV6() {
         List<OrderFlatDto> flats = orderQueryRepository.findAllByDto_flat();
 
-        return flats.stream()
-                .collect(groupingBy(o -> new OrderQueryDto(o.getOrderId(),
-                                o.getName(), o.getOrderDate(), o.getOrderStatus(), o.getAddress()),
-                        mapping(o -> new OrderItemQueryDto(o.getOrderId(),
-                                o.getItemName(), o.getOrderPrice(), o.getCount()), toList())
-                )).entrySet().stream()
-                .map(e -> new OrderQueryDto(e.getKey().getOrderId(),
-                        e.getKey().getName(), e.getKey().getOrderDate(), e.getKey().getOrderStatus(),
-                        e.getKey().getAddress(), e.getValue()))
+        return OrderFlatDtoAssembler.assemble(flats);
+    }
+
+    // V6 스트리밍: 플랫 조회 결과를 주문 단위로 조립하는 즉시 NDJSON(한 줄에 주문 하나)으로 응답에 써버린다
+    // 결과 전체를 List 로 만들지 않으므로 주문이 1만건이든 1000만건이든 힙 사용량이 일정하다
+    @GetMapping(value = "/api/v6/orders/stream", produces = "application/x-ndjson")
+    public void ordersV6_stream(HttpServletResponse response) throws IOException {
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+        orderExportService.exportOrders(response.getOutputStream());
+    }
+
+    // 주문 등록: jpashop.order-intake.enabled=true 면 같은 상품 주문을 모아서 한 트랜잭션으로 처리하는 파이프라인을 거친다
+    // 파이프라인 결과(future)를 그대로 반환하므로 요청 스레드는 기다리는 동안 반납된다
+    @PostMapping("/api/v1/orders")
+    public CompletableFuture<CreateOrderResponse> saveOrderV1(@RequestBody @Valid CreateOrderRequest request) {
+        OrderIntakePipeline pipeline = orderIntakePipeline.getIfAvailable();
+        if (pipeline == null) {
+            Long id = orderService.order(request.getMemberId(), request.getItemId(), request.getCount());
+            return CompletableFuture.completedFuture(new CreateOrderResponse(id));
+        }
+        return pipeline.submit(request.getMemberId(), request.getItemId(), request.getCount())
+                .thenApply(CreateOrderResponse::new);
+    }
+
+    @Data
+    static class CreateOrderRequest {
+        private Long memberId;
+        private Long itemId;
+        // 0 이하면 재고 차감 update 가 오히려 재고를 늘린다
+        @Positive(message = "주문 수량은 1 이상이어야 합니다.")
+        private int count;
+    }
+
+    @Data
+    @AllArgsConstructor
+    static class CreateOrderResponse {
+        private Long id;
+    }
+
+    // 일괄 주문 등록: 회원/상품 IN 조회 + 상품별 재고 차감 1번 + JDBC 배치 insert
+    // meta 에 실제 실행된 SQL 문 수(배치는 1문장)와 주문당 문장 수를 같이 내려준다
+    @PostMapping("/api/v1/orders/batch")
+    public BatchResult<Long> saveOrdersBatch(@RequestBody @Valid CreateOrderBatchRequest request) {
+        List<OrderLine> lines = request.getOrders().stream()
+                .map(o -> new OrderLine(o.getMemberId(), o.getItemId(), o.getCount()))
                 .collect(toList());
 
+        try (SqlStatementStats stats = SqlStatementStats.begin()) {
+            List<Long> ids = orderService.orderBatch(lines);
+            return new BatchResult<>(ids, new BatchMeta(ids.size(), stats.getStatementCount(),
+                    ids.isEmpty() ? 0 : (double) stats.getStatementCount() / ids.size()));
+        }
+    }
+
+    // 일괄 취소: orderIds 가 있으면 그 주문들, 없으면 검색 조건(memberName)에 맞는 취소 전 주문 전체
+    // 배송완료/이미 취소된 주문이 하나라도 있으면 전체 실패. 조건이 하나도 없으면 전체 주문이 취소되므로 거절
+    @PostMapping("/api/v1/orders/cancel")
+    public BatchResult<Long> cancelOrdersBatch(@RequestBody CancelOrderBatchRequest request) {
+        try (SqlStatementStats stats = SqlStatementStats.begin()) {
+            List<Long> ids;
+            if (request.getOrderIds() != null && !request.getOrderIds().isEmpty()) {
+                ids = orderService.cancelOrders(request.getOrderIds());
+            } else if (StringUtils.hasText(request.getMemberName())) {
+                OrderSearch orderSearch = new OrderSearch();
+                orderSearch.setMemberName(request.getMemberName());
+                ids = orderService.cancelOrders(orderSearch);
+            } else {
+                throw new IllegalArgumentException("취소할 주문 id 나 회원 이름이 필요합니다.");
+            }
+            return new BatchResult<>(ids, new BatchMeta(ids.size(), stats.getStatementCount(),
+                    ids.isEmpty() ? 0 : (double) stats.getStatementCount() / ids.size()));
+        }
+    }
+
+    @Data
+    static class CancelOrderBatchRequest {
+        private List<Long> orderIds;
+        private String memberName;
+    }
+
+    @Data
+    static class CreateOrderBatchRequest {
+        @NotEmpty
+        private List<@Valid CreateOrderRequest> orders;
+    }
+
+    @Data
+    @AllArgsConstructor
+    static class BatchResult<T> {
+        private List<T> data;
+        private BatchMeta meta;
+    }
+
+    @Data
+    @AllArgsConstructor
+    static class BatchMeta {
+        private int orders;
+        private long statements;
+        private double statementsPerOrder;
     }
 
 }
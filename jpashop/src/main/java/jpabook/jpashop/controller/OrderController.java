@@ -1,11 +1,7 @@
 package jpabook.jpashop.controller;
 
-import jpabook.jpashop.domain.item.Item;
-import jpabook.jpashop.domain.item.Member;
 import jpabook.jpashop.domain.item.Order;
 import jpabook.jpashop.repository.OrderSearch;
-import jpabook.jpashop.service.ItemService;
-import jpabook.jpashop.service.MemberService;
 import jpabook.jpashop.service.OrderService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Controller;
@@ -19,17 +15,11 @@ import java.util.List;
 public class OrderController {
 
     private final OrderService orderService;
-    private final MemberService memberService;
-    private final ItemService itemService;
 
+    // 회원/상품 전체를 <option> 으로 그리지 않고, 화면에서 이름을 입력하면 검색 API 로 찾아서 고른다
+    // (/api/v1/members/search, /api/v1/items/search)
     @GetMapping("/order")
-    public String createFrom(Model model){
-        List<Member> members = memberService.findMembers();
-        List<Item> items = itemService.findItems();
-
-        model.addAttribute("members", members);
-        model.addAttribute("items", items);
-
+    public String createFrom(){
         return "order/orderForm";
     }
 
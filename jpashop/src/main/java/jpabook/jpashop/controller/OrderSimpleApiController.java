@@ -4,10 +4,12 @@ package jpabook.jpashop.controller;
 import jpabook.jpashop.domain.item.Address;
 import jpabook.jpashop.domain.item.Order;
 import jpabook.jpashop.domain.item.OrderStatus;
+import jpabook.jpashop.monitoring.StatementBudget;
 import jpabook.jpashop.repository.OrderRepository;
 import jpabook.jpashop.repository.OrderSearch;
 import jpabook.jpashop.repository.order.simplequery.OrderSimpleQueryDto;
 import jpabook.jpashop.repository.order.simplequery.OrderSimpleQueryRepository;
+import jpabook.jpashop.repository.support.ReadOnlyQuery;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -103,6 +105,8 @@ public class OrderSimpleApiController {
      * V3. 엔티티를 조회해서 DTO로 변환(fetch join 사용O)
      * - fetch join으로 쿼리 1번 호출
      * 참고: fetch join에 대한 자세한 내용은 JPA 기본편 참고(정말 중요함) */
+    @StatementBudget(1)
+    @ReadOnlyQuery
     @GetMapping("/api/v3/simple-orders")
     public List<SimpleOrderDto> orderV3(){
         List<Order> orders = orderRepository.findAllWithMemberDelivery();
@@ -112,6 +116,7 @@ public class OrderSimpleApiController {
     }
 
     // V4 : JPA에서 DTO로 바로 조회
+    @StatementBudget(1)
     @GetMapping("/api/v4/simple-orders")
     public List<OrderSimpleQueryDto> ordersV4(){
         return orderSimpleQueryRepository.findOrderDtos();
@@ -0,0 +1,467 @@
+package jpabook.jpashop.datagen;
+
+import jpabook.jpashop.domain.PooledSequenceIdGenerator;
+import jpabook.jpashop.domain.item.DeliveryStatus;
+import jpabook.jpashop.domain.item.OrderStatus;
+import jpabook.jpashop.repository.MemberNameIndex;
+import jpabook.jpashop.service.ResourceVersions;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 용량 테스트용 대량 데이터 생성 (datagen 프로필, 설정은 application-datagen.yml)
+ * ex) ./gradlew bootRun --args='--spring.profiles.active=datagen --jpashop.datagen.orders=10000000'
+ *
+ * - 회원, 상품(Book/Album/Movie), 카테고리 트리, 주문(배송, 주문상품)을 JDBC 배치 insert 로 넣고 회원별 주문 금액 합계를 집계한다.
+ *   엔티티를 거치지 않으므로 컬럼 이름은 엔티티 매핑(스프링 기본 네이밍: 카멜 -> 스네이크)과 맞춰야 한다.
+ * - 상품 인기도와 회원 주문 빈도는 Zipf 분포, 주문당 상품 수는 1개부터 점점 드물게 (평균 약 2.2개)
+ * - 주문은 id 순서대로 order-days 동안 고르게 퍼진다. (최근 3일 주문은 배송 준비, 약 5%는 취소)
+ * - 행마다 (seed, 테이블, 행 번호) 로 난수를 새로 만들고 id 도 행 번호로 정하므로
+ *   같은 seed 와 건수면 스레드 수, 배치 크기와 상관없이 항상 같은 데이터가 나온다.
+ *   (주문상품 id 는 주문마다 max-items-per-order 칸씩 잡아두므로 중간에 빈 번호가 있다)
+ * - 빈 DB 에서만 실행하고, 끝나면 jpashop_seq 를 마지막 id 다음으로 옮겨서 이후 persist 와 겹치지 않게 한다.
+ * - 작업은 CHUNK 건씩 나눠서 threads 개 스레드가 각자 커넥션/트랜잭션으로 넣는다. (커넥션 풀은 threads 보다 크게)
+ * - 다 넣으면 애플리케이션을 종료한다. (exit-when-done, @Scheduled/outbox 릴레이 스레드 때문에 저절로 끝나지 않음)
+ */
+@Slf4j
+@Component
+@Profile("datagen")
+public class DataGenerator implements ApplicationRunner {
+
+    // 트랜잭션(커밋) 하나에 넣는 행 수 - 병렬 작업 단위
+    private static final int CHUNK = 10_000;
+    private static final int ROOT_CATEGORIES = 10;
+    private static final int CATEGORY_BRANCHING = 5;
+    // 주문상품을 하나 더 담을 확률
+    private static final double NEXT_ITEM_PROBABILITY = 0.55;
+
+    // 난수 스트림 구분
+    private static final int CATEGORY = 1, ITEM = 2, MEMBER = 3, ADDRESS = 4, ORDER = 5, ITEM_RANK = 6, MEMBER_RANK = 7;
+
+    private static final String[] FAMILY = {"김", "이", "박", "최", "정", "강", "조", "윤", "장", "임",
+            "한", "오", "서", "신", "권", "황", "안", "송", "류", "홍"};
+    private static final String[] GIVEN = {"민", "서", "준", "예", "도", "윤", "지", "하", "현", "우",
+            "주", "연", "수", "은", "건", "아", "시", "유", "진", "원", "채", "태", "성", "재", "경",
+            "소", "혜", "영", "호", "빈", "나", "다", "린", "율", "온", "솔", "별", "찬", "결", "담"};
+    private static final String[] CITIES = {"서울", "부산", "인천", "대구", "대전", "광주", "울산", "수원",
+            "창원", "진주", "전주", "청주", "제주"};
+    private static final String[] ROOT_NAMES = {"도서", "음반", "영화", "소설", "경제", "과학", "여행", "요리",
+            "어린이", "만화"};
+
+    private final ConfigurableApplicationContext context;
+    private final DataSource dataSource;
+    private final ResourceVersions resourceVersions;
+    private final MemberNameIndex memberNameIndex;
+    private final long seed;
+    private final int members;
+    private final int items;
+    private final int categories;
+    private final int orders;
+    private final int threads;
+    private final int batchSize;
+    private final int maxItemsPerOrder;
+    private final double itemSkew;
+    private final double memberSkew;
+    private final LocalDateTime firstOrderDate;
+    private final long orderSeconds;
+    private final boolean exitWhenDone;
+
+    public DataGenerator(ConfigurableApplicationContext context, DataSource dataSource, ResourceVersions resourceVersions, MemberNameIndex memberNameIndex,
+                         @Value("${jpashop.datagen.seed:42}") long seed,
+                         @Value("${jpashop.datagen.members:100000}") int members,
+                         @Value("${jpashop.datagen.items:10000}") int items,
+                         @Value("${jpashop.datagen.categories:100}") int categories,
+                         @Value("${jpashop.datagen.orders:300000}") int orders,
+                         @Value("${jpashop.datagen.threads:4}") int threads,
+                         @Value("${jpashop.datagen.batch-size:1000}") int batchSize,
+                         @Value("${jpashop.datagen.max-items-per-order:10}") int maxItemsPerOrder,
+                         @Value("${jpashop.datagen.item-skew:1.0}") double itemSkew,
+                         @Value("${jpashop.datagen.member-skew:0.5}") double memberSkew,
+                         @Value("${jpashop.datagen.last-order-date:2025-12-31}") String lastOrderDate,
+                         @Value("${jpashop.datagen.order-days:365}") int orderDays,
+                         @Value("${jpashop.datagen.exit-when-done:true}") boolean exitWhenDone) {
+        if (members <= 0 || items <= 0 || categories <= 0 || orders < 0 || maxItemsPerOrder <= 0) {
+            throw new IllegalArgumentException("jpashop.datagen: members/items/categories/max-items-per-order 는 1 이상");
+        }
+        this.context = context;
+        this.dataSource = dataSource;
+        this.resourceVersions = resourceVersions;
+        this.memberNameIndex = memberNameIndex;
+        this.seed = seed;
+        this.members = members;
+        this.items = items;
+        this.categories = categories;
+        this.orders = orders;
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.maxItemsPerOrder = maxItemsPerOrder;
+        this.itemSkew = itemSkew;
+        this.memberSkew = memberSkew;
+        LocalDateTime end = LocalDate.parse(lastOrderDate).plusDays(1).atStartOfDay();
+        this.firstOrderDate = end.minusDays(orderDays);
+        this.orderSeconds = orderDays * 86_400L;
+        this.exitWhenDone = exitWhenDone;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        generate();
+        if (exitWhenDone) {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+
+    public void generate() throws Exception {
+        checkEmpty();
+        log.info("datagen 시작: seed={}, 회원 {}, 상품 {}, 카테고리 {}, 주문 {}, 스레드 {}",
+                seed, members, items, categories, orders, threads);
+
+        Ids ids = new Ids();
+        // 주문 금액 계산용 (상품 단계에서 채우고 주문 단계에서 읽음)
+        int[] itemPrices = new int[items];
+        long start = System.nanoTime();
+        long rows = 0;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("datagen-"));
+        try {
+            // 카테고리는 부모가 먼저 들어가야 하므로 한 번에
+            rows += phase(executor, "category", categories, categories,
+                    (connection, from, to) -> insertCategories(connection, ids));
+            rows += phase(executor, "item", items, CHUNK,
+                    (connection, from, to) -> insertItems(connection, ids, itemPrices, from, to));
+            rows += phase(executor, "member", members, CHUNK,
+                    (connection, from, to) -> insertMembers(connection, ids, from, to));
+
+            ZipfDistribution itemPopularity = new ZipfDistribution(items, itemSkew);
+            int[] itemByRank = ZipfDistribution.shuffledRanks(items, random(ITEM_RANK, 0));
+            ZipfDistribution memberActivity = new ZipfDistribution(members, memberSkew);
+            int[] memberByRank = ZipfDistribution.shuffledRanks(members, random(MEMBER_RANK, 0));
+            rows += phase(executor, "order", orders, CHUNK, (connection, from, to) -> insertOrders(connection, ids,
+                    itemPrices, itemPopularity, itemByRank, memberActivity, memberByRank, from, to));
+        } finally {
+            executor.shutdown();
+        }
+
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            // 회원별 주문 금액 합계 (MemberSpend) - 주문을 다 넣은 뒤 한 번에 집계
+            long spendStart = System.nanoTime();
+            int spendRows = statement.executeUpdate("insert into member_spend (member_id, total_spent, order_count)"
+                    + " select member_id, sum(total_price), count(*) from orders"
+                    + " where status = '" + OrderStatus.ORDER.name() + "' group by member_id");
+            rows += spendRows;
+            log.info("datagen member_spend: {} rows, {} ms", spendRows, (System.nanoTime() - spendStart) / 1_000_000);
+
+            statement.execute("alter sequence " +PooledSequenceIdGenerator.SEQUENCE_NAME + " restart with " + ids.next);
+        }
+        // 엔티티를 거치지 않고 넣었으므로 조회 API 의 ETag 를 직접 바꾸고, 회원 이름 인덱스는 다시 읽는다
+        resourceVersions.changed(ResourceVersions.MEMBERS, ResourceVersions.ITEMS, ResourceVersions.ORDERS);
+        memberNameIndex.invalidate();
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        log.info("datagen 완료: {} rows, {} ms, {} rows/s", rows, millis, rows * 1000 / millis);
+    }
+
+    private void checkEmpty() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            for (String table : new String[]{"member", "item", "category", "orders", "member_spend"}) {
+                try (ResultSet rs = statement.executeQuery("select count(*) from " + table)) {
+                    rs.next();
+                    if (rs.getLong(1) > 0) {
+                        throw new IllegalStateException("datagen 은 빈 DB 에서만 실행할 수 있습니다. (" + table + " 테이블에 데이터 있음)");
+                    }
+                }
+            }
+        }
+    }
+
+    /* [from, to) 를 chunk 건씩 나눠서 동시에 넣고 초당 행 수를 남긴다 */
+    private long phase(ExecutorService executor, String name, int count, int chunk, ChunkWriter writer)
+            throws InterruptedException, ExecutionException {
+        long start = System.nanoTime();
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int from = 0; from < count; from += chunk) {
+            int chunkFrom = from;
+            int chunkTo = Math.min(count, from + chunk);
+            futures.add(executor.submit(() -> {
+                try (Connection connection = dataSource.getConnection()) {
+                    connection.setAutoCommit(false);
+                    try {
+                        long written = writer.write(connection, chunkFrom, chunkTo);
+                        connection.commit();
+                        return written;
+                    } catch (SQLException | RuntimeException e) {
+                        connection.rollback();
+                        throw e;
+                    }
+                }
+            }));
+        }
+        long rows = 0;
+        for (Future<Long> future : futures) {
+            rows += future.get();
+        }
+        long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        log.info("datagen {}: {} rows, {} ms, {} rows/s", name, rows, millis, rows * 1000 / millis);
+        return rows;
+    }
+
+    private long insertCategories(Connection connection, Ids ids) throws SQLException {
+        String[] names = new String[categories];
+        String[] paths = new String[categories];
+        try (Batch batch = new Batch(connection,
+                "insert into category (category_id, name, path, parent_id) values (?, ?, ?, ?)")) {
+            for (int i = 0; i < categories; i++) {
+                // 위쪽 ROOT_CATEGORIES 개가 최상위, 나머지는 앞 카테고리 아래에 CATEGORY_BRANCHING 개씩
+                int parent = i < ROOT_CATEGORIES ? -1 : (i - ROOT_CATEGORIES) / CATEGORY_BRANCHING;
+                SplittableRandom random = random(CATEGORY, i);
+                names[i] = parent < 0 ? ROOT_NAMES[i % ROOT_NAMES.length]
+                        : names[parent] + "-" + (1 + random.nextInt(99));
+                paths[i] = parent < 0 ? "/" : paths[parent] + ids.category(parent) + "/";
+
+                batch.statement.setLong(1, ids.category(i));
+                batch.statement.setString(2, names[i]);
+                batch.statement.setString(3, paths[i]);
+                if (parent < 0) {
+                    batch.statement.setNull(4, Types.BIGINT);
+                } else {
+                    batch.statement.setLong(4, ids.category(parent));
+                }
+                batch.add();
+            }
+            batch.flush();
+            return batch.rows;
+        }
+    }
+
+    private long insertItems(Connection connection, Ids ids, int[] itemPrices, int from, int to) throws SQLException {
+        try (Batch item = new Batch(connection, "insert into item (item_id, dtype, name, price, stock_quantity,"
+                + " author, isbn, artist, etc, director, actor) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+             Batch categoryItem = new Batch(connection, "insert into category_item (category_id, item_id) values (?, ?)")) {
+            PreparedStatement ps = item.statement;
+            for (int i = from; i < to; i++) {
+                SplittableRandom random = random(ITEM, i);
+                long id = ids.item(i);
+                int type = random.nextInt(10);
+                // 도서 50%, 음반 30%, 영화 20%
+                String dtype = type < 5 ? "B" : type < 8 ? "A" : "M";
+                int price = (type < 5 ? 8_000 + random.nextInt(320) * 100
+                        : type < 8 ? 10_000 + random.nextInt(200) * 100
+                        : 15_000 + random.nextInt(350) * 100);
+                itemPrices[i] = price;
+
+                ps.setLong(1, id);
+                ps.setString(2, dtype);
+                ps.setString(3, (type < 5 ? "BOOK " : type < 8 ? "ALBUM " : "MOVIE ") + (i + 1));
+                ps.setInt(4, price);
+                ps.setInt(5, 1_000 + random.nextInt(100_000));
+                for (int column = 6; column <= 11; column++) {
+                    ps.setNull(column, Types.VARCHAR);
+                }
+                if (dtype.equals("B")) {
+                    ps.setString(6, "author-" + random.nextInt(Math.max(1, items / 5)));
+                    ps.setString(7, String.format("978%010d", random.nextLong(10_000_000_000L)));
+                } else if (dtype.equals("A")) {
+                    ps.setString(8, "artist-" + random.nextInt(Math.max(1, items / 10)));
+                    ps.setString(9, random.nextInt(4) == 0 ? "limited" : null);
+                } else {
+                    ps.setString(10, "director-" + random.nextInt(Math.max(1, items / 20)));
+                    ps.setString(11, "actor-" + random.nextInt(Math.max(1, items / 5)));
+                }
+                item.add();
+
+                // 카테고리 1개, 20% 는 하나 더
+                int category = random.nextInt(categories);
+                categoryItem.statement.setLong(1, ids.category(category));
+                categoryItem.statement.setLong(2, id);
+                categoryItem.add();
+                int second = random.nextInt(categories);
+                if (random.nextInt(5) == 0 && second != category) {
+                    categoryItem.statement.setLong(1, ids.category(second));
+                    categoryItem.statement.setLong(2, id);
+                    categoryItem.add();
+                }
+
+                if ((i - from + 1) % batchSize == 0) {
+                    item.flush();
+                    categoryItem.flush();
+                }
+            }
+            item.flush();
+            categoryItem.flush();
+            return item.rows + categoryItem.rows;
+        }
+    }
+
+    private long insertMembers(Connection connection, Ids ids, int from, int to) throws SQLException {
+        try (Batch member = new Batch(connection,
+                "insert into member (member_id, name, city, street, zipcode) values (?, ?, ?, ?, ?)")) {
+            PreparedStatement ps = member.statement;
+            for (int i = from; i < to; i++) {
+                SplittableRandom random = random(MEMBER, i);
+                ps.setLong(1, ids.member(i));
+                ps.setString(2, FAMILY[random.nextInt(FAMILY.length)] + GIVEN[random.nextInt(GIVEN.length)]
+                        + GIVEN[random.nextInt(GIVEN.length)] + String.format("%04d", random.nextInt(10_000)));
+                setAddress(ps, 3, i);
+                member.add();
+                if ((i - from + 1) % batchSize == 0) {
+                    member.flush();
+                }
+            }
+            member.flush();
+            return member.rows;
+        }
+    }
+
+    private long insertOrders(Connection connection, Ids ids, int[] itemPrices,
+                              ZipfDistribution itemPopularity, int[] itemByRank,
+                              ZipfDistribution memberActivity, int[] memberByRank,
+                              int from, int to) throws SQLException {
+        LocalDateTime shippedBefore = firstOrderDate.plusSeconds(orderSeconds).minusDays(3);
+        try (Batch delivery = new Batch(connection,
+                "insert into delivery (delivery_id, city, street, zipcode, status) values (?, ?, ?, ?, ?)");
+             Batch order = new Batch(connection,
+                     "insert into orders (order_id, member_id, delivery_id, order_date, status, total_price)"
+                             + " values (?, ?, ?, ?, ?, ?)");
+             Batch orderItem = new Batch(connection, "insert into order_item (order_item_id, item_id, order_id,"
+                     + " order_price, count) values (?, ?, ?, ?, ?)")) {
+            for (int i = from; i < to; i++) {
+                SplittableRandom random = random(ORDER, i);
+                int member = memberByRank[memberActivity.sample(random)];
+                LocalDateTime orderDate = firstOrderDate.plusSeconds(
+                        (long) ((i + random.nextDouble()) * orderSeconds / orders));
+                OrderStatus status = random.nextInt(100) < 5 ? OrderStatus.CANCEL : OrderStatus.ORDER;
+                DeliveryStatus deliveryStatus = status == OrderStatus.ORDER && orderDate.isBefore(shippedBefore)
+                        ? DeliveryStatus.COMP : DeliveryStatus.READY;
+
+                // 배송지는 회원 주소
+                delivery.statement.setLong(1, ids.delivery(i));
+                setAddress(delivery.statement, 2, member);
+                delivery.statement.setString(5, deliveryStatus.name());
+                delivery.add();
+
+                int lines = 1;
+                while (lines < maxItemsPerOrder && random.nextDouble() < NEXT_ITEM_PROBABILITY) {
+                    lines++;
+                }
+                int totalPrice = 0;
+                for (int line = 0; line < lines; line++) {
+                    int item = itemByRank[itemPopularity.sample(random)];
+                    // 대부분 1개, 10% 는 2~5개
+                    int count = random.nextInt(10) == 0 ? 2 + random.nextInt(4) : 1;
+                    orderItem.statement.setLong(1, ids.orderItem(i, line));
+                    orderItem.statement.setLong(2, ids.item(item));
+                    orderItem.statement.setLong(3, ids.order(i));
+                    orderItem.statement.setInt(4, itemPrices[item]);
+                    orderItem.statement.setInt(5, count);
+                    orderItem.add();
+                    totalPrice += itemPrices[item] * count;
+                }
+
+                order.statement.setLong(1, ids.order(i));
+                order.statement.setLong(2, ids.member(member));
+                order.statement.setLong(3, ids.delivery(i));
+                order.statement.setTimestamp(4, Timestamp.valueOf(orderDate));
+                order.statement.setString(5, status.name());
+                order.statement.setInt(6, totalPrice);
+                order.add();
+
+                // 외래 키 순서대로 (배송 -> 주문 -> 주문상품)
+                if ((i - from + 1) % batchSize == 0) {
+                    delivery.flush();
+                    order.flush();
+                    orderItem.flush();
+                }
+            }
+            delivery.flush();
+            order.flush();
+            orderItem.flush();
+            return delivery.rows + order.rows + orderItem.rows;
+        }
+    }
+
+    // 회원 주소와 그 회원의 배송지가 같도록 회원 번호로 만든다
+    private void setAddress(PreparedStatement ps, int index, int member) throws SQLException {
+        SplittableRandom random = random(ADDRESS, member);
+        ps.setString(index, CITIES[random.nextInt(CITIES.length)]);
+        ps.setString(index + 1, (1 + random.nextInt(300)) + "길 " + (1 + random.nextInt(200)));
+        ps.setString(index + 2, String.format("%05d", random.nextInt(100_000)));
+    }
+
+    private SplittableRandom random(int stream, long index) {
+        return new SplittableRandom(mix64(mix64(seed + stream * 0x9E3779B97F4A7C15L) + index));
+    }
+
+    // murmur3 fmix64 - 이웃한 seed/행 번호가 비슷한 난수열을 만들지 않도록 섞는다
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    /* 행 번호 -> id (테이블마다 구간을 나눠서 1부터 차례로) */
+    private class Ids {
+        final long categoryBase = 1;
+        final long itemBase = categoryBase + categories;
+        final long memberBase = itemBase + items;
+        final long deliveryBase = memberBase + members;
+        final long orderBase = deliveryBase + orders;
+        final long orderItemBase = orderBase + orders;
+        final long next = orderItemBase + (long) orders * maxItemsPerOrder;
+
+        long category(int i) { return categoryBase + i; }
+        long item(int i) { return itemBase + i; }
+        long member(int i) { return memberBase + i; }
+        long delivery(int i) { return deliveryBase + i; }
+        long order(int i) { return orderBase + i; }
+        long orderItem(int order, int line) { return orderItemBase + (long) order * maxItemsPerOrder + line; }
+    }
+
+    @FunctionalInterface
+    private interface ChunkWriter {
+        long write(Connection connection, int from, int to) throws SQLException;
+    }
+
+    /* 같은 문장을 모아서 executeBatch 로 보낸다 (flush 시점은 외래 키 순서를 아는 호출하는 쪽에서) */
+    private static class Batch implements AutoCloseable {
+        final PreparedStatement statement;
+        long rows;
+
+        Batch(Connection connection, String sql) throws SQLException {
+            this.statement = connection.prepareStatement(sql);
+        }
+
+        void add() throws SQLException {
+            statement.addBatch();
+            rows++;
+        }
+
+        void flush() throws SQLException {
+            statement.executeBatch();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            statement.close();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package jpabook.jpashop.datagen;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * 순위 0..n-1 을 1/(순위+1)^exponent 비율로 뽑는다 (인기 상품 몇 개에 주문이 몰리는 분포)
+ * - exponent 0 이면 균등 분포, 1 이면 1위가 2위의 2배, 10위의 10배
+ * - 누적 확률을 미리 만들어 두고 이진 탐색 (n 개 double, 100만 개면 8MB)
+ * - 순위가 곧 id 순서가 되지 않도록 shuffledRanks 로 순위 -> 대상 위치를 섞어서 쓴다.
+ */
+public class ZipfDistribution {
+
+    private final double[] cumulative;
+
+    public ZipfDistribution(int n, double exponent) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive: " + n);
+        }
+        cumulative = new double[n];
+        double sum = 0;
+        for (int rank = 0; rank < n; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < n; rank++) {
+            cumulative[rank] /= sum;
+        }
+    }
+
+    public int sample(SplittableRandom random) {
+        int found = Arrays.binarySearch(cumulative, random.nextDouble());
+        int rank = found >= 0 ? found : -found - 1;
+        // 반올림 오차로 마지막 누적값이 1 보다 조금 작을 수 있다
+        return Math.min(rank, cumulative.length - 1);
+    }
+
+    /* 순위 -> 위치 (0..n-1 을 섞은 배열) */
+    public static int[] shuffledRanks(int n, SplittableRandom random) {
+        int[] positions = new int[n];
+        for (int i = 0; i < n; i++) {
+            positions[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = positions[i];
+            positions[i] = positions[j];
+            positions[j] = tmp;
+        }
+        return positions;
+    }
+}
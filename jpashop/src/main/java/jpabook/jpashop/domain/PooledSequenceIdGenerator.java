@@ -0,0 +1,45 @@
+package jpabook.jpashop.domain;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.id.enhanced.StandardOptimizerDescriptor;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * 모든 엔티티가 같이 쓰는 id 생성기 (jpashop_seq 시퀀스 + pooled-lo)
+ *
+ * 기본 @GeneratedValue 는 persist 할 때마다 시퀀스를 한 번씩 호출한다. (주문 1건 = 주문/주문상품/배송 3번)
+ * pooled-lo 는 시퀀스 한 번 호출로 allocation-size 개의 id 를 미리 받아서 메모리에서 나눠준다.
+ * - DB 시퀀스 자체가 allocation-size 씩 증가하므로 서버가 여러 대여도 받은 구간이 겹치지 않는다.
+ * - allocation-size 를 바꾸면 DB 시퀀스 증가값도 같이 바꿔야 한다. (alter sequence jpashop_seq increment by ...)
+ * - 서버가 재시작되면 받아두고 못 쓴 id 는 버려진다. (id 에 빈 구간이 생김)
+ * - 기존 데이터가 있는 DB 에 붙으면 시작할 때 PooledSequenceSeeder 가 시퀀스를 최대 id 다음으로 옮긴다.
+ *
+ * 설정: spring.jpa.properties.jpashop.id.allocation-size / initial-value
+ */
+public class PooledSequenceIdGenerator extends SequenceStyleGenerator {
+
+    public static final String NAME = "jpashop_id";
+    public static final String SEQUENCE_NAME = "jpashop_seq";
+    public static final String ALLOCATION_SIZE = "jpashop.id.allocation-size";
+    public static final String INITIAL_VALUE = "jpashop.id.initial-value";
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        Map<?, ?> settings = serviceRegistry.getService(ConfigurationService.class).getSettings();
+        int allocationSize = ConfigurationHelper.getInt(ALLOCATION_SIZE, settings, 50);
+        int initialValue = ConfigurationHelper.getInt(INITIAL_VALUE, settings, 1);
+
+        params.setProperty(SEQUENCE_PARAM, SEQUENCE_NAME);
+        params.setProperty(INCREMENT_PARAM, String.valueOf(allocationSize));
+        params.setProperty(INITIAL_PARAM, String.valueOf(initialValue));
+        params.setProperty(OPT_PARAM, StandardOptimizerDescriptor.POOLED_LO.getExternalName());
+        super.configure(type, params, serviceRegistry);
+    }
+}
@@ -0,0 +1,72 @@
+package jpabook.jpashop.domain;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.SessionFactoryObserver;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * 시작할 때 jpashop_seq 가 기존 데이터의 최대 id 보다 뒤에 있으면 최대 id 다음으로 옮긴다.
+ *
+ * initial-value 는 시퀀스를 처음 만들 때만 쓰이므로, ddl-auto: update 로 기존 데이터가 있는 DB 에 붙으면
+ * 시퀀스가 1부터 시작해서 기존 행과 id 가 겹친다. (PK 충돌)
+ * - 하이버네이트가 스키마를 만들고/고친 뒤, 엔티티를 저장하는 어떤 빈보다 먼저 실행된다. (SessionFactory 생성 직후)
+ * - PooledSequenceIdGenerator 를 쓰는 루트 엔티티마다 max(id) 를 구해서 시퀀스 다음 값과 비교한다.
+ * - 확인하면서 시퀀스를 한 번 호출하므로 재시작할 때처럼 id 한 구간(allocation-size)이 버려진다.
+ * - 시퀀스가 이미 앞서 있으면 (정상) 아무것도 바꾸지 않으므로 실행 중인 다른 서버에 영향이 없다.
+ *
+ * 설정: spring.jpa.properties.hibernate.session_factory_observer
+ */
+@Slf4j
+public class PooledSequenceSeeder implements SessionFactoryObserver {
+
+    @Override
+    public void sessionFactoryCreated(SessionFactory factory) {
+        SessionFactoryImplementor sessionFactory = (SessionFactoryImplementor) factory;
+        Dialect dialect = sessionFactory.getJdbcServices().getDialect();
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            long maxId = maxId(sessionFactory, session);
+            session.doWork(connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    long next;
+                    try (ResultSet rs = statement.executeQuery(
+                            dialect.getSequenceNextValString(PooledSequenceIdGenerator.SEQUENCE_NAME))) {
+                        rs.next();
+                        next = rs.getLong(1);
+                    }
+                    if (next <= maxId) {
+                        log.warn("{} 다음 값({})이 기존 최대 id({}) 이하 - {} 부터 다시 시작",
+                                PooledSequenceIdGenerator.SEQUENCE_NAME, next, maxId, maxId + 1);
+                        statement.execute("alter sequence " + PooledSequenceIdGenerator.SEQUENCE_NAME
+                                + " restart with " + (maxId + 1));
+                    }
+                }
+            });
+            session.getTransaction().commit();
+        }
+    }
+
+    private long maxId(SessionFactoryImplementor sessionFactory, Session session) {
+        long maxId = 0;
+        for (EntityPersister persister : sessionFactory.getMetamodel().entityPersisters().values()) {
+            // 상속 엔티티(Book, Album, Movie)는 루트(Item) 한 번으로
+            if (!(persister.getIdentifierGenerator() instanceof PooledSequenceIdGenerator)
+                    || !persister.getEntityName().equals(persister.getRootEntityName())) {
+                continue;
+            }
+            Number max = session.createQuery("select max(e." + persister.getIdentifierPropertyName() + ") from "
+                    + persister.getEntityName() + " e", Number.class).getSingleResult();
+            if (max != null) {
+                maxId = Math.max(maxId, max.longValue());
+            }
+        }
+        return maxId;
+    }
+}
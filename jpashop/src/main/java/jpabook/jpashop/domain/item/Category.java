@@ -1,21 +1,33 @@
 package jpabook.jpashop.domain.item;
 
+import jpabook.jpashop.domain.PooledSequenceIdGenerator;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import java.util.ArrayList;
 import java.util.List;
 
 @Getter @Setter @Entity
+@Table(indexes = @Index(name = "idx_category_path", columnList = "path"))
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "category")
 public class Category {
     @Id
-    @GeneratedValue
+    @GeneratedValue(generator = PooledSequenceIdGenerator.NAME)
     @Column(name = "category_id")
     private Long id;
 
     private String name;
 
+    // 상위 카테고리 경로 (materialized path) : 최상위 "/", 1 아래면 "/1/", 1 > 5 아래면 "/1/5/"
+    // 하위 카테고리 전체를 path like '/1/5/%' 한 번으로 찾을 수 있다 (단계마다 child 를 지연 로딩하지 않음)
+    @Setter(AccessLevel.NONE)
+    private String path;
+
     @ManyToMany
     @JoinTable(name="category_item", joinColumns = @JoinColumn(name="category_id"),
             inverseJoinColumns = @JoinColumn(name = "item_id"))
@@ -29,10 +41,35 @@ public class Category {
     @OneToMany(mappedBy = "parent")
     private List<Category> child = new ArrayList<>();
 
-    // 연관관계 메서드
+    // 연관관계 메서드 - 새 카테고리만 (경로는 저장할 때 정해짐)
+    // 이미 저장된 카테고리를 옮기면 아래 카테고리들의 경로까지 바뀌어야 하므로 CategoryService.moveCategory 로 옮긴다
     public void addChildCategory(Category child){
+        if (child.getId() != null || child.getParent() != null) {
+            throw new IllegalStateException("저장된 카테고리는 CategoryService.moveCategory 로 옮겨야 합니다.");
+        }
         this.child.add(child);
         child.setParent(this);
     }
 
+    // 부모는 먼저 저장되어 있어야 한다 (부모 id 가 경로에 들어감)
+    @PrePersist
+    private void initPath(){
+        this.path = parentPath();
+    }
+
+    private String parentPath(){
+        if (parent == null) {
+            return "/";
+        }
+        if (parent.getId() == null) {
+            throw new IllegalStateException("상위 카테고리를 먼저 저장해야 합니다.");
+        }
+        return parent.getPath() + parent.getId() + "/";
+    }
+
+    // 이 카테고리 아래 카테고리들의 경로 prefix
+    public String getSubtreePath(){
+        return path + id + "/";
+    }
+
 }
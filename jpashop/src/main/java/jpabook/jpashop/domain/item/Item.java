@@ -1,8 +1,11 @@
 package jpabook.jpashop.domain.item;
 
+import jpabook.jpashop.domain.PooledSequenceIdGenerator;
 import jpabook.jpashop.exception.NotEnoughStockException;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import java.util.ArrayList;
@@ -15,10 +18,15 @@ import java.util.List;
 @Inheritance(strategy = InheritanceType.SINGLE_TABLE)
 // 카테고리화 함
 @DiscriminatorColumn(name = "dtype")
+@Table(indexes = @Index(name = "idx_item_name", columnList = "name"))
+// 2차 캐시 (jpashop.cache.enabled) - 하위 타입(Book/Album/Movie)도 같은 영역에 들어간다
+// 수정은 커밋 시점에 캐시에 반영, 재고 차감(벌크 update)은 ItemRepository.decreaseStock 에서 해당 상품만 제거
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "item")
 public abstract class Item {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(generator = PooledSequenceIdGenerator.NAME)
     @Column(name = "item_id")
     private Long id;
 
@@ -1,5 +1,6 @@
 package jpabook.jpashop.domain.item;
 
+import jpabook.jpashop.domain.PooledSequenceIdGenerator;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -9,9 +10,10 @@ import java.util.List;
 
 @Entity
 @Getter @Setter
+@Table(indexes = @Index(name = "idx_member_name", columnList = "name"))
 public class Member {
 
-    @Id @GeneratedValue
+    @Id @GeneratedValue(generator = PooledSequenceIdGenerator.NAME)
     @Column(name = "member_id")
     private Long id;
 
@@ -0,0 +1,36 @@
+package jpabook.jpashop.domain.item;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * 회원별 주문 금액 합계 (주문 상태인 주문만 - 취소하면 빠진다)
+ * 주문/취소와 같은 트랜잭션에서 MemberSpendRepository 가 더하고 뺀다. 어긋나면 OrderTotalsRepairJob 이 주문에서 다시 계산
+ * 주문이 한 번도 없는 회원은 행이 없다.
+ */
+@Entity
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class MemberSpend {
+
+    @Id
+    @Column(name = "member_id")
+    private Long memberId;
+
+    // 주문 금액(Order.totalPrice) 합계
+    private long totalSpent;
+
+    // 주문 수
+    private long orderCount;
+
+    public MemberSpend(Long memberId, long totalSpent, long orderCount) {
+        this.memberId = memberId;
+        this.totalSpent = totalSpent;
+        this.orderCount = orderCount;
+    }
+}
@@ -1,9 +1,11 @@
 package jpabook.jpashop.domain.item;
 
+import jpabook.jpashop.domain.PooledSequenceIdGenerator;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.ColumnDefault;
 
 import javax.persistence.*;
 import java.time.LocalDateTime;
@@ -11,13 +13,14 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name ="orders")
+// 키셋 페이징 (orderDate, order_id) 순서 조회용 인덱스
+@Table(name ="orders", indexes = @Index(name = "idx_orders_order_date_id", columnList = "orderDate, order_id"))
 @Getter
 @Setter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 public class Order {
     @Id
-    @GeneratedValue
+    @GeneratedValue(generator = PooledSequenceIdGenerator.NAME)
     @Column(name="order_id")
     private Long id;
 
@@ -43,6 +46,13 @@ public class Order {
     @Enumerated(EnumType.STRING)
     private OrderStatus status;
 
+    // 전체 주문 가격 - 주문상품을 담을 때 같이 더해둔다 (목록/집계에서 orderItems 를 로딩하지 않고 읽음)
+    // 취소해도 그대로 (회원별 합계 MemberSpend 에서만 빠진다). 어긋나면 OrderTotalsRepairJob 이 주문상품에서 다시 계산
+    // 기존 DB 에 컬럼이 새로 생기면 0 이므로 OrderTotalsRepairJob 을 한 번 실행해야 한다
+    @ColumnDefault("0")
+    @Setter(AccessLevel.NONE)
+    private int totalPrice;
+
     // 연관관계 메서드
     public void setMember(Member member){
         this.member = member;
@@ -52,6 +62,7 @@ public class Order {
     public void addOrderItem(OrderItem orderItem){
         orderItems.add(orderItem);
         orderItem.setOrder(this);
+        totalPrice += orderItem.getTotalPrice();
     }
 
     public void setDelivery(Delivery delivery){
@@ -74,24 +85,15 @@ public class Order {
     }
 
     // == 비즈니스 로직 == //
-    public void cancel(){
+    // 취소할 수 있는지 확인 - 상태는 OrderService.cancelOrder 가 같은 조건을 건 update 로 바꾼다 (OrderRepository.cancelAll)
+    // 읽은 값으로 CANCEL 을 쓰면 같은 주문을 동시에 취소할 때 둘 다 통과해서 재고가 두 번 복구된다
+    // 재고 복구도 OrderService.cancelOrder 에서 상품별 update 한 문장으로 (ItemRepository.increaseStock)
+    public void checkCancellable(){
+        if (status == OrderStatus.CANCEL){
+            throw new IllegalStateException("이미 취소된 주문입니다");
+        }
         if (delivery.getStatus() == DeliveryStatus.COMP){
             throw new IllegalStateException("이미 배송완료된 상품은 취소가 불가능합니다");
         }
-
-        this.setStatus(OrderStatus.CANCEL);
-        for (OrderItem orderItem : orderItems) {
-            orderItem.cancel();
-        }
-    }
-
-    // == 조회 로직 == //
-    // 전체 주문 가격
-    public int getTotalPrice(){
-        int totalPrice = 0;
-        for (OrderItem orderItem : orderItems){
-            totalPrice += orderItem.getTotalPrice();
-        }
-        return totalPrice;
     }
 }
@@ -1,5 +1,6 @@
 package jpabook.jpashop.domain.item;
 
+import jpabook.jpashop.domain.PooledSequenceIdGenerator;
 import jpabook.jpashop.domain.item.Item;
 import jpabook.jpashop.domain.item.Order;
 import lombok.AccessLevel;
@@ -14,7 +15,7 @@ import javax.persistence.*;
 @NoArgsConstructor(access = AccessLevel.PROTECTED) // protected 생성자 생성
 public class OrderItem {
 
-    @Id @GeneratedValue
+    @Id @GeneratedValue(generator = PooledSequenceIdGenerator.NAME)
     @Column(name = "order_item_id")
     private Long id;
 
@@ -48,9 +49,13 @@ public class OrderItem {
         return orderItem;
     }
 
-    // == 비즈니스 로직 == //
-    public void cancel() {
-        getItem().addStock(count);
+    // 재고를 DB 에서 이미 차감한 경우 (ItemRepository.decreaseStock) - 엔티티에서 다시 재고를 빼지 않는다
+    public static OrderItem createReservedOrderItem(Item item, int orderPrice, int count){
+        OrderItem orderItem = new OrderItem();
+        orderItem.setItem(item);
+        orderItem.setOrderPrice(orderPrice);
+        orderItem.setCount(count);
+        return orderItem;
     }
 
     // == 조회 로직 (주문상품 전체 확인) == //
@@ -0,0 +1,45 @@
+package jpabook.jpashop.domain.item;
+
+import jpabook.jpashop.domain.PooledSequenceIdGenerator;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 밖으로 보낼 주문 이벤트 (transactional outbox)
+ * 주문/취소와 같은 트랜잭션에서 쌓아두고, OutboxRelay 가 모아서 보낸 뒤 지운다. (주문이 롤백되면 이벤트도 없음)
+ * 주문 FK 는 걸지 않는다 - 주문 데이터를 정리해도 아직 못 보낸 이벤트는 남아야 한다.
+ */
+@Entity
+// 릴레이가 오래된 순서 (occurredAt, id) 로 읽는다
+@Table(name = "outbox_event", indexes = @Index(name = "idx_outbox_event_occurred_at_id", columnList = "occurredAt, outbox_event_id"))
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class OutboxEvent {
+
+    @Id
+    @GeneratedValue(generator = PooledSequenceIdGenerator.NAME)
+    @Column(name = "outbox_event_id")
+    private Long id;
+
+    private Long orderId;
+
+    @Enumerated(EnumType.STRING)
+    private OutboxEventType type;
+
+    // 이벤트 내용 (JSON)
+    @Column(length = 1000)
+    private String payload;
+
+    private LocalDateTime occurredAt;
+
+    public OutboxEvent(Long orderId, OutboxEventType type, String payload) {
+        this.orderId = orderId;
+        this.type = type;
+        this.payload = payload;
+        this.occurredAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,5 @@
+package jpabook.jpashop.domain.item;
+
+public enum OutboxEventType {
+    ORDER_CREATED, ORDER_CANCELLED
+}
@@ -0,0 +1,5 @@
+@GenericGenerator(name = PooledSequenceIdGenerator.NAME, strategy = "jpabook.jpashop.domain.PooledSequenceIdGenerator")
+package jpabook.jpashop.domain.item;
+
+import jpabook.jpashop.domain.PooledSequenceIdGenerator;
+import org.hibernate.annotations.GenericGenerator;
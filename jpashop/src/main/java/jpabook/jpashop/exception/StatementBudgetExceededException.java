@@ -0,0 +1,19 @@
+package jpabook.jpashop.exception;
+
+public class StatementBudgetExceededException extends RuntimeException{
+    public StatementBudgetExceededException() {
+    }
+
+    public StatementBudgetExceededException(String message) {
+        super(message);
+    }
+
+    public StatementBudgetExceededException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public StatementBudgetExceededException(Throwable cause) {
+        super(cause);
+    }
+
+}
@@ -0,0 +1,136 @@
+package jpabook.jpashop.monitoring;
+
+import jpabook.jpashop.exception.StatementBudgetExceededException;
+import jpabook.jpashop.monitoring.SqlStatementStats.RepeatedStatement;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * HTTP 요청마다 실행된 SQL 문 수와 DB 시간을 응답 헤더로 내려준다. (jpashop.sql-stats.enabled)
+ * - X-SQL-Count, X-SQL-Time-Ms
+ * - X-SQL-N-Plus-One: 같은 SQL 이 바인딩 값만 바뀌어서 n-plus-one-threshold 번 이상 실행된 SQL 수 (SQL 은 경고 로그)
+ * - 컨트롤러에 @StatementBudget 이 있으면 허용 문장 수를 넘었는지 확인
+ *
+ * 응답 JSON 을 만드는 동안의 지연 로딩까지 세야 하므로 응답 본문을 버퍼에 모았다가 헤더를 붙인 뒤 내보낸다.
+ * 스트리밍 응답(unbuffered-paths)은 버퍼에 모으지 않으므로 헤더 없이 로그만 남는다.
+ * 비동기 요청은 요청 스레드와 결과를 쓰는 디스패치에서 실행된 문장을 합친다. (future 를 완성하는 다른 스레드의 문장은 제외)
+ * 모든 요청의 응답 복사, SQL 마다 값이 채워진 문자열, 요청별 SQL 목록 비용이 들기 때문에 기본은 꺼져 있다. (개발/테스트용)
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "jpashop.sql-stats.enabled", havingValue = "true")
+public class SqlStatementFilter extends OncePerRequestFilter {
+
+    public static final String COUNT_HEADER = "X-SQL-Count";
+    public static final String TIME_HEADER = "X-SQL-Time-Ms";
+    public static final String N_PLUS_ONE_HEADER = "X-SQL-N-Plus-One";
+
+    private static final String STATS_ATTRIBUTE = SqlStatementFilter.class.getName() + ".STATS";
+
+    private final int nPlusOneThreshold;
+    private final boolean failOnBudgetExceeded;
+    private final List<String> unbufferedPaths;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    public SqlStatementFilter(@Value("${jpashop.sql-stats.n-plus-one-threshold:3}") int nPlusOneThreshold,
+                              @Value("${jpashop.sql-stats.fail-on-budget-exceeded:false}") boolean failOnBudgetExceeded,
+                              @Value("${jpashop.sql-stats.unbuffered-paths:}") List<String> unbufferedPaths) {
+        this.nPlusOneThreshold = nPlusOneThreshold;
+        this.failOnBudgetExceeded = failOnBudgetExceeded;
+        this.unbufferedPaths = unbufferedPaths;
+    }
+
+    // 비동기 요청은 결과를 쓰는 디스패치에서 마무리한다
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        HttpServletResponse target = response;
+        if (isBuffered(request)) {
+            ContentCachingResponseWrapper wrapper = WebUtils.getNativeResponse(response, ContentCachingResponseWrapper.class);
+            target = wrapper != null ? wrapper : new ContentCachingResponseWrapper(response);
+        }
+
+        SqlStatementStats stats = (SqlStatementStats) request.getAttribute(STATS_ATTRIBUTE);
+        if (stats == null) {
+            stats = SqlStatementStats.detached();
+            request.setAttribute(STATS_ATTRIBUTE, stats);
+        }
+        SqlStatementStats scope = SqlStatementStats.continueFrom(stats);
+        try {
+            filterChain.doFilter(request, target);
+        } finally {
+            scope.close();
+        }
+        if (isAsyncStarted(request)) {
+            return;
+        }
+
+        report(request, target, stats);
+        if (target instanceof ContentCachingResponseWrapper) {
+            ((ContentCachingResponseWrapper) target).copyBodyToResponse();
+        }
+    }
+
+    private void report(HttpServletRequest request, HttpServletResponse response, SqlStatementStats stats) {
+        long count = stats.getStatementCount();
+        List<RepeatedStatement> repeated = stats.getRepeatedStatements(nPlusOneThreshold);
+        if (!response.isCommitted()) {
+            response.setHeader(COUNT_HEADER, String.valueOf(count));
+            response.setHeader(TIME_HEADER, String.format("%.3f", stats.getElapsedNanos() / 1_000_000.0));
+            if (!repeated.isEmpty()) {
+                response.setHeader(N_PLUS_ONE_HEADER, String.valueOf(repeated.size()));
+            }
+        }
+        for (RepeatedStatement statement : repeated) {
+            log.warn("N+1 의심 {} {}: 같은 SQL 을 값만 바꿔서 {}번 실행 - {}",
+                    request.getMethod(), request.getRequestURI(), statement.getCount(), statement.getSql());
+        }
+
+        StatementBudget budget = findBudget(request);
+        if (budget != null && count > budget.value()) {
+            String message = String.format("%s %s: SQL %d문 실행 (허용 %d문)",
+                    request.getMethod(), request.getRequestURI(), count, budget.value());
+            if (failOnBudgetExceeded) {
+                throw new StatementBudgetExceededException(message);
+            }
+            log.warn(message);
+        }
+    }
+
+    private StatementBudget findBudget(HttpServletRequest request) {
+        Object handler = request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE);
+        if (!(handler instanceof HandlerMethod)) {
+            return null;
+        }
+        HandlerMethod handlerMethod = (HandlerMethod) handler;
+        StatementBudget budget = handlerMethod.getMethodAnnotation(StatementBudget.class);
+        return budget != null ? budget
+                : AnnotatedElementUtils.findMergedAnnotation(handlerMethod.getBeanType(), StatementBudget.class);
+    }
+
+    private boolean isBuffered(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return unbufferedPaths.stream().noneMatch(pattern -> pathMatcher.match(pattern, path));
+    }
+}
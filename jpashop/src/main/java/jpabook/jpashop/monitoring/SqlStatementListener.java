@@ -0,0 +1,23 @@
+package jpabook.jpashop.monitoring;
+
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+
+/**
+ * p6spy 로 감싼 DataSource 에서 문장이 실행될 때마다 SqlStatementStats 에 기록한다.
+ * (p6spy-spring-boot-starter 가 JdbcEventListener 빈을 자동으로 등록해줌)
+ * 값이 채워진 SQL 은 N+1 판단(같은 SQL, 다른 값)에만 쓰므로 집계 중일 때만 만든다.
+ */
+@Component
+public class SqlStatementListener extends SimpleJdbcEventListener {
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        if (SqlStatementStats.isActive()) {
+            SqlStatementStats.record(statementInformation.getSql(), statementInformation.getSqlWithValues(), timeElapsedNanos);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package jpabook.jpashop.monitoring;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 현재 스레드에서 실행된 SQL 문 개수/실행 시간 집계
+ *
+ * try (SqlStatementStats stats = SqlStatementStats.begin()) {
+ *     ...
+ *     stats.getStatementCount();
+ * }
+ *
+ * 범위는 중첩할 수 있고, 안쪽 범위에서 실행된 문장은 바깥 범위에도 같이 집계된다.
+ * 다른 스레드에서 실행한 문장을 같이 집계하려면 그 스레드에서 continueFrom(바깥 범위) 로 범위를 연다.
+ * JDBC 배치는 executeBatch 한 번이 1 문장(DB 왕복 1번)으로 집계된다.
+ * 값은 SqlStatementListener(p6spy) 가 채운다.
+ */
+public final class SqlStatementStats implements AutoCloseable {
+
+    private static final ThreadLocal<SqlStatementStats> CURRENT = new ThreadLocal<>();
+
+    private final SqlStatementStats parent;
+    // 이 범위를 열기 전에 이 스레드에서 열려 있던 범위 (다른 스레드에서 이어받은 범위면 parent 와 다르다)
+    private final SqlStatementStats previous;
+    private long statementCount;
+    private long elapsedNanos;
+    // SQL(? 그대로) -> 실행 횟수, 바인딩 값이 달랐는지
+    private final Map<String, Repeats> repeats = new LinkedHashMap<>();
+    private boolean closed;
+
+    private SqlStatementStats(SqlStatementStats parent, SqlStatementStats previous) {
+        this.parent = parent;
+        this.previous = previous;
+    }
+
+    public static SqlStatementStats begin() {
+        return continueFrom(CURRENT.get());
+    }
+
+    /* parent 범위에도 같이 집계되는 범위를 현재 스레드에서 연다 (parent 가 null 이면 begin 과 같음) */
+    public static SqlStatementStats continueFrom(SqlStatementStats parent) {
+        SqlStatementStats stats = new SqlStatementStats(parent, CURRENT.get());
+        CURRENT.set(stats);
+        return stats;
+    }
+
+    /* 어느 스레드에도 걸지 않은 집계 - continueFrom 의 parent 로 넘겨서 여러 스레드/단계의 문장을 모을 때 사용 */
+    public static SqlStatementStats detached() {
+        SqlStatementStats stats = new SqlStatementStats(null, null);
+        stats.closed = true;
+        return stats;
+    }
+
+    public static SqlStatementStats current() {
+        return CURRENT.get();
+    }
+
+    static boolean isActive() {
+        return CURRENT.get() != null;
+    }
+
+    static void record(String sql, String sqlWithValues, long elapsedNanos) {
+        for (SqlStatementStats stats = CURRENT.get(); stats != null; stats = stats.parent) {
+            stats.add(sql, sqlWithValues, elapsedNanos);
+        }
+    }
+
+    private synchronized void add(String sql, String sqlWithValues, long nanos) {
+        statementCount++;
+        elapsedNanos += nanos;
+        if (sql != null) {
+            repeats.computeIfAbsent(sql, k -> new Repeats(sqlWithValues)).add(sqlWithValues);
+        }
+    }
+
+    public synchronized long getStatementCount() {
+        return statementCount;
+    }
+
+    public synchronized long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    // 서로 다른 SQL(? 그대로) 수 - DB/드라이버가 준비해 두는 실행 계획 수
+    public synchronized int getDistinctStatementCount() {
+        return repeats.size();
+    }
+
+    /**
+     * 같은 SQL 이 바인딩 값만 바뀌어서 minCount 번 이상 실행된 것 (N+1 의심)
+     * 값까지 같은 SQL 의 반복은 N+1 이 아니라 중복 조회이므로 제외
+     */
+    public synchronized List<RepeatedStatement> getRepeatedStatements(int minCount) {
+        List<RepeatedStatement> result = new ArrayList<>();
+        repeats.forEach((sql, r) -> {
+            if (r.count >= minCount && r.varied) {
+                result.add(new RepeatedStatement(sql, r.count));
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class RepeatedStatement {
+        private final String sql;
+        private final long count;
+    }
+
+    private static class Repeats {
+        private final String firstValues;
+        private long count;
+        private boolean varied;
+
+        private Repeats(String firstValues) {
+            this.firstValues = firstValues;
+        }
+
+        private void add(String sqlWithValues) {
+            count++;
+            varied |= !Objects.equals(firstValues, sqlWithValues);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package jpabook.jpashop.monitoring;
+
+import java.lang.annotation.*;
+
+/**
+ * 요청 하나에서 실행할 수 있는 최대 SQL 문 수 (컨트롤러 메서드 또는 클래스)
+ * 넘으면 경고 로그를 남기고, jpashop.sql-stats.fail-on-budget-exceeded=true 면(테스트) 요청을 실패시킨다.
+ * 응답 JSON 을 만드는 동안 지연 로딩으로 실행된 문장까지 센다. - SqlStatementFilter
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface StatementBudget {
+
+    int value();
+}
@@ -0,0 +1,113 @@
+package jpabook.jpashop.outbox;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import jpabook.jpashop.domain.item.OutboxEvent;
+import jpabook.jpashop.repository.OutboxRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * outbox 에 쌓인 주문 이벤트를 OutboxSink 로 보내고 지운다.
+ *
+ * - poll-interval-ms 마다 오래된 순서로 batch-size 건씩 읽어서 한 번에 보내고, 받았다고 하면(ack) 그 묶음을 지운다.
+ *   묶음이 꽉 차 있으면 바로 다음 묶음을 이어서 보낸다. (밀려 있으면 쉬지 않고 비움)
+ * - 보내다 실패하면 지우지 않고 멈춘다. 다음 주기에 같은 이벤트부터 다시 보내므로 순서는 지켜지고, 이벤트는 한 번 이상 간다.
+ * - 읽기도 쓰기 트랜잭션으로 원본 DB 에서 한다. (복제 DB 에서 읽으면 이미 보내고 지운 이벤트를 다시 보낼 수 있음)
+ * - 서버가 여러 대면 한 서버에서만 켠다 (jpashop.outbox.relay.enabled). 같이 켜면 같은 이벤트가 중복해서 갈 수 있다.
+ * - 지표: jpashop.outbox.relayed (보낸 이벤트 수, 초당 비율이 처리량), jpashop.outbox.relay.failures,
+ *   jpashop.outbox.relay.batch (묶음 하나 보내고 지우는 시간), jpashop.outbox.lag (마지막으로 확인한 가장 오래된 미전송 이벤트의 나이)
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "jpashop.outbox.relay.enabled", havingValue = "true", matchIfMissing = true)
+public class OutboxRelay {
+
+    private final OutboxRepository outboxRepository;
+    private final OutboxSink sink;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    private final Counter relayed;
+    private final Counter failures;
+    private final Timer batchTimer;
+    private final AtomicLong lagMillis = new AtomicLong();
+
+    public OutboxRelay(OutboxRepository outboxRepository, OutboxSink sink, TransactionTemplate transactionTemplate,
+                       MeterRegistry meterRegistry,
+                       @Value("${jpashop.outbox.relay.batch-size:500}") int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batch-size 는 1 이상이어야 합니다.");
+        }
+        this.outboxRepository = outboxRepository;
+        this.sink = sink;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.relayed = Counter.builder("jpashop.outbox.relayed")
+                .description("보내고 지운 outbox 이벤트 수")
+                .register(meterRegistry);
+        this.failures = Counter.builder("jpashop.outbox.relay.failures")
+                .description("보내지 못한 묶음 수")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("jpashop.outbox.relay.batch")
+                .description("묶음 하나를 보내고 지우는 시간")
+                .register(meterRegistry);
+        TimeGauge.builder("jpashop.outbox.lag", lagMillis, TimeUnit.MILLISECONDS, AtomicLong::doubleValue)
+                .description("가장 오래된 미전송 이벤트의 나이 (마지막 확인 시점)")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${jpashop.outbox.relay.poll-interval-ms:1000}",
+            initialDelayString = "${jpashop.outbox.relay.poll-interval-ms:1000}")
+    public void scheduledRelay() {
+        relay();
+    }
+
+    /**
+     * 쌓인 이벤트를 다 보낼 때까지 (또는 실패할 때까지) 묶음 단위로 보낸다.
+     * @return 보내고 지운 이벤트 수
+     */
+    public synchronized int relay() {
+        int total = 0;
+        while (true) {
+            List<OutboxEvent> batch = transactionTemplate.execute(status -> outboxRepository.findOldest(batchSize));
+            lagMillis.set(batch.isEmpty() ? 0 : Math.max(0, Duration.between(batch.get(0).getOccurredAt(), LocalDateTime.now()).toMillis()));
+            if (batch.isEmpty()) {
+                return total;
+            }
+
+            long startNanos = System.nanoTime();
+            try {
+                sink.publish(batch);
+            } catch (Exception e) {
+                failures.increment();
+                log.warn("outbox 이벤트 {}건 전송 실패 - 다음 주기에 다시 보냄 (첫 이벤트 id {})", batch.size(), batch.get(0).getId(), e);
+                return total;
+            }
+            List<Long> ids = batch.stream().map(OutboxEvent::getId).collect(toList());
+            transactionTemplate.executeWithoutResult(status -> outboxRepository.deleteAllById(ids));
+            batchTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            relayed.increment(batch.size());
+            total += batch.size();
+
+            if (batch.size() < batchSize) {
+                lagMillis.set(0);
+                return total;
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package jpabook.jpashop.outbox;
+
+import jpabook.jpashop.domain.item.OutboxEvent;
+
+import java.util.List;
+
+/**
+ * OutboxRelay 가 이벤트를 보내는 곳 (메시지 브로커 등)
+ * jpashop.outbox.sink 로 기본 구현(memory, file)을 고르거나, 직접 만든 구현을 빈으로 등록한다.
+ */
+public interface OutboxSink {
+
+    /**
+     * 이벤트 묶음을 보낸다. 정상적으로 반환하면 받은 것으로 보고(ack) 릴레이가 outbox 에서 지운다.
+     * 예외를 던지면 지우지 않고 다음 주기에 같은 이벤트부터 다시 보낸다. (같은 이벤트가 두 번 갈 수 있으므로 받는 쪽은 id 로 중복을 거른다)
+     * @param events 오래된 순서 (같은 주문의 이벤트는 생성 -> 취소 순서)
+     */
+    void publish(List<OutboxEvent> events) throws Exception;
+}
@@ -0,0 +1,112 @@
+package jpabook.jpashop.repository;
+
+import jpabook.jpashop.domain.item.Category;
+import jpabook.jpashop.domain.item.Item;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.Hibernate;
+import org.hibernate.query.NativeQuery;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+@RequiredArgsConstructor
+public class CategoryRepository {
+
+    private final EntityManager em;
+
+    public void save(Category category){
+        em.persist(category);
+    }
+
+    public Category findOne(Long id){
+        return em.find(Category.class, id);
+    }
+
+    // 경로 순으로 정렬하면 부모가 항상 자식보다 먼저 나온다 (트리를 한 번에 조립할 수 있음)
+    public List<Category> findAll(){
+        return em.createQuery("select c from Category c order by c.path, c.id", Category.class)
+                .getResultList();
+    }
+
+    /**
+     * 카테고리를 새 부모 아래로 옮긴다 - 옮긴 카테고리와 그 아래 모든 카테고리의 경로를 update 두 번으로 바꾼다. (하위 카테고리를 로딩하지 않음)
+     * 옮긴 카테고리는 다시 읽고, 이전/새 부모의 child 는 이미 로딩된 경우만 맞춘다. (로딩되지 않았으면 나중에 DB 에서 읽음)
+     * 벌크 update 는 영속성 컨텍스트를 거치지 않으므로 이미 로딩된 하위 카테고리의 path 는 이전 값 그대로다.
+     * 같은 트랜잭션에서 하위 카테고리를 이어서 쓰려면 다시 조회해야 한다. (2차 캐시의 category 영역은 하이버네이트가 비운다)
+     */
+    public void moveSubtree(Category category, Category newParent){
+        Category oldParent = category.getParent();
+        String oldSubtreePath = category.getSubtreePath();
+        String newPath = newParent.getSubtreePath();
+        em.createQuery("update Category c set c.parent = :parent, c.path = :path where c.id = :id")
+                .setParameter("parent", newParent)
+                .setParameter("path", newPath)
+                .setParameter("id", category.getId())
+                .executeUpdate();
+        em.createQuery("update Category c" +
+                        " set c.path = concat(:newPath, substring(c.path, :from))" +
+                        " where c.path like :oldPath")
+                .setParameter("newPath", newPath + category.getId() + "/")
+                .setParameter("from", oldSubtreePath.length() + 1)
+                .setParameter("oldPath", oldSubtreePath + "%")
+                .executeUpdate();
+        em.refresh(category);
+
+        if (oldParent != null && Hibernate.isInitialized(oldParent.getChild())) {
+            oldParent.getChild().remove(category);
+        }
+        if (Hibernate.isInitialized(newParent.getChild())) {
+            newParent.getChild().add(category);
+        }
+    }
+
+    /**
+     * 카테고리와 그 아래 모든 카테고리에 속한 상품 (페이징)
+     * 하위 카테고리는 path like 'prefix%' 로 찾으므로 path 인덱스를 탄다. 한 상품이 여러 하위 카테고리에 있어도 한 번만 나온다.
+     */
+    public List<Item> findItemsInSubtree(Category category, int offset, int limit){
+        return em.createQuery("select i from Item i" +
+                        " where exists (select c.id from Category c join c.items ci" +
+                        " where ci = i and (c.id = :categoryId or c.path like :subtreePath))" +
+                        " order by i.id", Item.class)
+                .setParameter("categoryId", category.getId())
+                .setParameter("subtreePath", category.getSubtreePath() + "%")
+                .setFirstResult(offset)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * 카테고리별 자기 + 하위 카테고리 전체의 상품 수 (같은 상품은 한 번만 셈)
+     * 상품이 하나도 없는 카테고리는 결과에 없다.
+     * 하위 카테고리는 path 가 'a.path + a.id + /' 로 시작하는 범위 (>= '.../', < '.../0', '0' 은 '/' 다음 문자)로 찾는다.
+     * like concat(...) 이나 "d.id = a.id or ..." 는 인덱스를 못 써서 카테고리 x 카테고리 전체를 비교하지만,
+     * 범위 조건은 카테고리마다 path 인덱스 구간 하나만 읽는다. (자기 카테고리는 union all 로 따로 붙임)
+     */
+    public Map<Long, Long> countItemsBySubtree(){
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = em.createNativeQuery("select s.ancestor_id, count(distinct ci.item_id)" +
+                        " from (select a.category_id as ancestor_id, d.category_id" +
+                        "       from category a join category d" +
+                        "         on d.path >= concat(a.path, a.category_id, '/')" +
+                        "        and d.path < concat(a.path, a.category_id, '0')" +
+                        "       union all" +
+                        "       select category_id, category_id from category) s" +
+                        " join category_item ci on ci.category_id = s.category_id" +
+                        " group by s.ancestor_id")
+                .unwrap(NativeQuery.class)
+                .addSynchronizedEntityClass(Category.class)
+                .addSynchronizedQuerySpace("category_item")
+                .getResultList();
+
+        Map<Long, Long> counts = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            counts.put(((Number) row[0]).longValue(), ((Number) row[1]).longValue());
+        }
+        return counts;
+    }
+}
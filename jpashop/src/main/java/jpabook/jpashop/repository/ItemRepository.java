@@ -1,17 +1,31 @@
 package jpabook.jpashop.repository;
 
 import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.repository.support.BatchInQueryLoader;
+import jpabook.jpashop.repository.support.LikePatterns;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.QueryHints;
+import org.hibernate.query.NativeQuery;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.persistence.Cache;
 import javax.persistence.EntityManager;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 @RequiredArgsConstructor
 public class ItemRepository {
 
+    // 재고 차감 update 가 걸어두는 가상의 테이블 이름 (실제 테이블과 겹치지 않으면 됨)
+    // 하이버네이트는 벌크 update 가 어떤 테이블을 바꿨는지 모르면 2차 캐시 전체를 비우므로, 관계 없는 이름을 알려준다
+    private static final String STOCK_QUERY_SPACE = "item_stock";
+
     private final EntityManager em;
+    private final BatchInQueryLoader batchInQueryLoader;
 
     public void save(Item item){
         // id 값이 null => 새로 생성한 객체
@@ -30,7 +44,83 @@ public class ItemRepository {
         return em.find(Item.class, id);
     }
 
+    // 쿼리 캐시 (jpashop.cache.enabled) - 상품이 추가/수정되어 item 테이블이 바뀌면 커밋 시점에 무효화된다
     public List<Item> findAll(){
-        return em.createQuery("select i from Item i", Item.class).getResultList();
+        return em.createQuery("select i from Item i", Item.class)
+                .setHint(QueryHints.CACHEABLE, true)
+                .getResultList();
+    }
+
+    // id 목록으로 한 번에 조회 (IN 절은 BatchInQueryLoader 가 묶음 단위로 나눠줌)
+    public List<Item> findAllById(Collection<Long> ids){
+        return batchInQueryLoader.loadManaged(ids, (entityManager, chunk) ->
+                entityManager.createQuery("select i from Item i where i.id in :ids", Item.class)
+                        .setParameter("ids", chunk)
+                        .getResultList());
+    }
+
+    // 이름 앞부분으로 검색 (name 인덱스) - 엔티티 대신 id, 이름만 최대 limit 건
+    public List<NameOptionDto> findNameOptions(String namePrefix, int limit){
+        return em.createQuery("select new jpabook.jpashop.repository.NameOptionDto(i.id, i.name)" +
+                        " from Item i" +
+                        " where i.name like :prefix escape '" + LikePatterns.ESCAPE + "'" +
+                        " order by i.name, i.id", NameOptionDto.class)
+                .setParameter("prefix", LikePatterns.startsWith(namePrefix))
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    // 재고 차감을 조건부 update 한 문장으로 처리한다 (읽고-계산하고-쓰는 사이에 다른 주문이 끼어들 틈이 없음)
+    // 재고가 부족하면 where 조건에 걸려서 0 row 가 반환된다
+    // JPQL 벌크 update 는 상품 하나를 바꿔도 2차 캐시의 상품 영역과 상품 쿼리 캐시를 통째로 비우므로 네이티브로 실행하고
+    // 바뀐 상품만 캐시에서 제거한다
+    public int decreaseStock(Long itemId, int quantity){
+        return updateStock("update item set stock_quantity = stock_quantity - :quantity" +
+                " where item_id = :itemId and stock_quantity >= :quantity", itemId, quantity);
+    }
+
+    // 재고 복구 (일괄 취소) - 차감과 같은 방식으로 상품당 update 한 문장
+    public int increaseStock(Long itemId, int quantity){
+        return updateStock("update item set stock_quantity = stock_quantity + :quantity" +
+                " where item_id = :itemId", itemId, quantity);
+    }
+
+    private int updateStock(String sql, Long itemId, int quantity){
+        // 가상 테이블 이름만 걸어두면 자동 flush 도 건너뛰므로, 아직 insert 안된 상품이 있을 수 있어 직접 flush
+        em.flush();
+        int updated = em.createNativeQuery(sql)
+                .setParameter("quantity", quantity)
+                .setParameter("itemId", itemId)
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace(STOCK_QUERY_SPACE)
+                .executeUpdate();
+        if (updated > 0) {
+            refreshIfLoaded(itemId);
+            evictFromCache(itemId);
+        }
+        return updated;
+    }
+
+    // 벌크 연산은 영속성 컨텍스트를 거치지 않으므로, 이미 로딩된 엔티티가 있으면 DB 값으로 다시 맞춰준다
+    // 로딩 안된 경우에는 프록시만 돌려받으므로 추가 쿼리가 나가지 않는다
+    private void refreshIfLoaded(Long itemId){
+        Item item = em.getReference(Item.class, itemId);
+        if (Hibernate.isInitialized(item)) {
+            em.refresh(item);
+        }
+    }
+
+    // 지금 한 번 + 트랜잭션이 끝난 뒤 한 번 (그 사이에 다른 트랜잭션이 커밋 전 값을 다시 캐시에 올렸을 수 있음)
+    private void evictFromCache(Long itemId){
+        Cache cache = em.getEntityManagerFactory().getCache();
+        cache.evict(Item.class, itemId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.evict(Item.class, itemId);
+                }
+            });
+        }
     }
 }
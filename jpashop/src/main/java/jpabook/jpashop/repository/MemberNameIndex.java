@@ -0,0 +1,289 @@
+package jpabook.jpashop.repository;
+
+import jpabook.jpashop.domain.item.Member;
+import jpabook.jpashop.repository.support.NameIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.*;
+import org.hibernate.jpa.QueryHints;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * 주문 검색의 회원 이름 조건을 회원 id 목록으로 바꿔주는 메모리 인덱스 (jpashop.member-name-index.enabled)
+ *
+ * - 시작할 때 전체 회원 (id, 이름)을 한 번 읽고, 이후에는 회원 insert/update/delete 가 커밋된 뒤에
+ *   하이버네이트 커밋 후 이벤트로 반영한다. (MemberService.join/update 외의 경로로 저장해도 반영됨)
+ * - 이 서버에서 커밋된 변경만 알기 때문에 서버가 한 대일 때만 켠다. (다른 서버의 변경은 보이지 않음)
+ * - 엔티티를 거치지 않는 회원 변경(datagen 의 JDBC insert, 벌크 update, 네이티브 쿼리)은 이벤트가 없으므로
+ *   변경한 쪽에서 invalidate() 를 호출해야 한다. 다시 읽기가 끝날 때까지는 인덱스를 믿지 않고 like 로만 조회한다.
+ * - 아직 커밋 안 된 회원은 인덱스에 없으므로 같은 트랜잭션 안에서 새로 저장한 회원으로는 찾을 수 없다.
+ * - 인덱스가 준비되지 않았거나(시작 직후, invalidate() 후 다시 읽는 중), 패턴을 해석할 수 없거나, 후보가 max-candidates 보다 많으면
+ *   Optional.empty() 를 돌려준다. 이 때는 기존처럼 like 로만 조회한다.
+ */
+@Slf4j
+@Component
+public class MemberNameIndex implements PostCommitInsertEventListener, PostCommitUpdateEventListener,
+        PostCommitDeleteEventListener {
+
+    private final EntityManagerFactory emf;
+    private final boolean enabled;
+    private final int maxCandidates;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // 전체 로딩이 끝나기 전에는 null, 그 사이의 변경은 pending 에 모았다가 로딩이 끝나면 반영
+    private NameIndex index;
+    private final List<Consumer<NameIndex>> pending = new ArrayList<>();
+    // invalidate() 마다 증가 - 그 전에 시작한 로딩이 늦게 끝나도 (변경 전 데이터라서) 버린다
+    private long generation;
+
+    public MemberNameIndex(EntityManagerFactory emf,
+                           @Value("${jpashop.member-name-index.enabled:false}") boolean enabled,
+                           @Value("${jpashop.member-name-index.max-candidates:1000}") int maxCandidates) {
+        this.emf = emf;
+        this.enabled = enabled;
+        this.maxCandidates = maxCandidates;
+    }
+
+    @PostConstruct
+    public void registerListeners() {
+        if (!enabled) {
+            return;
+        }
+        EventListenerRegistry registry = emf.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+    }
+
+    // 회원이 많으면 시간이 걸리므로 애플리케이션 시작을 막지 않고 별도 스레드에서 읽는다
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadInBackground() {
+        if (enabled) {
+            Thread loader = new Thread(this::load, "member-name-index");
+            loader.setDaemon(true);
+            loader.start();
+        }
+    }
+
+    public void load() {
+        long loading = currentGeneration();
+        long start = System.nanoTime();
+        long[] ids = new long[1024];
+        String[] names = new String[1024];
+        int count = 0;
+
+        EntityManager em = emf.createEntityManager();
+        try {
+            try (Stream<Object[]> rows = em.createQuery(
+                            "select m.id, m.name from Member m where m.name is not null order by m.id", Object[].class)
+                    .setHint(QueryHints.HINT_FETCH_SIZE, 1000)
+                    .setHint(QueryHints.HINT_READONLY, true)
+                    .getResultStream()) {
+                for (Object[] row : (Iterable<Object[]>) rows::iterator) {
+                    if (count == ids.length) {
+                        ids = Arrays.copyOf(ids, count * 2);
+                        names = Arrays.copyOf(names, count * 2);
+                    }
+                    ids[count] = (Long) row[0];
+                    names[count] = (String) row[1];
+                    count++;
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("회원 이름 인덱스를 만들지 못했습니다. 이름 검색은 like 로만 조회합니다.", e);
+            return;
+        } finally {
+            em.close();
+        }
+
+        NameIndex loaded = NameIndex.build(ids, names, count);
+        lock.writeLock().lock();
+        try {
+            if (loading != generation) {
+                return;
+            }
+            pending.forEach(change -> change.accept(loaded));
+            pending.clear();
+            index = loaded;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("회원 이름 인덱스 로딩 완료: {}명, {} ms", count, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private long currentGeneration() {
+        lock.readLock().lock();
+        try {
+            return generation;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean isReady() {
+        lock.readLock().lock();
+        try {
+            return index != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * like 패턴에 맞을 수 있는 회원 id 후보
+     * 'abc' (와일드카드 없음), 'abc%' -> 앞부분 검색 / '%abc%', '%abc' -> 트라이그램 검색
+     * 그 외 패턴('a%b', '_' 포함 등)이나 세 글자 미만 포함 검색은 해석하지 않는다.
+     */
+    public Optional<List<Long>> findIdsLike(String pattern) {
+        if (!enabled || pattern == null || pattern.indexOf('_') >= 0 || pattern.indexOf('\\') >= 0) {
+            return Optional.empty();
+        }
+        boolean leading = pattern.startsWith("%");
+        boolean trailing = pattern.length() > 1 && pattern.endsWith("%");
+        String text = pattern.substring(leading ? 1 : 0, pattern.length() - (trailing ? 1 : 0));
+        if (text.isEmpty() || text.indexOf('%') >= 0) {
+            return Optional.empty();
+        }
+
+        lock.readLock().lock();
+        try {
+            if (index == null) {
+                return Optional.empty();
+            }
+            long[] ids = leading ? index.containing(text, maxCandidates) : index.startingWith(text, maxCandidates);
+            return ids == null ? Optional.empty() : Optional.of(Arrays.stream(ids).boxed().collect(toList()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (!(event.getEntity() instanceof Member)) {
+            return;
+        }
+        Member member = (Member) event.getEntity();
+        long id = member.getId();
+        String name = member.getName();
+        if (name != null) {
+            apply(index -> index.add(id, name));
+        }
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (!(event.getEntity() instanceof Member)) {
+            return;
+        }
+        if (event.getOldState() == null) {
+            // 이전 값을 모르면(분리된 엔티티 update 등) 이전 이름을 지울 수 없으므로 처음부터 다시 읽는다
+            invalidate();
+            return;
+        }
+        int name = nameProperty(event.getPersister());
+        String oldName = (String) event.getOldState()[name];
+        String newName = (String) event.getState()[name];
+        long id = (Long) event.getId();
+        apply(index -> {
+            if (oldName != null) {
+                index.remove(id, oldName);
+            }
+            if (newName != null) {
+                index.add(id, newName);
+            }
+        });
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (!(event.getEntity() instanceof Member)) {
+            return;
+        }
+        String name = (String) event.getDeletedState()[nameProperty(event.getPersister())];
+        long id = (Long) event.getId();
+        if (name != null) {
+            apply(index -> index.remove(id, name));
+        }
+    }
+
+    /**
+     * 이벤트 없이 바뀐 회원이 있을 때 (datagen, 벌크/네이티브 쓰기) - 인덱스를 버리고 처음부터 다시 읽는다
+     * 다시 읽는 동안에는 like 로만 조회하고, 그 사이의 변경은 pending 에 모은다
+     */
+    public void invalidate() {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            index = null;
+            pending.clear();
+            generation++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        loadInBackground();
+    }
+
+    private void apply(Consumer<NameIndex> change) {
+        lock.writeLock().lock();
+        try {
+            if (index == null) {
+                pending.add(change);
+            } else {
+                change.accept(index);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static int nameProperty(EntityPersister persister) {
+        return persister.getEntityMetamodel().getPropertyIndex("name");
+    }
+
+    // 이 값은 커밋 후 처리를 등록할지만 정한다. 이벤트는 모든 엔티티에 대해 오므로 위에서 Member 인지 확인
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return persister.getMappedClass() == Member.class;
+    }
+
+    // 하이버네이트 5.x 에서는 아직 추상 메서드라 구현해야 한다 (철자가 틀린 이전 이름)
+    @Override
+    @Deprecated
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return requiresPostCommitHandling(persister);
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+}
@@ -1,6 +1,8 @@
 package jpabook.jpashop.repository;
 
 import jpabook.jpashop.domain.item.Member;
+import jpabook.jpashop.repository.support.BatchInQueryLoader;
+import jpabook.jpashop.repository.support.LikePatterns;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Repository;
 
@@ -8,6 +10,7 @@ import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.PersistenceContext;
 import javax.persistence.PersistenceUnit;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -15,6 +18,7 @@ import java.util.List;
 public class MemberRepository {
 
     private final EntityManager em;
+    private final BatchInQueryLoader batchInQueryLoader;
 
 //    @PersistenceUnit
 //    private EntityManagerFactory emf;
@@ -32,6 +36,25 @@ public class MemberRepository {
                 .getResultList();
     }
 
+    // id 목록으로 한 번에 조회 (IN 절은 BatchInQueryLoader 가 묶음 단위로 나눠줌)
+    public List<Member> findAllById(Collection<Long> ids){
+        return batchInQueryLoader.loadManaged(ids, (entityManager, chunk) ->
+                entityManager.createQuery("select m from Member m where m.id in :ids", Member.class)
+                        .setParameter("ids", chunk)
+                        .getResultList());
+    }
+
+    // 이름 앞부분으로 검색 (name 인덱스) - 엔티티 대신 id, 이름만 최대 limit 건
+    public List<NameOptionDto> findNameOptions(String namePrefix, int limit){
+        return em.createQuery("select new jpabook.jpashop.repository.NameOptionDto(m.id, m.name)" +
+                        " from Member m" +
+                        " where m.name like :prefix escape '" + LikePatterns.ESCAPE + "'" +
+                        " order by m.name, m.id", NameOptionDto.class)
+                .setParameter("prefix", LikePatterns.startsWith(namePrefix))
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
     public List<Member> findByName(String name){
         return em.createQuery("select m from Member m where m.name = :name", Member.class)
                 .setParameter("name", name)
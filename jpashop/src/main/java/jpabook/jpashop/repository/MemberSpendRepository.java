@@ -0,0 +1,211 @@
+package jpabook.jpashop.repository;
+
+import jpabook.jpashop.domain.item.MemberSpend;
+import jpabook.jpashop.domain.item.Order;
+import jpabook.jpashop.domain.item.OrderItem;
+import jpabook.jpashop.domain.item.OrderStatus;
+import jpabook.jpashop.repository.support.BatchInQueryLoader;
+import jpabook.jpashop.repository.support.TransactionBoundResource;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.Session;
+import org.hibernate.query.NativeQuery;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 회원별 주문 금액 합계(MemberSpend)
+ *
+ * 주문/취소할 때마다 바로 update 하지 않고 트랜잭션 안에서 회원별로 모아뒀다가 커밋 직전에 회원당 update 한 번으로 반영한다.
+ * - 일괄 주문의 insert 가 중간 update(자동 flush) 때문에 JDBC 배치로 묶이지 못하는 일이 없다.
+ * - 회원 id 순서로 update 하므로 같은 회원들을 주문하는 트랜잭션끼리 서로 락을 기다리다 교착상태에 빠지지 않는다.
+ * - 행이 없는 회원(첫 주문)은 insert 한다. 같은 회원의 첫 주문 두 건이 동시에 커밋되면 늦은 쪽의 insert 는 기본 키 충돌이 나므로
+ *   그 insert 만 savepoint 로 되돌리고 먼저 커밋된 행에 다시 update 한다. (주문 트랜잭션은 실패하지 않음)
+ *
+ * 주문 금액과 합계를 주문상품/주문에서 다시 계산해서 맞추는 쿼리(repair*, count*Mismatches)도 여기 둔다. (OrderTotalsRepairJob)
+ * 회원 id 범위 [fromMemberId, toMemberId] 단위로 실행한다.
+ */
+@Repository
+@RequiredArgsConstructor
+public class MemberSpendRepository {
+
+    // SQL 표준 SQLSTATE - 유일/기본 키 제약 위반
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    private final EntityManager em;
+    private final BatchInQueryLoader batchInQueryLoader;
+
+    public MemberSpend findOne(Long memberId){
+        return em.find(MemberSpend.class, memberId);
+    }
+
+    // 주문 금액 합계가 큰 회원 순
+    public List<MemberSpend> findTopSpenders(int limit){
+        return em.createQuery("select s from MemberSpend s order by s.totalSpent desc, s.memberId", MemberSpend.class)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    public void addOrder(Order order){
+        add(order.getMember().getId(), order.getTotalPrice(), 1);
+    }
+
+    public void cancelOrder(Order order){
+        add(order.getMember().getId(), -order.getTotalPrice(), -1);
+    }
+
+    // 일괄 취소 - 주문을 로딩하지 않고 회원별 금액/건수를 집계해서 뺀다 (상태를 바꾸기 전에 호출)
+    public void cancelOrders(Collection<Long> orderIds){
+        batchInQueryLoader.loadManaged(orderIds, (entityManager, chunk) ->
+                        entityManager.createQuery("select o.member.id, sum(o.totalPrice), count(o) from Order o" +
+                                        " where o.id in :ids and o.status = :status" +
+                                        " group by o.member.id", Object[].class)
+                                .setParameter("ids", chunk)
+                                .setParameter("status", OrderStatus.ORDER)
+                                .getResultList())
+                .forEach(row -> add((Long) row[0], -((Number) row[1]).longValue(), -((Number) row[2]).longValue()));
+    }
+
+    // 커밋 직전에 반영된다
+    public void add(Long memberId, long amount, long orders){
+        pending().merge(memberId, new long[]{amount, orders}, (a, b) -> new long[]{a[0] + b[0], a[1] + b[1]});
+    }
+
+    // 이 트랜잭션에서 아직 반영하지 않은 회원별 증감 (회원 id 순)
+    private Map<Long, long[]> pending(){
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("회원별 주문 금액 합계는 트랜잭션 안에서만 바꿀 수 있습니다.");
+        }
+        return TransactionBoundResource.get(this, TreeMap::new, deltas -> new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                apply(deltas);
+            }
+        });
+    }
+
+    private void apply(Map<Long, long[]> deltas){
+        deltas.forEach((memberId, delta) -> {
+            if (delta[0] == 0 && delta[1] == 0) {
+                return;
+            }
+            if (update(memberId, delta) == 0 && !insert(memberId, delta)) {
+                update(memberId, delta);
+            }
+        });
+        deltas.clear();
+    }
+
+    private int update(Long memberId, long[] delta){
+        return em.createQuery("update MemberSpend s" +
+                        " set s.totalSpent = s.totalSpent + :amount, s.orderCount = s.orderCount + :orders" +
+                        " where s.memberId = :memberId")
+                .setParameter("amount", delta[0])
+                .setParameter("orders", delta[1])
+                .setParameter("memberId", memberId)
+                .executeUpdate();
+    }
+
+    // 다른 트랜잭션이 먼저 같은 회원의 행을 넣었으면 (기본 키 충돌) false
+    // JPA 쿼리로 실패하면 트랜잭션 전체가 롤백 대상이 되므로 JDBC 로 실행하고 insert 만 savepoint 로 되돌린다
+    private boolean insert(Long memberId, long[] delta){
+        return em.unwrap(Session.class).doReturningWork(connection -> {
+            Savepoint savepoint = connection.setSavepoint();
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "insert into member_spend (member_id, total_spent, order_count) values (?, ?, ?)")) {
+                statement.setLong(1, memberId);
+                statement.setLong(2, delta[0]);
+                statement.setLong(3, delta[1]);
+                statement.executeUpdate();
+            } catch (SQLException e) {
+                if (!UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                    throw e;
+                }
+                connection.rollback(savepoint);
+                return false;
+            }
+            connection.releaseSavepoint(savepoint);
+            return true;
+        });
+    }
+
+    // == 다시 계산 (OrderTotalsRepairJob) == //
+
+    private static final String ORDER_TOTAL =
+            "(select coalesce(sum(oi.order_price * oi.count), 0) from order_item oi where oi.order_id = o.order_id)";
+    private static final String MEMBER_TOTAL =
+            "(select coalesce(sum(o.total_price), 0) from orders o where o.member_id = s.member_id and o.status = :status)";
+    private static final String MEMBER_COUNT =
+            "(select count(*) from orders o where o.member_id = s.member_id and o.status = :status)";
+
+    // 주문상품 합계와 다른 주문 금액을 고친다
+    public int repairOrderTotals(long fromMemberId, long toMemberId){
+        return range(em.createNativeQuery("update orders o set total_price = " + ORDER_TOTAL +
+                " where o.member_id between :from and :to" +
+                " and o.total_price <> " + ORDER_TOTAL), fromMemberId, toMemberId)
+                .executeUpdate();
+    }
+
+    // 주문 금액 합계/주문 수가 다른 회원 합계를 고친다
+    public int repairMemberSpend(long fromMemberId, long toMemberId){
+        return range(em.createNativeQuery("update member_spend s" +
+                " set total_spent = " + MEMBER_TOTAL + ", order_count = " + MEMBER_COUNT +
+                " where s.member_id between :from and :to" +
+                " and (s.total_spent <> " + MEMBER_TOTAL + " or s.order_count <> " + MEMBER_COUNT + ")"), fromMemberId, toMemberId)
+                .setParameter("status", OrderStatus.ORDER.name())
+                .executeUpdate();
+    }
+
+    // 주문은 있는데 합계 행이 없는 회원
+    public int insertMissingMemberSpend(long fromMemberId, long toMemberId){
+        return range(em.createNativeQuery("insert into member_spend (member_id, total_spent, order_count)" +
+                " select o.member_id, sum(o.total_price), count(*) from orders o" +
+                " where o.member_id between :from and :to and o.status = :status" +
+                " and not exists (select 1 from member_spend s where s.member_id = o.member_id)" +
+                " group by o.member_id"), fromMemberId, toMemberId)
+                .setParameter("status", OrderStatus.ORDER.name())
+                .executeUpdate();
+    }
+
+    public long countOrderTotalMismatches(long fromMemberId, long toMemberId){
+        return count(range(em.createNativeQuery("select count(*) from orders o" +
+                " where o.member_id between :from and :to" +
+                " and o.total_price <> " + ORDER_TOTAL), fromMemberId, toMemberId));
+    }
+
+    public long countMemberSpendMismatches(long fromMemberId, long toMemberId){
+        long wrong = count(range(em.createNativeQuery("select count(*) from member_spend s" +
+                " where s.member_id between :from and :to" +
+                " and (s.total_spent <> " + MEMBER_TOTAL + " or s.order_count <> " + MEMBER_COUNT + ")"), fromMemberId, toMemberId)
+                .setParameter("status", OrderStatus.ORDER.name()));
+        long missing = count(range(em.createNativeQuery("select count(distinct o.member_id) from orders o" +
+                " where o.member_id between :from and :to and o.status = :status" +
+                " and not exists (select 1 from member_spend s where s.member_id = o.member_id)"), fromMemberId, toMemberId)
+                .setParameter("status", OrderStatus.ORDER.name()));
+        return wrong + missing;
+    }
+
+    // 회원 id 범위 조건 + 주문/합계 테이블만 건드린다고 알려서 (하이버네이트가 전체 flush, 2차 캐시 전체 비우기를 하지 않게)
+    private static Query range(Query query, long fromMemberId, long toMemberId){
+        query.unwrap(NativeQuery.class)
+                .addSynchronizedEntityClass(Order.class)
+                .addSynchronizedEntityClass(OrderItem.class)
+                .addSynchronizedEntityClass(MemberSpend.class);
+        return query.setParameter("from", fromMemberId)
+                .setParameter("to", toMemberId);
+    }
+
+    private static long count(Query query){
+        return ((Number) query.getSingleResult()).longValue();
+    }
+}
@@ -0,0 +1,15 @@
+package jpabook.jpashop.repository;
+
+import lombok.Data;
+
+/* 이름 검색(자동완성) 결과 한 줄 - 화면에 선택지로 보여줄 id, 이름만 */
+@Data
+public class NameOptionDto {
+    private Long id;
+    private String name;
+
+    public NameOptionDto(Long id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+}
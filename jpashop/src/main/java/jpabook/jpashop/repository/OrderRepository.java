@@ -1,26 +1,58 @@
 package jpabook.jpashop.repository;
 
-import jpabook.jpashop.domain.item.Member;
+import io.micrometer.core.instrument.MeterRegistry;
+import jpabook.jpashop.domain.item.DeliveryStatus;
 import jpabook.jpashop.domain.item.Order;
+import jpabook.jpashop.domain.item.OrderStatus;
+import jpabook.jpashop.repository.support.BatchInQueryLoader;
+import jpabook.jpashop.repository.support.QueryShapeCache;
+import jpabook.jpashop.repository.support.ReadOnlyQueryAspect;
 import lombok.RequiredArgsConstructor;
 import org.aspectj.weaver.ast.Or;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
 import org.springframework.stereotype.Repository;
 import org.springframework.util.StringUtils;
 
+import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
-import javax.persistence.criteria.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
 
 @Repository
 @RequiredArgsConstructor
 public class OrderRepository {
 
     private final EntityManager em;
+    private final MemberNameIndex memberNameIndex;
+    private final MeterRegistry meterRegistry;
+    private final MemberSpendRepository memberSpendRepository;
+    private final OutboxRepository outboxRepository;
+    private final BatchInQueryLoader batchInQueryLoader;
 
+    // findAllByCriteria 검색 조건 조합 (QueryShapeCache 의 키)
+    private static final int SEARCH_STATUS = 1;
+    private static final int SEARCH_NAME = 1 << 1;
+    private static final int SEARCH_MEMBER_IDS = 1 << 2;
+    private static final int SELECT_IDS = 1 << 3; // 엔티티 대신 주문 id 만 (findIdsByCriteria)
+    private final QueryShapeCache searchQueries = new QueryShapeCache("order-search");
+
+    @PostConstruct
+    public void registerMetrics() {
+        searchQueries.bindTo(meterRegistry);
+    }
+
+    // 회원별 주문 금액 합계도 같은 트랜잭션에서 늘리고, 주문 생성 이벤트를 outbox 에 쌓는다
     public void save(Order order){
         em.persist(order);
+        memberSpendRepository.addOrder(order);
+        outboxRepository.orderCreated(order);
     }
 
     public Order findOne(Long id){
@@ -33,47 +65,164 @@ public class OrderRepository {
     }
 
     public List<Order> findAllByString(OrderSearch orderSearch){
-        return em.createQuery("select o from Order o join o.member m" +
-                        " where  o.status = :status " +
-                        " and m.name like :name", Order.class)
+        // 이름 인덱스로 회원 id 를 먼저 좁힐 수 있으면 회원 id 조건을 추가 (like 조건은 최종 확인용으로 유지)
+        Optional<List<Long>> memberIds = memberNameIndex.findIdsLike(orderSearch.getMemberName());
+        if (memberIds.isPresent() && memberIds.get().isEmpty()) {
+            return new ArrayList<>();
+        }
+        String jpql = "select o from Order o join o.member m" +
+                " where  o.status = :status " +
+                " and m.name like :name";
+        if (memberIds.isPresent()) {
+            jpql += " and m.id in :memberIds";
+        }
+        TypedQuery<Order> query = em.createQuery(jpql, Order.class)
                 .setParameter("status",orderSearch.getOrderStatus())
                 .setParameter("name", orderSearch.getMemberName())
 //                .setFirstResult() startPosition for paging
-                .setMaxResults(1000) // 최대 조회값 1000
-                .getResultList();
+                .setMaxResults(1000); // 최대 조회값 1000
+        memberIds.ifPresent(ids -> query.setParameter("memberIds", ids));
+        return query.getResultList();
     }
 
-    // JPA Criteria
+    /*
+    * 동적 검색 - 원래 JPA Criteria 로 매번 CriteriaQuery 를 만들었지만, 조건 조합이 몇 가지뿐이므로
+    * 조합(shape)별 JPQL 을 한 번만 만들어 캐시하고 호출할 때는 파라미터만 바인딩한다. (QueryShapeCache)
+    * */
     public List<Order> findAllByCriteria(OrderSearch orderSearch){
-        CriteriaBuilder cb = em.getCriteriaBuilder();
-        CriteriaQuery<Order> cq = cb.createQuery(Order.class);
-        Root<Order> o = cq.from(Order.class);
-        Join<Order, Member> m = o.join("member", JoinType.INNER); //회원과 조인
-        List<Predicate> criteria = new ArrayList<>();
+        return searchQuery(orderSearch, 0, Order.class)
+                .map(query -> query.setMaxResults(1000).getResultList()) //최대 1000건
+                .orElseGet(ArrayList::new);
+    }
+
+    // 검색 조건에 맞는 주문 id 전체 (일괄 취소) - 엔티티를 로딩하지 않는다
+    public List<Long> findIdsByCriteria(OrderSearch orderSearch){
+        return searchQuery(orderSearch, SELECT_IDS, Long.class)
+                .map(TypedQuery::getResultList)
+                .orElseGet(ArrayList::new);
+    }
+
+    // 검색 결과가 없는 게 확실하면 (이름 인덱스에 맞는 회원이 없음) empty
+    private <T> Optional<TypedQuery<T>> searchQuery(OrderSearch orderSearch, int select, Class<T> resultClass){
+        int shape = select;
+        String namePattern = null;
+        Optional<List<Long>> memberIds = Optional.empty();
     //주문 상태 검색
         if (orderSearch.getOrderStatus() != null) {
-            Predicate status = cb.equal(o.get("status"),
-                    orderSearch.getOrderStatus());
-            criteria.add(status);
+            shape |= SEARCH_STATUS;
         }
     //회원 이름 검색
         if (StringUtils.hasText(orderSearch.getMemberName())) {
-            Predicate name =
-                    cb.like(m.<String>get("name"), "%" +
-                            orderSearch.getMemberName() + "%");
-            criteria.add(name);
+            shape |= SEARCH_NAME;
+            namePattern = "%" + orderSearch.getMemberName() + "%";
+
+            // 이름 인덱스(트라이그램)로 찾은 회원 id 로 먼저 좁힌다
+            memberIds = memberNameIndex.findIdsLike(namePattern);
+            if (memberIds.isPresent()) {
+                if (memberIds.get().isEmpty()) {
+                    return Optional.empty();
+                }
+                shape |= SEARCH_MEMBER_IDS;
+            }
         }
-        cq.where(cb.and(criteria.toArray(new Predicate[criteria.size()])));
-        TypedQuery<Order> query = em.createQuery(cq).setMaxResults(1000); //최대 1000건
-        return query.getResultList();
 
+        TypedQuery<T> query = em.createQuery(searchQueries.get(shape, OrderRepository::searchJpql), resultClass);
+        if ((shape & SEARCH_STATUS) != 0) {
+            query.setParameter("status", orderSearch.getOrderStatus());
+        }
+        if ((shape & SEARCH_NAME) != 0) {
+            query.setParameter("name", namePattern);
+        }
+        if ((shape & SEARCH_MEMBER_IDS) != 0) {
+            query.setParameter("memberIds", memberIds.get());
         }
+        return Optional.of(query);
+    }
+
+    private static String searchJpql(int shape) {
+        List<String> criteria = new ArrayList<>();
+        if ((shape & SEARCH_STATUS) != 0) {
+            criteria.add("o.status = :status");
+        }
+        if ((shape & SEARCH_NAME) != 0) {
+            criteria.add("m.name like :name");
+        }
+        if ((shape & SEARCH_MEMBER_IDS) != 0) {
+            criteria.add("m.id in :memberIds");
+        }
+        String jpql = ((shape & SELECT_IDS) != 0 ? "select o.id" : "select o") + " from Order o join o.member m"; //회원과 조인
+        return criteria.isEmpty() ? jpql : jpql + " where " + String.join(" and ", criteria);
+    }
+
+    public QueryShapeCache getSearchQueryCache() {
+        return searchQueries;
+    }
+
+    // == 일괄 취소 (OrderService.cancelOrders) == //
+    // 주문을 한 건씩 로딩해서 취소하지 않고 주문 id 목록으로 한 번에 처리한다 (IN 절은 BatchInQueryLoader 묶음 단위)
+
+    // 취소할 수 없는 주문 (배송완료 또는 이미 취소)
+    public List<Long> findNotCancellableIds(Collection<Long> orderIds){
+        return batchInQueryLoader.loadManaged(orderIds, (entityManager, chunk) ->
+                entityManager.createQuery("select o.id from Order o join o.delivery d" +
+                                " where o.id in :ids" +
+                                " and (o.status = :cancel or d.status = :comp)", Long.class)
+                        .setParameter("ids", chunk)
+                        .setParameter("cancel", OrderStatus.CANCEL)
+                        .setParameter("comp", DeliveryStatus.COMP)
+                        .getResultList());
+    }
+
+    // 상품별 주문 수량 합계 (상품 id 순)
+    public Map<Long, Integer> sumQuantitiesByItem(Collection<Long> orderIds){
+        Map<Long, Integer> quantities = new TreeMap<>();
+        batchInQueryLoader.loadManaged(orderIds, (entityManager, chunk) ->
+                        entityManager.createQuery("select oi.item.id, sum(oi.count) from OrderItem oi" +
+                                        " where oi.order.id in :ids" +
+                                        " group by oi.item.id", Object[].class)
+                                .setParameter("ids", chunk)
+                                .getResultList())
+                .forEach(row -> quantities.merge((Long) row[0], ((Number) row[1]).intValue(), Integer::sum));
+        return quantities;
+    }
+
+    // 상태를 한 번에 취소로 바꾼다. 확인(findNotCancellableIds)한 뒤에 다른 트랜잭션이 바꿨을 수 있으므로 같은 조건을 다시 건다
+    // @return 취소된 주문 수
+    public int cancelAll(Collection<Long> orderIds){
+        int cancelled = 0;
+        for (List<Long> chunk : BatchInQueryLoader.partition(orderIds, batchInQueryLoader.getChunkSize())) {
+            cancelled += em.createQuery("update Order o set o.status = :cancel" +
+                            " where o.id in :ids and o.status = :order" +
+                            " and not exists (select d.id from Delivery d where d.id = o.delivery.id and d.status = :comp)")
+                    .setParameter("cancel", OrderStatus.CANCEL)
+                    .setParameter("order", OrderStatus.ORDER)
+                    .setParameter("comp", DeliveryStatus.COMP)
+                    .setParameter("ids", chunk)
+                    .executeUpdate();
+        }
+        refreshIfLoaded(orderIds);
+        return cancelled;
+    }
+
+    // 벌크 update 는 영속성 컨텍스트를 거치지 않으므로 이미 로딩된 주문만 DB 값으로 다시 맞춘다
+    // (getReference 로 확인하면 id 마다 프록시가 생기므로 영속성 컨텍스트에서 직접 찾는다)
+    private void refreshIfLoaded(Collection<Long> orderIds){
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        PersistenceContext persistenceContext = session.getPersistenceContextInternal();
+        EntityPersister persister = session.getFactory().getMetamodel().entityPersister(Order.class);
+        for (Long orderId : orderIds) {
+            Object order = persistenceContext.getEntity(session.generateEntityKey(orderId, persister));
+            if (order != null) {
+                em.refresh(order);
+            }
+        }
+    }
 
         // 엔티티를 페치 조인을 사용해서 쿼리 1번에 조회
         // 페치 조인으로 order > member, order > delivery 는 이미 조회 된 상태이므로 지연로딩 X
         public List<Order> findAllWithMemberDelivery(){
-        return em.createQuery("select o from Order o" + " join fetch o.member m" +
-                " join fetch o.delivery d", Order.class)
+        return ReadOnlyQueryAspect.hints(em.createQuery("select o from Order o" + " join fetch o.member m" +
+                " join fetch o.delivery d", Order.class))
                 .getResultList();
         }
 
@@ -92,23 +241,49 @@ public class OrderRepository {
         * 데이터가 부정합하게 조회될 수 있다. 자세한 내용은 자바 ORM 표준 JPA 프로그래밍을 참고하자.
         * */
         public List<Order> findAllWithItem() {
-            return em.createQuery("select distinct o from Order o" +
+            return ReadOnlyQueryAspect.hints(em.createQuery("select distinct o from Order o" +
                             " join fetch o.member m" +
                             " join fetch o.delivery d" +
                             " join fetch o.orderItems oi" +
-                            " join fetch oi.item i", Order.class)
+                            " join fetch oi.item i", Order.class))
                     .getResultList();
         }
 
         public List<Order> findAllWithMemberDelivery(int offset, int limit){
-            return em.createQuery(
+            return ReadOnlyQueryAspect.hints(em.createQuery(
                     "select o from Order o" +
                             " join fetch o.member m" +
-                            " join fetch o.delivery d", Order.class)
+                            " join fetch o.delivery d", Order.class))
                     .setFirstResult(offset)
                     .setMaxResults(limit)
                     .getResultList();
         }
 
+        /*
+        * 키셋(seek) 페이징: offset 만큼 읽고 버리는 대신, 마지막으로 본 (orderDate, order_id) 바로 다음부터 읽는다.
+        * (order_date, order_id) 인덱스를 타고 바로 이동하므로 뒤쪽 페이지로 가도 조회 속도가 일정하다.
+        * ToOne 관계는 페치 조인, orderItems 컬렉션은 기존처럼 default_batch_fetch_size 로 IN 쿼리 조회
+        * after 가 null 이면 첫 페이지
+        * */
+        public List<Order> findAllWithMemberDelivery(OrderCursor after, int limit){
+            String jpql = "select o from Order o" +
+                    " join fetch o.member m" +
+                    " join fetch o.delivery d";
+            if (after != null) {
+                // o.orderDate >= :orderDate 는 인덱스 범위 검색을 위한 조건, 뒤의 조건으로 같은 시각의 주문을 id로 구분
+                jpql += " where o.orderDate >= :orderDate" +
+                        " and (o.orderDate > :orderDate or o.id > :orderId)";
+            }
+            jpql += " order by o.orderDate, o.id";
+
+            TypedQuery<Order> query = ReadOnlyQueryAspect.hints(em.createQuery(jpql, Order.class))
+                    .setMaxResults(limit);
+            if (after != null) {
+                query.setParameter("orderDate", after.getOrderDate())
+                        .setParameter("orderId", after.getOrderId());
+            }
+            return query.getResultList();
+        }
+
 
 }
@@ -0,0 +1,78 @@
+package jpabook.jpashop.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jpabook.jpashop.domain.item.Order;
+import jpabook.jpashop.domain.item.OutboxEvent;
+import jpabook.jpashop.domain.item.OutboxEventType;
+import jpabook.jpashop.repository.support.BatchInQueryLoader;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.annotations.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 주문 이벤트 outbox (OutboxEvent)
+ * 쓰기는 주문/취소 트랜잭션 안에서 (insert 는 주문과 같이 JDBC 배치로 묶인다), 읽기/삭제는 OutboxRelay
+ */
+@Repository
+@RequiredArgsConstructor
+public class OutboxRepository {
+
+    private final EntityManager em;
+    private final ObjectMapper objectMapper;
+    private final BatchInQueryLoader batchInQueryLoader;
+
+    public void orderCreated(Order order){
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("orderId", order.getId());
+        payload.put("memberId", order.getMember().getId());
+        payload.put("totalPrice", order.getTotalPrice());
+        em.persist(new OutboxEvent(order.getId(), OutboxEventType.ORDER_CREATED, json(payload)));
+    }
+
+    public void orderCancelled(Long orderId){
+        em.persist(new OutboxEvent(orderId, OutboxEventType.ORDER_CANCELLED, json(Map.of("orderId", orderId))));
+    }
+
+    // 일괄 취소 - 주문을 로딩하지 않으므로 내용은 주문 id 만
+    public void ordersCancelled(Collection<Long> orderIds){
+        orderIds.forEach(this::orderCancelled);
+    }
+
+    // 오래된 순서로 limit 건. 보내기만 하고 바꾸지 않으므로 스냅샷을 남기지 않는다
+    // 같은 주문의 이벤트는 앞 트랜잭션이 커밋된 뒤에 생기므로 (생성 -> 취소) 이 순서가 주문별 순서와 같다
+    public List<OutboxEvent> findOldest(int limit){
+        return em.createQuery("select e from OutboxEvent e order by e.occurredAt, e.id", OutboxEvent.class)
+                .setHint(QueryHints.READ_ONLY, true)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    public int deleteAllById(Collection<Long> ids){
+        int deleted = 0;
+        for (List<Long> chunk : BatchInQueryLoader.partition(ids, batchInQueryLoader.getChunkSize())) {
+            deleted += em.createQuery("delete from OutboxEvent e where e.id in :ids")
+                    .setParameter("ids", chunk)
+                    .executeUpdate();
+        }
+        return deleted;
+    }
+
+    public long count(){
+        return em.createQuery("select count(e) from OutboxEvent e", Long.class).getSingleResult();
+    }
+
+    private String json(Object payload){
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package jpabook.jpashop.repository.order.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * order id 순으로 정렬된 플랫 row 를 받아서 주문이 바뀌는 시점마다 OrderQueryDto 하나를 완성해 넘겨준다.
+ * 지금 조립 중인 주문 하나만 들고 있으므로 전체 결과 크기와 상관없이 메모리 사용량이 일정하다.
+ */
+public class OrderFlatDtoAssembler implements Consumer<OrderFlatDto> {
+
+    private final Consumer<OrderQueryDto> downstream;
+    private OrderQueryDto current;
+
+    public OrderFlatDtoAssembler(Consumer<OrderQueryDto> downstream) {
+        this.downstream = downstream;
+    }
+
+    /**
+     * order id 순으로 정렬된 플랫 row 를 한 번만 훑어서 주문 + 주문상품 구조로 만든다.
+     * groupingBy 처럼 row 마다 key DTO 를 만들고 해시/equals 를 할 필요가 없고, 조회 순서도 그대로 유지된다.
+     */
+    public static List<OrderQueryDto> assemble(List<OrderFlatDto> rows) {
+        List<OrderQueryDto> result = new ArrayList<>();
+        OrderFlatDtoAssembler assembler = new OrderFlatDtoAssembler(result::add);
+        for (OrderFlatDto row : rows) {
+            assembler.accept(row);
+        }
+        assembler.finish();
+        return result;
+    }
+
+    @Override
+    public void accept(OrderFlatDto row) {
+        if (current == null || !current.getOrderId().equals(row.getOrderId())) {
+            flush();
+            current = new OrderQueryDto(row.getOrderId(), row.getName(), row.getOrderDate(),
+                    row.getOrderStatus(), row.getAddress(), new ArrayList<>());
+        }
+        current.getOrderItems().add(new OrderItemQueryDto(row.getOrderId(),
+                row.getItemName(), row.getOrderPrice(), row.getCount()));
+    }
+
+    /**
+     * 마지막으로 조립 중이던 주문을 내보낸다. row 를 다 넘긴 뒤 반드시 호출해야 한다.
+     */
+    public void finish() {
+        flush();
+    }
+
+    private void flush() {
+        if (current != null) {
+            downstream.accept(current);
+            current = null;
+        }
+    }
+}
@@ -1,18 +1,29 @@
 package jpabook.jpashop.repository.order.query;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import jpabook.jpashop.repository.support.BatchInQueryLoader;
+import jpabook.jpashop.repository.support.IsolatedQueryExecutor;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.annotations.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import javax.persistence.EntityManager;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Repository
 @RequiredArgsConstructor
 public class OrderQueryRepository {
 
     private final EntityManager em;
+    private final BatchInQueryLoader batchInQueryLoader;
+    private final IsolatedQueryExecutor isolatedQueryExecutor;
+    private final MeterRegistry meterRegistry;
 
     /**
      * 컬렉션은 별도로 조회
@@ -55,24 +66,70 @@ public class OrderQueryRepository {
     }
 
     public List<OrderQueryDto> findAllByDto_optimization() {
-        List<OrderQueryDto> result = findOrders(); // 쿼리 1번
+        return timed("sequential", "total", () -> {
+            List<OrderQueryDto> result = timed("sequential", "root", () -> findOrders()); // 쿼리 1번
 
-        List<Long> orderIds = toOrderIds(result);
+            List<Long> orderIds = toOrderIds(result);
 
-        // 쿼리는 1번만 날린다 > 토탈 2번
-        Map<Long, List<OrderItemQueryDto>> orderItemMap = findOrderItemMap(orderIds);
+            // 쿼리는 1번만 날린다 > 토탈 2번
+            Map<Long, List<OrderItemQueryDto>> orderItemMap = timed("sequential", "items", () -> findOrderItemMap(orderIds));
 
-        result.forEach(o -> o.setOrderItems(orderItemMap.get(o.getOrderId())));
-        return result;
+            result.forEach(o -> o.setOrderItems(orderItemMap.get(o.getOrderId())));
+            return result;
+        });
     }
 
+    /**
+     * V5 동시 조회 버전
+     * 조회할 주문 id 범위를 호출하는 쪽에서 이미 알고 있으면, 컬렉션 조회가 루트 조회 결과(orderIds)를 기다릴 필요가 없다.
+     * 루트 조회와 컬렉션 조회를 각각 별도의 읽기 전용 커넥션에서 동시에 보내고 합친다.
+     * 응답 시간이 q1 + q2 에서 max(q1, q2) 에 가까워진다. (jpashop.orders.dto.query 메트릭의 mode 태그로 비교)
+     */
+    public List<OrderQueryDto> findAllByDto_concurrent(Long fromOrderId, Long toOrderId) {
+        return timed("concurrent", "total", () -> {
+            CompletableFuture<List<OrderQueryDto>> orders = isolatedQueryExecutor.supplyAsync(entityManager ->
+                    timed("concurrent", "root", () -> entityManager.createQuery(
+                                    "select new jpabook.jpashop.repository.order.query.OrderQueryDto(o.id, m.name, o.orderDate, o.status, d.address)" +
+                                            " from Order o" +
+                                            " join o.member m" +
+                                            " join o.delivery d" +
+                                            " where o.id between :fromOrderId and :toOrderId", OrderQueryDto.class)
+                            .setParameter("fromOrderId", fromOrderId)
+                            .setParameter("toOrderId", toOrderId)
+                            .getResultList()));
+
+            CompletableFuture<Map<Long, List<OrderItemQueryDto>>> orderItemMap = isolatedQueryExecutor.supplyAsync(entityManager ->
+                    timed("concurrent", "items", () -> entityManager.createQuery(
+                                    "select new jpabook.jpashop.repository.order.query.OrderItemQueryDto(oi.order.id, i.name, oi.orderPrice, oi.count)" +
+                                            " from OrderItem oi" +
+                                            " join oi.item i" +
+                                            " where oi.order.id between :fromOrderId and :toOrderId", OrderItemQueryDto.class)
+                            .setParameter("fromOrderId", fromOrderId)
+                            .setParameter("toOrderId", toOrderId)
+                            .getResultList()
+                            .stream()
+                            .collect(Collectors.groupingBy(OrderItemQueryDto::getOrderId))));
+
+            List<OrderQueryDto> result = orders.join();
+            Map<Long, List<OrderItemQueryDto>> itemMap = orderItemMap.join();
+            result.forEach(o -> o.setOrderItems(itemMap.getOrDefault(o.getOrderId(), new ArrayList<>())));
+            return result;
+        });
+    }
+
+    private <T> T timed(String mode, String query, Supplier<T> supplier) {
+        return meterRegistry.timer("jpashop.orders.dto.query", "mode", mode, "query", query).record(supplier);
+    }
+
+    // 주문 id 를 고정 크기 묶음으로 나눠서 IN 조회 (IN 절 길이 제한, 쿼리 플랜 재사용) - BatchInQueryLoader 참고
     private Map<Long, List<OrderItemQueryDto>> findOrderItemMap(List<Long> orderIds) {
-        List<OrderItemQueryDto> orderItems = em.createQuery("select new jpabook.jpashop.repository.order.query.OrderItemQueryDto(oi.order.id, i.name, oi.orderPrice, oi.count)" +
+        List<OrderItemQueryDto> orderItems = batchInQueryLoader.load(orderIds, (entityManager, ids) ->
+                entityManager.createQuery("select new jpabook.jpashop.repository.order.query.OrderItemQueryDto(oi.order.id, i.name, oi.orderPrice, oi.count)" +
                         " from OrderItem oi" +
                         " join oi.item i" +
                         " where oi.order.id in :orderIds", OrderItemQueryDto.class)
-                .setParameter("orderIds", orderIds)
-                .getResultList();
+                .setParameter("orderIds", ids)
+                .getResultList());
 
         // 메모리에 쿼리 결과를 다 가지고와서 메모리에서 매칭해서 값을 뽑아준다
         Map<Long, List<OrderItemQueryDto>> orderItemMap = orderItems.stream()
@@ -87,6 +144,7 @@ public class OrderQueryRepository {
         return orderIds;
     }
 
+    // order id 순으로 정렬해서 같은 주문의 row 가 붙어서 나오게 한다 (OrderFlatDtoAssembler 가 한 번에 훑으면서 조립)
     public List<OrderFlatDto> findAllByDto_flat() {
         return em.createQuery("select new " +
                                 " jpabook.jpashop.repository.order.query.OrderFlatDto(o.id, m.name, o.orderDate," +
@@ -95,7 +153,29 @@ public class OrderQueryRepository {
                         " join o.member m" +
                         " join o.delivery d" +
                         " join o.orderItems oi" +
-                        " join oi.item i", OrderFlatDto.class)
+                        " join oi.item i" +
+                        " order by o.id", OrderFlatDto.class)
                         .getResultList();
     }
+
+    /**
+     * 플랫 조회 스트리밍 버전
+     * 결과를 List 로 다 담지 않고 forward-only 커서로 fetchSize 만큼씩 DB 에서 가져온다.
+     * order id 순으로 정렬해서 같은 주문의 row 가 연달아 나오도록 한다.
+     * 스트림을 다 읽을 때까지 커넥션을 잡고 있으므로 트랜잭션 안에서 사용하고 반드시 close 해야 한다.
+     */
+    public Stream<OrderFlatDto> streamAllByDto_flat(int fetchSize) {
+        return em.createQuery("select new " +
+                                " jpabook.jpashop.repository.order.query.OrderFlatDto(o.id, m.name, o.orderDate," +
+                        "  o.status, d.address, i.name, oi.orderPrice, oi.count)" +
+                        " from Order o" +
+                        " join o.member m" +
+                        " join o.delivery d" +
+                        " join o.orderItems oi" +
+                        " join oi.item i" +
+                        " order by o.id", OrderFlatDto.class)
+                .setHint(QueryHints.FETCH_SIZE, fetchSize)
+                .setHint(QueryHints.READ_ONLY, true)
+                .getResultStream();
+    }
 }
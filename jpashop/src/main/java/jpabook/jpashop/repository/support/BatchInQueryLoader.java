@@ -0,0 +1,122 @@
+package jpabook.jpashop.repository.support;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * where x.id in :ids 조회를 고정 크기 묶음으로 나눠서 실행한다.
+ *
+ * - id 가 아무리 많아도 한 쿼리의 IN 절은 chunkSize 를 넘지 않는다. (DB 마다 IN 절 파라미터 제한이 있음)
+ * - 마지막 묶음은 2의 거듭제곱 크기(1, 2, 4 ... 512, chunkSize)로 마지막 id 를 반복해서 채운다.
+ *   IN 절 길이가 몇 가지로 고정되므로 DB/하이버네이트의 쿼리 플랜을 재사용할 수 있다. (중복 id 는 결과에 영향 없음)
+ * - parallel 옵션을 켜면 묶음들을 IsolatedQueryExecutor 로 각각 다른 커넥션에서 동시에 실행하고 결과를 합친다.
+ *   이 경우 현재 트랜잭션 밖에서 읽으므로 DTO 조회에만 사용한다.
+ *   단 호출한 스레드에 EntityManager 가 묶여 있으면 (OSIV 요청, 트랜잭션) 그 EntityManager 로 순서대로 실행한다.
+ *   그 EntityManager 는 앞선 쿼리로 커넥션을 잡고 요청/트랜잭션이 끝날 때까지 놓지 않는데, 커넥션을 쥔 채로
+ *   다른 커넥션을 기다리는 요청이 풀 크기만큼 몰리면 서로를 기다리다 커넥션 타임아웃까지 멈추기 때문이다.
+ *   (V5 는 루트 조회를 먼저 하므로 항상 그렇다 - 동시 실행은 OSIV 를 끈 뒤 트랜잭션 밖에서 부르는 경우만)
+ */
+@Component
+public class BatchInQueryLoader {
+
+    private final EntityManager em;
+    private final EntityManagerFactory emf;
+    private final IsolatedQueryExecutor isolatedQueryExecutor;
+    private final int chunkSize;
+    private final boolean parallel;
+
+    public BatchInQueryLoader(EntityManager em, EntityManagerFactory emf, IsolatedQueryExecutor isolatedQueryExecutor,
+                              @Value("${jpashop.query.in-list.chunk-size:1000}") int chunkSize,
+                              @Value("${jpashop.query.in-list.parallel:false}") boolean parallel) {
+        this.em = em;
+        this.emf = emf;
+        this.isolatedQueryExecutor = isolatedQueryExecutor;
+        this.chunkSize = chunkSize;
+        this.parallel = parallel;
+    }
+
+    /**
+     * @param ids   조회할 id 목록 (중복은 제거된다)
+     * @param query 묶음 하나를 조회하는 쿼리 (EntityManager, 묶음 id 목록)
+     */
+    public <T> List<T> load(Collection<Long> ids, BiFunction<EntityManager, List<Long>, List<T>> query) {
+        List<List<Long>> chunks = partition(ids, chunkSize);
+        if (chunks.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        if (!parallel || chunks.size() == 1 || holdsConnection()) {
+            return loadSerially(chunks, query);
+        }
+
+        List<CompletableFuture<List<T>>> futures = chunks.stream()
+                .map(chunk -> isolatedQueryExecutor.supplyAsync(entityManager -> query.apply(entityManager, chunk)))
+                .collect(toList());
+        List<T> result = new ArrayList<>();
+        for (CompletableFuture<List<T>> future : futures) {
+            result.addAll(future.join());
+        }
+        return result;
+    }
+
+    /**
+     * 엔티티 조회용 - parallel 설정과 관계없이 현재 트랜잭션의 EntityManager 로 순서대로 조회한다.
+     * (조회한 엔티티가 영속 상태로 남아야 변경감지/연관관계 설정에 쓸 수 있음)
+     */
+    public <T> List<T> loadManaged(Collection<Long> ids, BiFunction<EntityManager, List<Long>, List<T>> query) {
+        return loadSerially(partition(ids, chunkSize), query);
+    }
+
+    // 현재 스레드에 EntityManager 가 묶여 있으면 그 커넥션을 쥔 채로 다른 커넥션을 기다리게 된다
+    private boolean holdsConnection() {
+        return TransactionSynchronizationManager.hasResource(emf);
+    }
+
+    private <T> List<T> loadSerially(List<List<Long>> chunks, BiFunction<EntityManager, List<Long>, List<T>> query) {
+        List<T> result = new ArrayList<>();
+        for (List<Long> chunk : chunks) {
+            result.addAll(query.apply(em, chunk));
+        }
+        return result;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public static List<List<Long>> partition(Collection<Long> ids, int chunkSize) {
+        List<Long> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int from = 0; from < distinct.size(); from += chunkSize) {
+            List<Long> chunk = new ArrayList<>(distinct.subList(from, Math.min(from + chunkSize, distinct.size())));
+            Long last = chunk.get(chunk.size() - 1);
+            int padded = paddedSize(chunk.size(), chunkSize);
+            while (chunk.size() < padded) {
+                chunk.add(last);
+            }
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    // n 이상인 가장 작은 2의 거듭제곱, 단 chunkSize 를 넘지 않음
+    static int paddedSize(int n, int chunkSize) {
+        int size = Integer.highestOneBit(n);
+        if (size < n) {
+            size <<= 1;
+        }
+        return Math.min(size, chunkSize);
+    }
+}
@@ -0,0 +1,66 @@
+package jpabook.jpashop.repository.support;
+
+import jpabook.jpashop.monitoring.SqlStatementStats;
+import org.hibernate.Session;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 조회 쿼리를 별도 스레드 + 별도 EntityManager(= 별도 커넥션) 에서 동시에 실행하기 위한 실행기
+ * - 호출한 쪽의 트랜잭션/영속성 컨텍스트와 무관하므로 아직 커밋되지 않은 변경은 보이지 않는다.
+ * - 읽기 전용으로 로딩하므로 DTO 조회나 화면 출력용 조회에만 사용한다.
+ * - 스레드 수와 대기 큐 크기가 정해져 있어서 큐가 가득 차면 호출한 스레드에서 직접 실행한다.
+ */
+@Component
+public class IsolatedQueryExecutor implements DisposableBean {
+
+    private final EntityManagerFactory emf;
+    private final ThreadPoolExecutor executor;
+
+    public IsolatedQueryExecutor(EntityManagerFactory emf,
+                                 @Value("${jpashop.query.executor.threads:4}") int threads,
+                                 @Value("${jpashop.query.executor.queue-capacity:100}") int queueCapacity) {
+        this.emf = emf;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("query-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    // 호출한 스레드의 SQL 집계 범위(SqlStatementStats)를 넘겨서 다른 스레드에서 실행한 문장도 요청 단위로 집계되게 한다
+    public <T> CompletableFuture<T> supplyAsync(Function<EntityManager, T> query) {
+        SqlStatementStats stats = SqlStatementStats.current();
+        return CompletableFuture.supplyAsync(() -> {
+            SqlStatementStats scope = SqlStatementStats.continueFrom(stats);
+            try {
+                return execute(query);
+            } finally {
+                scope.close();
+            }
+        }, executor);
+    }
+
+    public <T> T execute(Function<EntityManager, T> query) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.unwrap(Session.class).setDefaultReadOnly(true);
+            return query.apply(em);
+        } finally {
+            em.close();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,29 @@
+package jpabook.jpashop.repository.support;
+
+/**
+ * like 검색 패턴 - 검색어에 들어있는 %, _ 가 와일드카드로 해석되지 않게 escape 문자('!')로 막는다.
+ * 쿼리에는 like :pattern escape '!' 로 사용
+ */
+public final class LikePatterns {
+
+    public static final char ESCAPE = '!';
+
+    private LikePatterns() {
+    }
+
+    // 'abc%' - 앞부분이 같은 값 (인덱스를 탈 수 있음)
+    public static String startsWith(String value) {
+        return escape(value) + "%";
+    }
+
+    public static String escape(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 4);
+        for (char c : value.toCharArray()) {
+            if (c == '%' || c == '_' || c == ESCAPE) {
+                sb.append(ESCAPE);
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,227 @@
+package jpabook.jpashop.repository.support;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 이름 -> id 검색용 메모리 인덱스 (스레드 안전하지 않음, 동기화는 사용하는 쪽에서)
+ * - 앞부분 검색(startsWith): (이름, id) 순으로 정렬된 배열을 이진 탐색
+ * - 포함 검색(contains)   : 이름의 연속된 세 글자(트라이그램)별 id 목록을 교집합
+ *
+ * 포함 검색 결과는 세 글자 조각을 모두 가진 후보라서 순서가 다른 이름이 섞일 수 있다.
+ * 최종 확인은 쿼리의 like 조건이 한다. 대소문자는 like 와 같게 구분한다.
+ */
+public class NameIndex {
+
+    private static final long[] EMPTY = new long[0];
+
+    // (이름, id) 오름차순
+    private String[] names;
+    private long[] ids;
+    private int size;
+
+    // 트라이그램(세 글자를 16bit 씩 붙인 값) -> 그 조각이 들어있는 이름의 id (오름차순)
+    private final Map<Long, Postings> trigrams = new HashMap<>();
+
+    public NameIndex() {
+        this(16);
+    }
+
+    private NameIndex(int capacity) {
+        names = new String[capacity];
+        ids = new long[capacity];
+    }
+
+    /**
+     * 한 번에 만들기 - 정렬된 배열에 하나씩 끼워넣지 않고 마지막에 한 번 정렬한다.
+     * id 오름차순으로 넣으면 트라이그램 목록도 뒤에 붙이기만 한다.
+     */
+    public static NameIndex build(long[] ids, String[] names, int count) {
+        NameIndex index = new NameIndex(Math.max(count, 16));
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+            index.addTrigrams(ids[i], names[i]);
+        }
+        Arrays.sort(order, (a, b) -> compare(names[a], ids[a], names[b], ids[b]));
+        for (int i = 0; i < count; i++) {
+            index.names[i] = names[order[i]];
+            index.ids[i] = ids[order[i]];
+        }
+        index.size = count;
+        return index;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /* 이미 있으면 아무것도 하지 않는다 */
+    public void add(long id, String name) {
+        int pos = find(name, id);
+        if (pos >= 0) {
+            return;
+        }
+        pos = -pos - 1;
+        if (size == names.length) {
+            int capacity = size + (size >> 1) + 1;
+            names = Arrays.copyOf(names, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+        }
+        System.arraycopy(names, pos, names, pos + 1, size - pos);
+        System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+        names[pos] = name;
+        ids[pos] = id;
+        size++;
+        addTrigrams(id, name);
+    }
+
+    /* 없으면 아무것도 하지 않는다 */
+    public void remove(long id, String name) {
+        int pos = find(name, id);
+        if (pos < 0) {
+            return;
+        }
+        System.arraycopy(names, pos + 1, names, pos, size - pos - 1);
+        System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+        names[--size] = null;
+
+        // 같은 이름에 같은 조각이 여러 번 나와도 목록에는 한 번만 들어있다
+        for (int i = 0; i + 3 <= name.length(); i++) {
+            Long key = trigram(name, i);
+            Postings postings = trigrams.get(key);
+            if (postings != null && postings.remove(id) && postings.size == 0) {
+                trigrams.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 이름이 prefix 로 시작하는 id (이름순)
+     * 결과가 limit 보다 많으면 null - 좁혀지지 않으므로 인덱스 없이 조회하는 편이 낫다
+     */
+    public long[] startingWith(String prefix, int limit) {
+        int from = find(prefix, Long.MIN_VALUE);
+        from = from >= 0 ? from : -from - 1;
+        int to = from;
+        while (to < size && names[to].startsWith(prefix)) {
+            if (to - from == limit) {
+                return null;
+            }
+            to++;
+        }
+        return Arrays.copyOfRange(ids, from, to);
+    }
+
+    /**
+     * 이름에 text 가 들어있을 수 있는 id 후보 (id 순)
+     * text 가 세 글자보다 짧거나 후보가 limit 보다 많으면 null
+     */
+    public long[] containing(String text, int limit) {
+        if (text.length() < 3) {
+            return null;
+        }
+
+        // 목록이 짧은 조각부터 교집합 - 중간 결과가 빨리 줄어든다
+        Postings[] lists = new Postings[text.length() - 2];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = trigrams.get(trigram(text, i));
+            if (lists[i] == null) {
+                return EMPTY;
+            }
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+
+        long[] result = Arrays.copyOf(lists[0].ids, lists[0].size);
+        int count = result.length;
+        for (int i = 1; i < lists.length && count > 0; i++) {
+            count = lists[i].retainIn(result, count);
+        }
+        return count > limit ? null : Arrays.copyOf(result, count);
+    }
+
+    private void addTrigrams(long id, String name) {
+        for (int i = 0; i + 3 <= name.length(); i++) {
+            trigrams.computeIfAbsent(trigram(name, i), k -> new Postings()).add(id);
+        }
+    }
+
+    private static Long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    // 있으면 위치, 없으면 -(넣을 위치) - 1
+    private int find(String name, long id) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(names[mid], ids[mid], name, id);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static int compare(String name1, long id1, String name2, long id2) {
+        int cmp = name1.compareTo(name2);
+        return cmp != 0 ? cmp : Long.compare(id1, id2);
+    }
+
+    /* 정렬된 long 목록 - 박싱 없이 id 를 담는다 */
+    private static class Postings {
+        private long[] ids = new long[4];
+        private int size;
+
+        private void add(long id) {
+            // 대부분 새 id 가 가장 크므로 뒤에 붙이기만 한다
+            int pos;
+            if (size == 0 || ids[size - 1] < id) {
+                pos = size;
+            } else {
+                pos = Arrays.binarySearch(ids, 0, size, id);
+                if (pos >= 0) {
+                    return;
+                }
+                pos = -pos - 1;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            ids[pos] = id;
+            size++;
+        }
+
+        private boolean remove(long id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos < 0) {
+                return false;
+            }
+            System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+            size--;
+            return true;
+        }
+
+        // target[0..count) 중 이 목록에도 있는 것만 앞으로 모으고 남은 개수를 돌려준다 (둘 다 정렬되어 있음)
+        private int retainIn(long[] target, int count) {
+            int kept = 0;
+            int j = 0;
+            for (int i = 0; i < count && j < size; i++) {
+                while (j < size && ids[j] < target[i]) {
+                    j++;
+                }
+                if (j < size && ids[j] == target[i]) {
+                    target[kept++] = target[i];
+                }
+            }
+            return kept;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package jpabook.jpashop.repository.support;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * 동적 검색 쿼리의 JPQL 을 조건 조합(shape)별로 한 번만 만들어 두는 캐시
+ *
+ * 검색 조건이 있고 없고에 따라 JPQL 이 몇 가지로만 나뉘므로, 어떤 조건이 있는지를 비트로 나타낸 값(shape)을
+ * 키로 JPQL 을 보관하고 호출할 때는 파라미터만 바인딩한다. 같은 JPQL 문자열이면 하이버네이트 쿼리 플랜 캐시
+ * (hibernate.query.plan_cache_max_size)에서 파싱된 플랜을 그대로 꺼내 쓰므로, 매번 CriteriaQuery 를 만들고
+ * JPQL 로 렌더링하는 비용이 없어진다.
+ *
+ * shape 는 조건 수만큼의 비트라서 개수가 정해져 있으므로 따로 비우지 않는다.
+ * 지표: jpashop.query.shape.cache.requests{query, result=hit|miss}, jpashop.query.shape.cache.hit.ratio{query}
+ */
+public class QueryShapeCache implements MeterBinder {
+
+    private final String name;
+    private final Map<Integer, String> queries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public QueryShapeCache(String name) {
+        this.name = name;
+    }
+
+    public String get(int shape, IntFunction<String> jpqlBuilder) {
+        String jpql = queries.get(shape);
+        if (jpql != null) {
+            hits.increment();
+            return jpql;
+        }
+        misses.increment();
+        return queries.computeIfAbsent(shape, jpqlBuilder::apply);
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public double getHitRatio() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    public int size() {
+        return queries.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("jpashop.query.shape.cache.requests", hits, LongAdder::sum)
+                .tag("query", name).tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("jpashop.query.shape.cache.requests", misses, LongAdder::sum)
+                .tag("query", name).tag("result", "miss")
+                .register(registry);
+        Gauge.builder("jpashop.query.shape.cache.hit.ratio", this, QueryShapeCache::getHitRatio)
+                .tag("query", name)
+                .register(registry);
+    }
+}
@@ -0,0 +1,20 @@
+package jpabook.jpashop.repository.support;
+
+import java.lang.annotation.*;
+
+/**
+ * 조회만 하는 메서드 - 실행하는 동안 영속성 컨텍스트를 읽기 전용으로 쓴다. (ReadOnlyQueryAspect)
+ * - 읽어온 엔티티는 읽기 전용: 변경 감지용 스냅샷을 만들지 않고, flush 때 비교하지도 않는다.
+ * - flush 모드 MANUAL: 쿼리 전에 자동 flush 하지 않는다.
+ * - ReadOnlyQueryAspect.hints 를 붙인 쿼리는 fetch size 를 키워서 DB 왕복을 줄인다.
+ *
+ * 메서드가 끝나도 읽기 전용으로 읽은 엔티티는 그대로 읽기 전용이므로, OSIV 로 같은 영속성 컨텍스트를 쓰는 뒤쪽 코드에서
+ * 그 엔티티를 고쳐도 반영되지 않는다. 그래서 요청 전체가 조회만 하는 컨트롤러(또는 조회 전용 서비스) 메서드에만 붙이고,
+ * 어느 요청에서 불릴지 모르는 리포지토리 메서드에는 붙이지 않는다. (리포지토리는 hints() 로 힌트만 붙임)
+ * 읽기-쓰기 트랜잭션 안에서 호출되면 아무것도 바꾸지 않는다.
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ReadOnlyQuery {
+}
@@ -0,0 +1,90 @@
+package jpabook.jpashop.repository.support;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
+
+/**
+ * @ReadOnlyQuery 메서드를 실행하는 동안 지금 쓰고 있는 영속성 컨텍스트(Session)를 읽기 전용 + flush 모드 MANUAL 로 바꾸고, 끝나면 되돌린다.
+ *
+ * - @Transactional(readOnly = true) 는 스프링(HibernateJpaDialect)이 이미 같은 설정을 해주지만, OSIV 로 트랜잭션 밖에서
+ *   조회하는 컨트롤러(V3, V3.1 엔티티 조회)는 기본 Session 그대로라서 엔티티마다 스냅샷을 만들고 flush 때 비교한다.
+ * - 읽기-쓰기 트랜잭션 안이면 아무것도 바꾸지 않는다. (같은 영속성 컨텍스트의 엔티티 수정이 반영되어야 하므로)
+ * - 바인딩된 영속성 컨텍스트가 없으면 (OSIV 꺼짐 + 트랜잭션 밖) 쿼리마다 새 EntityManager 를 쓰고 닫으므로 그대로 실행한다.
+ * - fetch size 는 하이버네이트 5.6 에서 Session 단위로 정할 수 없으므로, 리포지토리가 쿼리에 hints() 를 붙인다.
+ */
+@Aspect
+@Component
+public class ReadOnlyQueryAspect {
+
+    // 읽기 전용 모드 안이면 쿼리에 붙일 fetch size, 밖이면 null
+    private static final ThreadLocal<Integer> FETCH_SIZE = new ThreadLocal<>();
+
+    private final EntityManagerFactory emf;
+    private final boolean enabled;
+    private final int fetchSize;
+
+    public ReadOnlyQueryAspect(EntityManagerFactory emf,
+                               @Value("${jpashop.read-only-query.enabled:true}") boolean enabled,
+                               @Value("${jpashop.read-only-query.fetch-size:500}") int fetchSize) {
+        this.emf = emf;
+        this.enabled = enabled;
+        this.fetchSize = fetchSize;
+    }
+
+    @Around("@annotation(jpabook.jpashop.repository.support.ReadOnlyQuery)" +
+            " || @within(jpabook.jpashop.repository.support.ReadOnlyQuery)")
+    public Object readOnly(ProceedingJoinPoint joinPoint) throws Throwable {
+        // 꺼져 있거나, 이미 읽기 전용 모드 안(컨트롤러 -> 리포지토리)이면 그대로
+        if (!enabled || FETCH_SIZE.get() != null) {
+            return joinPoint.proceed();
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return joinPoint.proceed();
+        }
+        EntityManager em = EntityManagerFactoryUtils.getTransactionalEntityManager(emf);
+        if (em == null) {
+            return joinPoint.proceed();
+        }
+
+        Session session = em.unwrap(Session.class);
+        boolean defaultReadOnly = session.isDefaultReadOnly();
+        FlushMode flushMode = session.getHibernateFlushMode();
+        session.setDefaultReadOnly(true);
+        session.setHibernateFlushMode(FlushMode.MANUAL);
+        FETCH_SIZE.set(fetchSize);
+        try {
+            return joinPoint.proceed();
+        } finally {
+            FETCH_SIZE.remove();
+            session.setHibernateFlushMode(flushMode);
+            session.setDefaultReadOnly(defaultReadOnly);
+        }
+    }
+
+    /**
+     * 읽기 전용 모드 안이면 read-only, fetch size 힌트를 붙인다. (밖이면 그대로)
+     * - read-only: 결과 엔티티를 스냅샷 없이 로딩
+     * - fetch size: 결과를 한 번에 더 많이 받아와서 큰 결과의 DB 왕복을 줄인다 (H2 기본 100건)
+     */
+    public static <T extends Query> T hints(T query) {
+        Integer size = FETCH_SIZE.get();
+        if (size != null) {
+            query.setHint(QueryHints.HINT_READONLY, true);
+            query.setHint(QueryHints.HINT_FETCH_SIZE, size);
+        }
+        return query;
+    }
+}
@@ -0,0 +1,81 @@
+package jpabook.jpashop.repository.support;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 트랜잭션마다 하나씩 쓰는 값 - 트랜잭션 안의 변경을 모아뒀다가 커밋 직전/직후에 반영할 때 (MemberSpendRepository, ResourceVersions)
+ *
+ * 값은 key 로 현재 트랜잭션에 묶인다.
+ * - 안쪽 REQUIRES_NEW 트랜잭션이 도는 동안(일시 중단)에는 떼어두므로 안쪽 트랜잭션은 자기 값을 새로 만든다.
+ * - 트랜잭션이 끝나면 (커밋/롤백) 풀린다.
+ * 호출하는 쪽은 반영할 시점(beforeCommit, afterCommit 등)만 구현한 TransactionSynchronization 을 넘긴다.
+ */
+public final class TransactionBoundResource {
+
+    private TransactionBoundResource() {
+    }
+
+    /**
+     * 현재 트랜잭션에 묶인 값. 처음이면 create 로 만들어서 묶고 synchronization(값) 을 등록한다.
+     * 트랜잭션 동기화가 활성화된 상태에서만 호출한다.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T get(Object key, Supplier<T> create, Function<T, TransactionSynchronization> synchronization) {
+        T bound = (T) TransactionSynchronizationManager.getResource(key);
+        if (bound != null) {
+            return bound;
+        }
+        T value = create.get();
+        TransactionSynchronization callbacks = synchronization.apply(value);
+        TransactionSynchronizationManager.bindResource(key, value);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public int getOrder() {
+                return callbacks.getOrder();
+            }
+
+            @Override
+            public void suspend() {
+                TransactionSynchronizationManager.unbindResource(key);
+                callbacks.suspend();
+            }
+
+            @Override
+            public void resume() {
+                callbacks.resume();
+                TransactionSynchronizationManager.bindResource(key, value);
+            }
+
+            @Override
+            public void flush() {
+                callbacks.flush();
+            }
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                callbacks.beforeCommit(readOnly);
+            }
+
+            @Override
+            public void beforeCompletion() {
+                callbacks.beforeCompletion();
+            }
+
+            @Override
+            public void afterCommit() {
+                callbacks.afterCommit();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(key);
+                callbacks.afterCompletion(status);
+            }
+        });
+        return value;
+    }
+}
@@ -0,0 +1,102 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.item.Category;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.repository.CategoryRepository;
+import jpabook.jpashop.repository.ItemRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+@Service
+@Transactional(readOnly = true)
+@RequiredArgsConstructor
+public class CategoryService {
+
+    private final CategoryRepository categoryRepository;
+    private final ItemRepository itemRepository;
+
+    // 카테고리 트리 스냅샷 - 카테고리가 바뀐 트랜잭션이 커밋되면 버전을 올리고, 다음 조회 때 다시 만든다
+    private final AtomicReference<TreeSnapshot> tree = new AtomicReference<>();
+    private final AtomicLong treeVersion = new AtomicLong();
+
+    /* 카테고리 등록 (parentId 가 null 이면 최상위) */
+    @Transactional
+    public Long saveCategory(String name, Long parentId){
+        Category category = new Category();
+        category.setName(name);
+        if (parentId != null) {
+            categoryRepository.findOne(parentId).addChildCategory(category);
+        }
+        categoryRepository.save(category);
+        invalidateTreeAfterCommit();
+        return category.getId();
+    }
+
+    /* 카테고리 이동 - 아래 카테고리들의 경로도 같이 바뀐다 */
+    @Transactional
+    public void moveCategory(Long categoryId, Long newParentId){
+        Category category = categoryRepository.findOne(categoryId);
+        Category newParent = categoryRepository.findOne(newParentId);
+        if (newParent == category || newParent.getPath().startsWith(category.getSubtreePath())) {
+            throw new IllegalArgumentException("자기 자신이나 하위 카테고리 아래로는 옮길 수 없습니다.");
+        }
+        categoryRepository.moveSubtree(category, newParent);
+        invalidateTreeAfterCommit();
+    }
+
+    @Transactional
+    public void addItem(Long categoryId, Long itemId){
+        Category category = categoryRepository.findOne(categoryId);
+        Item item = itemRepository.findOne(itemId);
+        category.getItems().add(item);
+        item.getCategories().add(category);
+    }
+
+    public List<Item> findItemsInSubtree(Long categoryId, int offset, int limit){
+        return categoryRepository.findItemsInSubtree(categoryRepository.findOne(categoryId), offset, limit);
+    }
+
+    public Map<Long, Long> countItemsBySubtree(){
+        return categoryRepository.countItemsBySubtree();
+    }
+
+    public CategoryTree getTree(){
+        long version = treeVersion.get();
+        TreeSnapshot current = tree.get();
+        if (current != null && current.version == version) {
+            return current.tree;
+        }
+
+        // 읽는 동안 카테고리가 바뀌면 버전이 달라지므로 이번 결과는 다음 조회 때 버려진다
+        CategoryTree loaded = CategoryTree.of(categoryRepository.findAll());
+        tree.set(new TreeSnapshot(version, loaded));
+        return loaded;
+    }
+
+    private void invalidateTreeAfterCommit(){
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                treeVersion.incrementAndGet();
+            }
+        });
+    }
+
+    private static class TreeSnapshot {
+        private final long version;
+        private final CategoryTree tree;
+
+        private TreeSnapshot(long version, CategoryTree tree) {
+            this.version = version;
+            this.tree = tree;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.item.Category;
+import lombok.Getter;
+
+import java.util.*;
+
+/**
+ * 카테고리 트리 읽기 전용 스냅샷
+ * 엔티티가 아닌 값만 들고 있어서 트랜잭션/영속성 컨텍스트 없이 여러 스레드가 같이 읽어도 된다.
+ * 카테고리가 바뀌면 새로 만들어서 통째로 교체한다 (CategoryService 참고)
+ */
+public final class CategoryTree {
+
+    private final List<Node> roots;
+    private final Map<Long, Node> nodes;
+
+    private CategoryTree(List<Node> roots, Map<Long, Node> nodes) {
+        this.roots = Collections.unmodifiableList(roots);
+        this.nodes = Collections.unmodifiableMap(nodes);
+    }
+
+    /**
+     * @param categories 경로 순으로 정렬된 카테고리 (부모가 자식보다 먼저)
+     */
+    public static CategoryTree of(List<Category> categories) {
+        Map<Long, List<Node>> children = new HashMap<>();
+        for (Category category : categories) {
+            children.put(category.getId(), new ArrayList<>());
+        }
+
+        List<Node> roots = new ArrayList<>();
+        Map<Long, Node> nodes = new LinkedHashMap<>();
+        for (Category category : categories) {
+            Long parentId = category.getParent() == null ? null : category.getParent().getId();
+            Node node = new Node(category.getId(), category.getName(), parentId, category.getPath(),
+                    Collections.unmodifiableList(children.get(category.getId())));
+            nodes.put(node.getId(), node);
+            if (parentId == null) {
+                roots.add(node);
+            } else {
+                children.get(parentId).add(node);
+            }
+        }
+        return new CategoryTree(roots, nodes);
+    }
+
+    public List<Node> getRoots() {
+        return roots;
+    }
+
+    public Optional<Node> find(Long categoryId) {
+        return Optional.ofNullable(nodes.get(categoryId));
+    }
+
+    @Getter
+    public static final class Node {
+        private final Long id;
+        private final String name;
+        private final Long parentId;
+        private final String path;
+        private final List<Node> children;
+
+        private Node(Long id, String name, Long parentId, String path, List<Node> children) {
+            this.id = id;
+            this.name = name;
+            this.parentId = parentId;
+            this.path = path;
+            this.children = children;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package jpabook.jpashop.service;
 import jpabook.jpashop.domain.item.Book;
 import jpabook.jpashop.domain.item.Item;
 import jpabook.jpashop.repository.ItemRepository;
+import jpabook.jpashop.repository.NameOptionDto;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -18,10 +19,12 @@ import java.util.List;
 public class ItemService {
 
     private final ItemRepository itemRepository;
+    private final ResourceVersions resourceVersions;
 
     @Transactional
     public void saveItem(Item item){
         itemRepository.save(item);
+        resourceVersions.changed(ResourceVersions.ITEMS);
     }
 
     // db에 있는 해당값을 찾아서 업데이트 날려버림 (별도의 JPA 쿼리 없어도 엔티티 데이타가 변경)
@@ -32,12 +35,18 @@ public class ItemService {
         findItem.setPrice(price);
         findItem.setName(name);
         findItem.setStockQuantity(stockQuantity);
+        resourceVersions.changed(ResourceVersions.ITEMS);
     }
 
     public List<Item> findItems(){
         return itemRepository.findAll();
     }
 
+    // 이름 앞부분으로 상품 검색 (주문 화면 상품 선택)
+    public List<NameOptionDto> searchItems(String namePrefix, int limit){
+        return itemRepository.findNameOptions(namePrefix, limit);
+    }
+
     public Item findOne(Long itemId){
         return itemRepository.findOne(itemId);
     }
@@ -2,6 +2,7 @@ package jpabook.jpashop.service;
 
 import jpabook.jpashop.domain.item.Member;
 import jpabook.jpashop.repository.MemberRepository;
+import jpabook.jpashop.repository.NameOptionDto;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -10,16 +11,19 @@ import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
 
 @Service
-@Transactional // 읽기에는 readOnly 옵션이 좀더 빠르고 좋다
+@Transactional(readOnly = true) // 읽기에는 readOnly 옵션이 좀더 빠르고 좋다 (복제 DB 가 있으면 복제 DB 에서 읽음)
 @RequiredArgsConstructor // 스프링이 생성자 하나면 자동으로 주입해줌
 public class MemberService {
 
     private final MemberRepository memberRepository;
+    private final ResourceVersions resourceVersions;
 
     // 회원가입
+    @Transactional
     public Long join(Member member){
         validateDuplicateMember(member); // 중복회원 검증
         memberRepository.save(member);
+        resourceVersions.changed(ResourceVersions.MEMBERS);
         return member.getId();
     }
 
@@ -35,6 +39,11 @@ public class MemberService {
         return memberRepository.findAll();
     }
 
+    // 이름 앞부분으로 회원 검색 (주문 화면 회원 선택)
+    public List<NameOptionDto> searchMembers(String namePrefix, int limit){
+        return memberRepository.findNameOptions(namePrefix, limit);
+    }
+
     // 단건 조회
     public Member findOne(Long memberId){
         return memberRepository.findOne(memberId);
@@ -45,5 +54,6 @@ public class MemberService {
     public void update(Long id, String name){
         Member member = memberRepository.findOne(id);
         member.setName(name);
+        resourceVersions.changed(ResourceVersions.MEMBERS);
     }
 }
\ No newline at end of file
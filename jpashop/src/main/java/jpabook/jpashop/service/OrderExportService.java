@@ -0,0 +1,64 @@
+package jpabook.jpashop.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jpabook.jpashop.repository.order.query.OrderFlatDto;
+import jpabook.jpashop.repository.order.query.OrderFlatDtoAssembler;
+import jpabook.jpashop.repository.order.query.OrderQueryDto;
+import jpabook.jpashop.repository.order.query.OrderQueryRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.stream.Stream;
+
+/**
+ * 주문 전체를 NDJSON (한 줄에 주문 하나) 으로 내보낸다.
+ * DB 커서 -> 주문 단위 조립 -> 바로 출력 순서로 흘려보내기 때문에 주문 수가 늘어도 힙 사용량은 일정하다.
+ */
+@Service
+@Transactional(readOnly = true)
+public class OrderExportService {
+
+    private final OrderQueryRepository orderQueryRepository;
+    private final ObjectWriter orderWriter;
+    private final ObjectMapper objectMapper;
+    private final int fetchSize;
+
+    public OrderExportService(OrderQueryRepository orderQueryRepository, ObjectMapper objectMapper,
+                              @Value("${jpashop.export.fetch-size:1000}") int fetchSize) {
+        this.orderQueryRepository = orderQueryRepository;
+        this.objectMapper = objectMapper;
+        // 주문마다 flush 하면 작은 패킷이 계속 나가므로 버퍼가 찰 때만 내보낸다
+        this.orderWriter = objectMapper.writerFor(OrderQueryDto.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.fetchSize = fetchSize;
+    }
+
+    public void exportOrders(OutputStream out) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+             Stream<OrderFlatDto> rows = orderQueryRepository.streamAllByDto_flat(fetchSize)) {
+            generator.setRootValueSeparator(null);
+
+            OrderFlatDtoAssembler assembler = new OrderFlatDtoAssembler(order -> writeLine(generator, order));
+            rows.forEach(assembler);
+            assembler.finish();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void writeLine(JsonGenerator generator, OrderQueryDto order) {
+        try {
+            orderWriter.writeValue(generator, order);
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
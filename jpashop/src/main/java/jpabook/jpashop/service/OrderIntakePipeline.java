@@ -0,0 +1,220 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.domain.item.*;
+import jpabook.jpashop.exception.NotEnoughStockException;
+import jpabook.jpashop.repository.ItemRepository;
+import jpabook.jpashop.repository.MemberRepository;
+import jpabook.jpashop.repository.OrderRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.*;
+
+/**
+ * 인기 상품 주문 모아서 처리하기 (group commit)
+ *
+ * 같은 상품에 주문이 몰리면 주문마다 트랜잭션을 열고 같은 재고 row 를 update 하느라 락 대기가 줄줄이 생긴다.
+ * 들어온 주문을 큐에 모았다가 짧은 시간(window-ms) 또는 일정 건수(max-batch) 단위로 꺼내서
+ * - 상품별로 묶어서 재고를 한 번에 차감하고 (update 1번)
+ * - 주문/주문상품/배송 insert 는 JDBC 배치로
+ * 하나의 트랜잭션에서 처리한다. 요청한 쪽은 자기 주문 id 또는 NotEnoughStockException 을 future 로 받는다.
+ *
+ * jpashop.order-intake.enabled=true 일 때만 등록된다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "jpashop.order-intake.enabled", havingValue = "true")
+public class OrderIntakePipeline implements InitializingBean, DisposableBean {
+
+    private final EntityManager em;
+    private final MemberRepository memberRepository;
+    private final ItemRepository itemRepository;
+    private final OrderRepository orderRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ResourceVersions resourceVersions;
+
+    private final BlockingQueue<OrderRequest> queue;
+    private final long windowNanos;
+    private final int maxBatch;
+
+    private volatile boolean running = true;
+    private Thread worker;
+
+    public OrderIntakePipeline(EntityManager em, MemberRepository memberRepository, ItemRepository itemRepository,
+                               OrderRepository orderRepository, TransactionTemplate transactionTemplate,
+                               ResourceVersions resourceVersions,
+                               @Value("${jpashop.order-intake.window-ms:5}") long windowMs,
+                               @Value("${jpashop.order-intake.max-batch:200}") int maxBatch,
+                               @Value("${jpashop.order-intake.queue-capacity:10000}") int queueCapacity) {
+        this.em = em;
+        this.memberRepository = memberRepository;
+        this.itemRepository = itemRepository;
+        this.orderRepository = orderRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.resourceVersions = resourceVersions;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.maxBatch = maxBatch;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * 주문 접수. 반환된 future 는 주문이 커밋되면 주문 id 로, 재고가 부족하면 NotEnoughStockException 으로 끝난다.
+     * 수량이 0 이하면 대기열에 넣지 않고 IllegalArgumentException 으로 끝난다.
+     */
+    public CompletableFuture<Long> submit(Long memberId, Long itemId, int count) {
+        OrderRequest request = new OrderRequest(memberId, itemId, count);
+        try {
+            OrderService.validateCount(count);
+        } catch (IllegalArgumentException e) {
+            request.future.completeExceptionally(e);
+            return request.future;
+        }
+        if (!running || !queue.offer(request)) {
+            request.future.completeExceptionally(new IllegalStateException("주문 대기열이 가득 찼습니다"));
+        }
+        return request.future;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        worker = new Thread(this::run, "order-intake");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        worker.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    private void run() {
+        List<OrderRequest> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                OrderRequest first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    OrderRequest next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                process(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("주문 일괄 처리 실패", e);
+                batch.forEach(request -> request.future.completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void process(List<OrderRequest> batch) {
+        List<OrderRequest> rejected = new ArrayList<>();
+        Map<OrderRequest, Order> placed = transactionTemplate.execute(status -> placeOrders(batch, rejected));
+
+        placed.forEach((request, order) -> request.future.complete(order.getId()));
+        rejected.forEach(request -> request.future.completeExceptionally(request.failure));
+    }
+
+    private Map<OrderRequest, Order> placeOrders(List<OrderRequest> batch, List<OrderRequest> rejected) {
+        Map<Long, Member> members = memberRepository.findAllById(batch.stream().map(r -> r.memberId).collect(toSet()))
+                .stream()
+                .collect(toMap(Member::getId, Function.identity()));
+
+        // 상품 id 순서로 재고 row 를 잠근다 - OrderService.orderBatch 와 순서가 다르면 서로 기다리다 교착상태
+        Map<Long, List<OrderRequest>> byItem = new TreeMap<>();
+        for (OrderRequest request : batch) {
+            if (!members.containsKey(request.memberId)) {
+                rejected.add(request.reject(new IllegalArgumentException("존재하지 않는 회원입니다: " + request.memberId)));
+                continue;
+            }
+            byItem.computeIfAbsent(request.itemId, id -> new ArrayList<>()).add(request);
+        }
+
+        Map<OrderRequest, Order> placed = new LinkedHashMap<>();
+        for (Map.Entry<Long, List<OrderRequest>> entry : byItem.entrySet()) {
+            List<OrderRequest> accepted = reserveStock(entry.getKey(), entry.getValue(), rejected);
+            if (accepted.isEmpty()) {
+                continue;
+            }
+
+            Item item = itemRepository.findOne(entry.getKey());
+            for (OrderRequest request : accepted) {
+                Member member = members.get(request.memberId);
+                Delivery delivery = new Delivery();
+                delivery.setAddress(member.getAddress());
+                OrderItem orderItem = OrderItem.createReservedOrderItem(item, item.getPrice(), request.count);
+                Order order = Order.createOrder(member, delivery, orderItem);
+                orderRepository.save(order);
+                placed.put(request, order);
+            }
+        }
+        // insert 를 JDBC 배치로 한 번에 내보낸다 (hibernate.jdbc.batch_size, order_inserts)
+        em.flush();
+        if (!placed.isEmpty()) {
+            resourceVersions.changed(ResourceVersions.ORDERS);
+        }
+        return placed;
+    }
+
+    // 먼저 상품별 합계로 한 번에 차감해보고, 재고가 모자라면 먼저 들어온 주문부터 하나씩 차감
+    private List<OrderRequest> reserveStock(Long itemId, List<OrderRequest> requests, List<OrderRequest> rejected) {
+        int total = requests.stream().mapToInt(r -> r.count).sum();
+        if (itemRepository.decreaseStock(itemId, total) > 0) {
+            return requests;
+        }
+
+        List<OrderRequest> accepted = new ArrayList<>();
+        for (OrderRequest request : requests) {
+            if (itemRepository.decreaseStock(itemId, request.count) > 0) {
+                accepted.add(request);
+            } else {
+                rejected.add(request.reject(new NotEnoughStockException("need more stock")));
+            }
+        }
+        return accepted;
+    }
+
+    private static class OrderRequest {
+        private final Long memberId;
+        private final Long itemId;
+        private final int count;
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+        private RuntimeException failure;
+
+        private OrderRequest(Long memberId, Long itemId, int count) {
+            this.memberId = memberId;
+            this.itemId = itemId;
+            this.count = count;
+        }
+
+        private OrderRequest reject(RuntimeException failure) {
+            this.failure = failure;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package jpabook.jpashop.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/* 일괄 주문의 주문 한 건 */
+@Getter
+@AllArgsConstructor
+public class OrderLine {
+    private Long memberId;
+    private Long itemId;
+    private int count;
+}
@@ -1,15 +1,21 @@
 package jpabook.jpashop.service;
 
 import jpabook.jpashop.domain.item.*;
+import jpabook.jpashop.exception.NotEnoughStockException;
 import jpabook.jpashop.repository.ItemRepository;
 import jpabook.jpashop.repository.MemberRepository;
+import jpabook.jpashop.repository.MemberSpendRepository;
 import jpabook.jpashop.repository.OrderRepository;
 import jpabook.jpashop.repository.OrderSearch;
+import jpabook.jpashop.repository.OutboxRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
+import java.util.*;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.*;
 
 @Service
 @Transactional(readOnly = true)
@@ -19,13 +25,20 @@ public class OrderService {
     private final OrderRepository orderRepository;
     private final MemberRepository memberRepository;
     private final ItemRepository itemRepository;
+    private final MemberSpendRepository memberSpendRepository;
+    private final OutboxRepository outboxRepository;
+    private final ResourceVersions resourceVersions;
 
     /* 주문 */
     @Transactional
     public Long order(Long memberId, Long itemId, int count){
+        validateCount(count);
 
         // 엔티티 조회
         Member member = memberRepository.findOne(memberId);
+
+        // 재고 차감 - 조건부 update 한 번으로 확인과 차감을 같이 처리 (동시 주문에도 재고가 마이너스가 되지 않음)
+        decreaseStock(itemId, count);
         Item item = itemRepository.findOne(itemId);
 
         // 배송정보 생성
@@ -33,7 +46,7 @@ public class OrderService {
         delivery.setAddress(member.getAddress());
 
         // 주문상품 생성
-        OrderItem orderItem = OrderItem.createOrderItem(item, item.getPrice(), count);
+        OrderItem orderItem = OrderItem.createReservedOrderItem(item, item.getPrice(), count);
 
         // protected 생성자를 걸어놓으면 new 생성 불가 -> 다른 셋팅으로 데이터가 들어가는 것을 막음.
         // ***제약하는 형태의 코드를 만들어야 한다 => 유지보수에도 쉽고, 데이터가 잘못되는걸 막는다.
@@ -44,20 +57,145 @@ public class OrderService {
 
         // 주문 저장
         orderRepository.save(order);
+        resourceVersions.changed(ResourceVersions.ORDERS);
 
         return order.getId();
 
     }
 
+    /**
+     * 일괄 주문 - 전부 성공하거나 전부 실패한다.
+     * 건마다 조회/차감하지 않고
+     * - 재고는 상품별 수량 합계로 상품당 update 1번
+     * - 회원/상품은 IN 조회로 한 번에
+     * - 주문/주문상품/배송 insert 는 JDBC 배치 (hibernate.jdbc.batch_size, order_inserts)
+     * @return 주문 id (요청 순서대로)
+     */
+    @Transactional
+    public List<Long> orderBatch(List<OrderLine> lines){
+        lines.forEach(line -> validateCount(line.getCount()));
+
+        // 재고 차감 - 상품을 로딩하기 전에 차감해야 차감 후 refresh 쿼리가 나가지 않는다
+        // 상품 id 순서로 차감해서 동시에 들어온 일괄 주문끼리 서로 락을 기다리다 교착상태에 빠지지 않게 한다
+        Map<Long, Integer> quantities = lines.stream()
+                .collect(groupingBy(OrderLine::getItemId, TreeMap::new, summingInt(OrderLine::getCount)));
+        quantities.forEach(this::decreaseStock);
+
+        // 엔티티 조회
+        Map<Long, Member> members = memberRepository.findAllById(lines.stream().map(OrderLine::getMemberId).collect(toSet()))
+                .stream()
+                .collect(toMap(Member::getId, Function.identity()));
+        Map<Long, Item> items = itemRepository.findAllById(quantities.keySet())
+                .stream()
+                .collect(toMap(Item::getId, Function.identity()));
+
+        List<Order> orders = new ArrayList<>(lines.size());
+        for (OrderLine line : lines) {
+            Member member = members.get(line.getMemberId());
+            if (member == null) {
+                throw new IllegalArgumentException("존재하지 않는 회원입니다: " + line.getMemberId());
+            }
+            Item item = items.get(line.getItemId());
+
+            Delivery delivery = new Delivery();
+            delivery.setAddress(member.getAddress());
+            OrderItem orderItem = OrderItem.createReservedOrderItem(item, item.getPrice(), line.getCount());
+            Order order = Order.createOrder(member, delivery, orderItem);
+            orderRepository.save(order);
+            orders.add(order);
+        }
+        resourceVersions.changed(ResourceVersions.ORDERS);
+
+        return orders.stream().map(Order::getId).collect(toList());
+    }
+
     /* 주문 */
     @Transactional
     public void cancelOrder(Long orderId){
         // 주문 엔티티 조회
         Order order = orderRepository.findOne(orderId);
 
-        // 주문 취소
-        order.cancel();
+        // 주문 취소 - 읽은 값으로 먼저 확인하고, 상태는 같은 조건을 건 update 로 바꾼다
+        // 같은 주문을 동시에 취소하면 한쪽만 1건이 바뀌고 나머지는 여기서 실패한다 (재고/합계/취소 이벤트는 한 번만)
+        order.checkCancellable();
+        if (orderRepository.cancelAll(List.of(orderId)) != 1) {
+            throw new IllegalStateException("이미 취소되었거나 배송완료된 주문입니다: " + orderId);
+        }
+
+        // 재고 복구 - 일괄 취소와 같이 상품별 수량 합계로 상품당 update 1번, 상품 id 순서
+        // (상품을 로딩해서 재고를 더하면 dirty checking 이 읽은 값 기준의 재고를 써서 동시 주문의 차감을 덮어쓴다)
+        order.getOrderItems().stream()
+                .collect(groupingBy(orderItem -> orderItem.getItem().getId(), TreeMap::new, summingInt(OrderItem::getCount)))
+                .forEach(itemRepository::increaseStock);
+        memberSpendRepository.cancelOrder(order);
+        outboxRepository.orderCancelled(orderId);
+        resourceVersions.changed(ResourceVersions.ORDERS);
+
+    }
+
+    /**
+     * 일괄 취소 - 전부 취소되거나 전부 실패한다. 주문을 한 건씩 로딩/변경감지하지 않고
+     * - 배송완료/이미 취소된 주문 확인은 쿼리 1번 (하나라도 있으면 전체 거절)
+     * - 상태 변경은 벌크 update 1번 (이미 로딩된 주문은 DB 값으로 다시 맞춤)
+     * - 재고는 상품별 수량 합계로 상품당 update 1번, 상품 id 순서 (일괄 주문과 같은 이유)
+     * - 회원별 주문 금액 합계는 회원별로 집계해서 커밋 직전에 반영
+     * - 취소 이벤트는 주문마다 outbox 에 (insert 는 JDBC 배치)
+     * IN 절은 BatchInQueryLoader 묶음 단위로 나뉜다.
+     * @return 취소한 주문 id (id 순)
+     */
+    @Transactional
+    public List<Long> cancelOrders(Collection<Long> orderIds){
+        List<Long> ids = new ArrayList<>(new TreeSet<>(orderIds));
+        if (ids.isEmpty()) {
+            return ids;
+        }
+
+        List<Long> notCancellable = orderRepository.findNotCancellableIds(ids);
+        if (!notCancellable.isEmpty()) {
+            throw new IllegalStateException("이미 배송완료되었거나 취소된 주문은 취소가 불가능합니다: " + notCancellable);
+        }
+
+        Map<Long, Integer> quantities = orderRepository.sumQuantitiesByItem(ids);
+        memberSpendRepository.cancelOrders(ids);
+
+        // 확인한 뒤에 다른 트랜잭션이 취소/배송완료했거나 없는 주문 id 면 수가 모자란다
+        if (orderRepository.cancelAll(ids) != ids.size()) {
+            throw new IllegalStateException("취소하지 못한 주문이 있습니다 (없는 주문이거나 다른 요청에서 변경됨)");
+        }
+
+        quantities.forEach(itemRepository::increaseStock);
+        outboxRepository.ordersCancelled(ids);
+        resourceVersions.changed(ResourceVersions.ORDERS);
+        return ids;
+    }
+
+    // 검색 조건에 맞는 주문 중 아직 취소되지 않은 주문 전체를 일괄 취소 (건수 제한 없음)
+    @Transactional
+    public List<Long> cancelOrders(OrderSearch orderSearch){
+        if (orderSearch.getOrderStatus() == OrderStatus.CANCEL) {
+            return new ArrayList<>();
+        }
+        OrderSearch notCancelled = new OrderSearch();
+        notCancelled.setMemberName(orderSearch.getMemberName());
+        notCancelled.setOrderStatus(OrderStatus.ORDER);
+        return cancelOrders(orderRepository.findIdsByCriteria(notCancelled));
+    }
+
+    // 차감된 행이 없으면 재고가 모자라거나 없는 상품이다 (없는 상품을 재고 부족으로 알리지 않게 그때만 조회)
+    private void decreaseStock(Long itemId, int quantity){
+        if (itemRepository.decreaseStock(itemId, quantity) == 0) {
+            if (itemRepository.findOne(itemId) == null) {
+                throw new IllegalArgumentException("존재하지 않는 상품입니다: " + itemId);
+            }
+            throw new NotEnoughStockException("need more stock: item " + itemId);
+        }
+    }
 
+    // 수량이 0 이하면 조건부 재고 차감(stock_quantity >= :quantity)이 항상 통과해서 재고가 늘고, 금액 0 이하 주문이 생긴다
+    static void validateCount(int count){
+        if (count <= 0) {
+            throw new IllegalArgumentException("주문 수량은 1 이상이어야 합니다: " + count);
+        }
     }
 
 //     검색
@@ -0,0 +1,132 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.repository.MemberSpendRepository;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 주문 금액(orders.total_price)과 회원별 합계(member_spend)를 주문상품/주문에서 다시 계산해서 맞춘다.
+ * 평소에는 주문/취소할 때 같은 트랜잭션에서 더하고 빼므로 어긋나지 않지만, SQL 로 직접 고친 데이터나
+ * 컬럼이 새로 생긴 기존 DB 는 이 작업으로 맞춘다.
+ *
+ * - 회원 id 범위를 partitions 개로 나눠서 threads 개 스레드가 범위마다 각자 트랜잭션으로 set 기반 update 를 실행한다.
+ *   (주문 금액 -> 회원 합계 순서, 다른 값만 고침)
+ * - 커밋한 뒤 범위마다 다시 세어서 아직 다른 행 수를 결과에 남긴다. 0 이 아니면 경고 로그
+ *   (작업 중에 들어온 주문/취소와 겹치면 어긋날 수 있으므로 주문이 적은 시간에 실행한다)
+ * - jpashop.totals-repair.cron 으로 자동 실행 ("-" 면 자동 실행하지 않음)
+ */
+@Slf4j
+@Component
+public class OrderTotalsRepairJob {
+
+    private final MemberSpendRepository memberSpendRepository;
+    private final EntityManager em;
+    private final TransactionTemplate transactionTemplate;
+    private final int partitions;
+    private final int threads;
+
+    public OrderTotalsRepairJob(MemberSpendRepository memberSpendRepository, EntityManager em,
+                                TransactionTemplate transactionTemplate,
+                                @Value("${jpashop.totals-repair.partitions:16}") int partitions,
+                                @Value("${jpashop.totals-repair.threads:4}") int threads) {
+        if (partitions <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("partitions, threads 는 1 이상이어야 합니다.");
+        }
+        this.memberSpendRepository = memberSpendRepository;
+        this.em = em;
+        this.transactionTemplate = transactionTemplate;
+        this.partitions = partitions;
+        this.threads = threads;
+    }
+
+    @Scheduled(cron = "${jpashop.totals-repair.cron:-}")
+    public void scheduledRepair() throws InterruptedException, ExecutionException {
+        repair();
+    }
+
+    public RepairResult repair() throws InterruptedException, ExecutionException {
+        long startNanos = System.nanoTime();
+        Object[] range = transactionTemplate.execute(status ->
+                em.createQuery("select min(m.id), max(m.id) from Member m", Object[].class).getSingleResult());
+        RepairResult result = new RepairResult();
+        if (range[0] == null) {
+            return result;
+        }
+        long min = (Long) range[0];
+        long max = (Long) range[1];
+        long size = Math.max(1, (max - min + partitions) / partitions);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("totals-repair-"));
+        try {
+            List<Future<RepairResult>> futures = new ArrayList<>();
+            for (long start = min; start <= max; start += size) {
+                long from = start;
+                long to = Math.min(max, start + size - 1);
+                futures.add(executor.submit(() -> repairPartition(from, to)));
+            }
+            for (Future<RepairResult> future : futures) {
+                result.add(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        long millis = (System.nanoTime() - startNanos) / 1_000_000;
+        if (result.getRemaining() > 0) {
+            log.warn("주문 금액 재계산: 범위 {}개, 주문 {}건/회원 합계 {}건 수정, 회원 합계 {}건 추가, 확인 후에도 다른 행 {}건, {} ms",
+                    result.getPartitions(), result.getOrdersFixed(), result.getSpendFixed(), result.getSpendInserted(),
+                    result.getRemaining(), millis);
+        } else {
+            log.info("주문 금액 재계산: 범위 {}개, 주문 {}건/회원 합계 {}건 수정, 회원 합계 {}건 추가, {} ms",
+                    result.getPartitions(), result.getOrdersFixed(), result.getSpendFixed(), result.getSpendInserted(),
+                    millis);
+        }
+        return result;
+    }
+
+    private RepairResult repairPartition(long from, long to) {
+        RepairResult result = new RepairResult();
+        result.partitions = 1;
+        transactionTemplate.executeWithoutResult(status -> {
+            result.ordersFixed = memberSpendRepository.repairOrderTotals(from, to);
+            result.spendFixed = memberSpendRepository.repairMemberSpend(from, to);
+            result.spendInserted = memberSpendRepository.insertMissingMemberSpend(from, to);
+        });
+        // 커밋된 결과를 다시 확인
+        result.remaining = transactionTemplate.execute(status ->
+                memberSpendRepository.countOrderTotalMismatches(from, to)
+                        + memberSpendRepository.countMemberSpendMismatches(from, to));
+        return result;
+    }
+
+    @Getter
+    public static class RepairResult {
+        private int partitions;
+        private long ordersFixed;
+        private long spendFixed;
+        private long spendInserted;
+        // 다시 확인했을 때 아직 다른 주문 + 회원 합계 수
+        private long remaining;
+
+        private void add(RepairResult other) {
+            partitions += other.partitions;
+            ordersFixed += other.ordersFixed;
+            spendFixed += other.spendFixed;
+            spendInserted += other.spendInserted;
+            remaining += other.remaining;
+        }
+    }
+}
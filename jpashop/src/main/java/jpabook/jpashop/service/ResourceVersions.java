@@ -0,0 +1,113 @@
+package jpabook.jpashop.service;
+
+import jpabook.jpashop.repository.support.TransactionBoundResource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 조회 API 의 조건부 GET (ETag / If-None-Match) 에 쓰는 자원별 버전
+ *
+ * - 회원/주문/상품을 바꾸는 서비스가 changed() 로 알리면, 트랜잭션이 커밋된 뒤에 버전을 올린다.
+ *   (롤백되면 그대로, 한 트랜잭션에서 여러 번 바꿔도 한 번만)
+ * - 조회 API 는 DB 를 읽기 전에 etag() 를 만들어서 요청의 If-None-Match 와 같으면 조회 없이 304 로 끝낸다.
+ *   버전을 조회보다 먼저 읽으므로 조회 도중에 커밋된 변경은 다음 요청에서 다른 ETag 로 잡힌다.
+ * - 버전은 서버 메모리에만 있고 이 서버에서 커밋된 변경만 센다. 서버가 여러 대면 다른 서버의 변경을 모르므로
+ *   바뀐 데이터에도 304 를 돌려준다. 그래서 jpashop.etag.enabled 로 켜야 하고 (서버가 한 대일 때만) 꺼져 있으면 ETag 를 만들지 않는다.
+ *   ETag 에 서버를 띄울 때마다 새로 정하는 값을 넣어서 재시작 전의 ETag 는 맞지 않는다.
+ * - 복제 DB 를 쓰면 (jpashop.datasource.replica-urls) 커밋 직후의 복제 DB 에는 아직 변경이 없을 수 있으므로
+ *   마지막 변경 뒤 read-your-writes 시간 동안은 ETag 를 만들지 않는다. (옛 데이터가 새 ETag 로 캐시되지 않게)
+ */
+@Component
+public class ResourceVersions {
+
+    public static final String MEMBERS = "members";
+    public static final String ORDERS = "orders";
+    public static final String ITEMS = "items";
+
+    private final String instance = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    private final ConcurrentMap<String, Version> versions = new ConcurrentHashMap<>();
+    private final long settleMillis;
+    private final boolean enabled;
+
+    public ResourceVersions(@Value("${jpashop.datasource.replica-urls:}") List<String> replicaUrls,
+                            @Value("${jpashop.datasource.read-your-writes-window-ms:1000}") long readYourWritesMillis,
+                            @Value("${jpashop.etag.enabled:false}") boolean enabled) {
+        this.settleMillis = replicaUrls.isEmpty() ? 0 : readYourWritesMillis;
+        this.enabled = enabled;
+    }
+
+    // 트랜잭션 밖이면 바로, 안이면 커밋된 뒤에 올린다
+    public void changed(String... resources) {
+        if (!enabled) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            increment(resources);
+            return;
+        }
+        Collections.addAll(pending(), resources);
+    }
+
+    /**
+     * 자원 버전들로 만든 ETag (응답이 여러 자원에 걸치면 모두 넘긴다)
+     * @return 꺼져 있거나 복제 DB 반영을 기다리는 중이면 null (ETag 없이 응답)
+     */
+    public String etag(String... resources) {
+        if (!enabled) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        StringBuilder etag = new StringBuilder("\"").append(instance);
+        for (String resource : resources) {
+            Version version = versions.get(resource);
+            long value = version == null ? 0 : version.value.get();
+            if (version != null && now - version.changedAt < settleMillis) {
+                return null;
+            }
+            etag.append('-').append(value);
+        }
+        return etag.append('"').toString();
+    }
+
+    private void increment(Iterable<String> resources) {
+        for (String resource : resources) {
+            versions.computeIfAbsent(resource, r -> new Version()).increment();
+        }
+    }
+
+    private void increment(String... resources) {
+        increment(List.of(resources));
+    }
+
+    // 이 트랜잭션에서 바뀐 자원
+    private Set<String> pending() {
+        return TransactionBoundResource.get(this, HashSet::new, changed -> new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                increment(changed);
+            }
+        });
+    }
+
+    private static class Version {
+        private final AtomicLong value = new AtomicLong();
+        private volatile long changedAt;
+
+        // 시각을 먼저 바꾼다 - 새 버전을 읽은 쪽은 항상 새 시각도 본다
+        void increment() {
+            changedAt = System.currentTimeMillis();
+            value.incrementAndGet();
+        }
+    }
+}
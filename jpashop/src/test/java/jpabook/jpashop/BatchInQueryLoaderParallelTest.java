@@ -0,0 +1,109 @@
+package jpabook.jpashop;
+
+import jpabook.jpashop.repository.support.BatchInQueryLoader;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BatchInQueryLoader parallel 모드 - 커넥션 풀 2개, 묶음 크기 2
+ * 요청(OSIV)의 EntityManager 가 커넥션을 잡고 있으면 별도 커넥션을 기다리지 않고 그 EntityManager 로 순서대로 조회한다.
+ */
+@SpringBootTest(properties = {
+        "jpashop.query.in-list.parallel=true",
+        "jpashop.query.in-list.chunk-size=2",
+        "jpashop.datasource.pool-size=2",
+        "jpashop.outbox.relay.enabled=false"})
+public class BatchInQueryLoaderParallelTest {
+
+    private static final List<Long> IDS = LongStream.rangeClosed(1, 8).boxed().collect(Collectors.toList());
+
+    @Autowired
+    BatchInQueryLoader batchInQueryLoader;
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Test
+    public void 커넥션을_잡은_요청이_풀만큼_몰려도_멈추지않음() throws Exception {
+        //given 풀 크기만큼의 요청이 각자 쿼리를 한 번 실행해서 커넥션을 잡고 있다
+        int requests = 2;
+        ExecutorService executor = Executors.newFixedThreadPool(requests);
+        CyclicBarrier connected = new CyclicBarrier(requests);
+        List<Future<Set<String>>> futures = new ArrayList<>();
+
+        //when 둘 다 잡은 뒤에 묶음 4개를 조회
+        try {
+            for (int r = 0; r < requests; r++) {
+                futures.add(executor.submit(() -> openSessionInView(em -> {
+                    em.createQuery("select count(m) from Member m").getSingleResult();
+                    await(connected);
+                    return threads(batchInQueryLoader.load(IDS, this::currentThread));
+                })));
+            }
+
+            //then 커넥션 타임아웃(30초) 전에 요청 스레드에서 끝난다
+            for (Future<Set<String>> future : futures) {
+                Set<String> threads = future.get(10, TimeUnit.SECONDS);
+                assertEquals(1, threads.size());
+                assertFalse(threads.iterator().next().startsWith("query-"));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void 요청_밖에서는_별도_커넥션에서_동시에() throws Exception {
+        //when OSIV 를 끈 경우처럼 묶인 EntityManager 가 없을 때
+        Set<String> threads = threads(batchInQueryLoader.load(IDS, this::currentThread));
+
+        //then
+        assertTrue(threads.stream().allMatch(thread -> thread.startsWith("query-")), threads::toString);
+    }
+
+    // 요청 하나 동안 트랜잭션 없이 영속성 컨텍스트를 열어두는 OSIV 필터 흉내
+    private <T> T openSessionInView(Function<EntityManager, T> request) {
+        EntityManager em = emf.createEntityManager();
+        TransactionSynchronizationManager.bindResource(emf, new EntityManagerHolder(em));
+        try {
+            return request.apply(em);
+        } finally {
+            TransactionSynchronizationManager.unbindResource(emf);
+            em.close();
+        }
+    }
+
+    // 묶음을 실제로 조회하고 (커넥션 필요) 실행한 스레드 이름을 돌려준다
+    private List<String> currentThread(EntityManager entityManager, List<Long> chunk) {
+        entityManager.createQuery("select m.id from Member m where m.id in :ids", Long.class)
+                .setParameter("ids", chunk)
+                .getResultList();
+        return List.of(Thread.currentThread().getName());
+    }
+
+    private static Set<String> threads(List<String> names) {
+        return Set.copyOf(names);
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package jpabook.jpashop;
+
+import jpabook.jpashop.repository.support.BatchInQueryLoader;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchInQueryLoaderTest {
+
+    @Test
+    public void 고정크기_묶음으로_나누고_2의거듭제곱으로_채움() throws Exception {
+        //given
+        List<Long> ids = LongStream.rangeClosed(1, 2300).boxed().collect(Collectors.toList());
+
+        //when
+        List<List<Long>> chunks = BatchInQueryLoader.partition(ids, 1000);
+
+        //then 1000, 1000, 300 -> 512
+        assertEquals(3, chunks.size());
+        assertEquals(1000, chunks.get(0).size());
+        assertEquals(1000, chunks.get(1).size());
+        assertEquals(512, chunks.get(2).size());
+        assertEquals(2300L, chunks.get(2).get(511));
+        assertEquals(300, chunks.get(2).stream().distinct().count());
+    }
+
+    @Test
+    public void 묶음크기를_넘지않게_채움() throws Exception {
+        List<Long> ids = LongStream.rangeClosed(1, 700).boxed().collect(Collectors.toList());
+
+        List<List<Long>> chunks = BatchInQueryLoader.partition(ids, 1000);
+
+        assertEquals(1, chunks.size());
+        assertEquals(1000, chunks.get(0).size());
+    }
+
+    @Test
+    public void 중복_id_제거() throws Exception {
+        List<List<Long>> chunks = BatchInQueryLoader.partition(List.of(3L, 3L, 1L), 1000);
+
+        assertEquals(List.of(3L, 1L), chunks.get(0));
+    }
+
+    @Test
+    public void 빈_목록() throws Exception {
+        assertTrue(BatchInQueryLoader.partition(List.of(), 1000).isEmpty());
+    }
+}
@@ -0,0 +1,215 @@
+package jpabook.jpashop;
+
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Category;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.monitoring.SqlStatementStats;
+import jpabook.jpashop.repository.CategoryRepository;
+import jpabook.jpashop.service.CategoryService;
+import jpabook.jpashop.service.CategoryTree;
+import jpabook.jpashop.service.ItemService;
+import org.hibernate.Hibernate;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 카테고리 경로/트리 스냅샷 - 스냅샷은 커밋 후에 갱신되므로 @Transactional 을 걸지 않는다.
+ */
+@SpringBootTest
+public class CategoryTreeTest {
+
+    @Autowired
+    CategoryService categoryService;
+    @Autowired
+    CategoryRepository categoryRepository;
+    @Autowired
+    ItemService itemService;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Test
+    public void 카테고리경로() throws Exception {
+        //given
+        Long root = categoryService.saveCategory("도서", null);
+        Long it = categoryService.saveCategory("IT", root);
+
+        //when
+        Long java = categoryService.saveCategory("자바", it);
+
+        //then
+        assertEquals("/", path(root));
+        assertEquals("/" + root + "/", path(it));
+        assertEquals("/" + root + "/" + it + "/", path(java));
+    }
+
+    @Test
+    public void 하위카테고리추가_부모의_하위목록_로딩없음() throws Exception {
+        //given 하위 카테고리가 있는 저장된 부모
+        Long root = categoryService.saveCategory("도서", null);
+        Long it = categoryService.saveCategory("IT", root);
+
+        //when
+        Long novel = transactionTemplate.execute(status -> {
+            Long saved = categoryService.saveCategory("소설", root);
+
+            //then 부모의 child 는 로딩되지 않고, 나중에 로딩하면 새 카테고리까지 보인다
+            assertFalse(Hibernate.isInitialized(categoryRepository.findOne(root).getChild()));
+            return saved;
+        });
+        assertEquals(List.of(it, novel), transactionTemplate.execute(status ->
+                categoryRepository.findOne(root).getChild().stream().map(Category::getId).sorted().collect(toList())));
+    }
+
+    @Test
+    public void 하위카테고리_상품조회_페이징() throws Exception {
+        //given 도서 > IT > 자바, 도서 > 소설
+        Long root = categoryService.saveCategory("도서", null);
+        Long it = categoryService.saveCategory("IT", root);
+        Long java = categoryService.saveCategory("자바", it);
+        Long novel = categoryService.saveCategory("소설", root);
+        Long jpaBook = addBook(java, "JPA");
+        Long springBook = addBook(it, "SPRING");
+        Long novelBook = addBook(novel, "NOVEL");
+        categoryService.addItem(it, jpaBook); // 같은 상품이 두 하위 카테고리에 있어도 한 번만
+
+        //when
+        List<Long> all = ids(categoryService.findItemsInSubtree(root, 0, 10));
+        List<Long> itItems = ids(categoryService.findItemsInSubtree(it, 0, 10));
+        List<Long> secondPage = ids(categoryService.findItemsInSubtree(root, 1, 1));
+
+        //then
+        assertEquals(List.of(jpaBook, springBook, novelBook), all);
+        assertEquals(List.of(jpaBook, springBook), itItems);
+        assertEquals(List.of(springBook), secondPage);
+    }
+
+    @Test
+    public void 하위카테고리별_상품수() throws Exception {
+        //given
+        Long root = categoryService.saveCategory("도서", null);
+        Long it = categoryService.saveCategory("IT", root);
+        Long java = categoryService.saveCategory("자바", it);
+        Long jpaBook = addBook(java, "JPA");
+        addBook(it, "SPRING");
+        categoryService.addItem(it, jpaBook);
+
+        //when
+        Map<Long, Long> counts = categoryService.countItemsBySubtree();
+
+        //then
+        assertEquals(2L, counts.get(root));
+        assertEquals(2L, counts.get(it));
+        assertEquals(1L, counts.get(java));
+    }
+
+    @Test
+    public void 카테고리이동_하위경로변경() throws Exception {
+        //given 도서 > IT > 자바 를 도서 > 소설 아래로
+        Long root = categoryService.saveCategory("도서", null);
+        Long it = categoryService.saveCategory("IT", root);
+        Long java = categoryService.saveCategory("자바", it);
+        Long novel = categoryService.saveCategory("소설", root);
+
+        //when
+        categoryService.moveCategory(it, novel);
+
+        //then
+        assertEquals("/" + root + "/" + novel + "/", path(it));
+        assertEquals("/" + root + "/" + novel + "/" + it + "/", path(java));
+        assertThrows(IllegalArgumentException.class, () -> categoryService.moveCategory(root, java));
+    }
+
+    @Test
+    public void 카테고리이동_하위카테고리_로딩없음() throws Exception {
+        //given 도서 > IT > 자바 > 스프링 을 도서 > 소설 아래로
+        Long root = categoryService.saveCategory("도서", null);
+        Long it = categoryService.saveCategory("IT", root);
+        Long java = categoryService.saveCategory("자바", it);
+        Long spring = categoryService.saveCategory("스프링", java);
+        Long novel = categoryService.saveCategory("소설", root);
+
+        //when
+        transactionTemplate.executeWithoutResult(status -> {
+            categoryService.moveCategory(it, novel);
+
+            //then 옮긴 카테고리와 이전/새 부모의 child 를 로딩하지 않는다
+            assertFalse(Hibernate.isInitialized(categoryRepository.findOne(root).getChild()));
+            assertFalse(Hibernate.isInitialized(categoryRepository.findOne(novel).getChild()));
+            assertFalse(Hibernate.isInitialized(categoryRepository.findOne(it).getChild()));
+        });
+        assertEquals("/" + root + "/" + novel + "/" + it + "/" + java + "/", path(spring));
+        assertEquals(List.of(it), transactionTemplate.execute(status ->
+                categoryRepository.findOne(novel).getChild().stream().map(Category::getId).collect(toList())));
+    }
+
+    @Test
+    public void 저장된_카테고리는_연관관계메서드로_옮길수없음() throws Exception {
+        //given 도서 > IT > 자바, 소설
+        Long root = categoryService.saveCategory("도서", null);
+        Long it = categoryService.saveCategory("IT", root);
+        Long java = categoryService.saveCategory("자바", it);
+        Long novel = categoryService.saveCategory("소설", null);
+
+        //when
+        //then 자바의 경로가 이전 값으로 남지 않도록 moveCategory 로만 옮긴다
+        transactionTemplate.executeWithoutResult(status -> {
+            Category category = categoryRepository.findOne(it);
+            assertThrows(IllegalStateException.class, () -> categoryRepository.findOne(novel).addChildCategory(category));
+            status.setRollbackOnly();
+        });
+        transactionTemplate.executeWithoutResult(status -> {
+            categoryService.moveCategory(it, novel);
+            Category category = categoryRepository.findOne(it);
+            assertEquals(novel, category.getParent().getId());
+            assertEquals("/" + novel + "/", category.getPath());
+        });
+        assertEquals("/" + novel + "/" + it + "/", path(java));
+    }
+
+    @Test
+    public void 트리스냅샷() throws Exception {
+        //given
+        Long root = categoryService.saveCategory("도서", null);
+        categoryService.getTree();
+
+        //when
+        Long it = categoryService.saveCategory("IT", root);
+        CategoryTree tree = categoryService.getTree();
+
+        //then 등록이 커밋되면 새 스냅샷, 바뀐 게 없으면 같은 스냅샷을 쿼리 없이
+        CategoryTree.Node node = tree.find(root).orElseThrow();
+        assertEquals(List.of(it), node.getChildren().stream().map(CategoryTree.Node::getId).collect(toList()));
+        assertEquals(root, tree.find(it).orElseThrow().getParentId());
+        try (SqlStatementStats stats = SqlStatementStats.begin()) {
+            assertSame(tree, categoryService.getTree());
+            assertEquals(0, stats.getStatementCount());
+        }
+        assertThrows(UnsupportedOperationException.class, () -> node.getChildren().clear());
+    }
+
+    private String path(Long categoryId) {
+        return transactionTemplate.execute(status -> categoryRepository.findOne(categoryId).getPath());
+    }
+
+    private Long addBook(Long categoryId, String name) {
+        Book book = new Book();
+        book.setName(name);
+        book.setPrice(10000);
+        book.setStockQuantity(10);
+        itemService.saveItem(book);
+        categoryService.addItem(categoryId, book.getId());
+        return book.getId();
+    }
+
+    private List<Long> ids(List<Item> items) {
+        return items.stream().map(Item::getId).collect(toList());
+    }
+}
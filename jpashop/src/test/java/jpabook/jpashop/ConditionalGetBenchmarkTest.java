@@ -0,0 +1,92 @@
+package jpabook.jpashop;
+
+import jpabook.jpashop.monitoring.SqlStatementFilter;
+import jpabook.jpashop.service.MemberService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * 목록 API 를 주기적으로 다시 읽는 클라이언트 - If-None-Match 를 보낼 때/안 보낼 때 DB 문장 수와 응답 바이트
+ * 중간중간 회원을 바꿔서 (benchmark.write-every 번마다) 새 ETag 로 다시 받는 경우도 섞는다.
+ * 회원을 많이 넣기 때문에 -Dbenchmark=true 일 때만 실행
+ * ex) ./gradlew test --tests "*ConditionalGetBenchmarkTest" -Dbenchmark=true -Dbenchmark.polls=500
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create",
+        "spring.datasource.url=jdbc:h2:tcp://localhost/mem:conditional-get-bench;DB_CLOSE_DELAY=-1",
+        "jpashop.sql-stats.enabled=true",
+        "jpashop.etag.enabled=true"})
+@AutoConfigureMockMvc
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class ConditionalGetBenchmarkTest {
+
+    @Autowired
+    MockMvc mockMvc;
+    @Autowired
+    TestFixtures fixtures;
+    @Autowired
+    MemberService memberService;
+
+    @Test
+    public void 조건부GET_DB문장수_응답바이트_비교() throws Exception {
+        int members = Integer.getInteger("benchmark.members", 2000);
+        for (int i = 0; i < members; i++) {
+            memberService.join(TestFixtures.member("etag-bench-" + i));
+        }
+
+        Result plain = poll("/api/v2/members", false);
+        Result conditional = poll("/api/v2/members", true);
+        plain.print("without If-None-Match");
+        conditional.print("with If-None-Match");
+        assertTrue(conditional.statements < plain.statements);
+        assertTrue(conditional.bytes < plain.bytes);
+    }
+
+    private Result poll(String url, boolean conditional) throws Exception {
+        int polls = Integer.getInteger("benchmark.polls", 500);
+        int writeEvery = Integer.getInteger("benchmark.write-every", 50);
+        Result result = new Result();
+        String etag = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < polls; i++) {
+            if (i > 0 && i % writeEvery == 0) {
+                fixtures.createMember("etag-bench-new-");
+            }
+            MockHttpServletResponse response = mockMvc.perform(conditional && etag != null
+                            ? get(url).header("If-None-Match", etag) : get(url))
+                    .andReturn().getResponse();
+            if (response.getStatus() == 304) {
+                result.notModified++;
+            } else {
+                assertEquals(200, response.getStatus());
+                etag = response.getHeader("ETag");
+            }
+            result.statements += Long.parseLong(response.getHeader(SqlStatementFilter.COUNT_HEADER));
+            result.bytes += response.getContentAsByteArray().length;
+        }
+        result.polls = polls;
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    private static class Result {
+        int polls;
+        int notModified;
+        long statements;
+        long bytes;
+        long elapsedNanos;
+
+        void print(String label) {
+            System.out.printf("%s: %d polls, %d not modified, %,d SQL statements, %,d response bytes, %.2f ms/poll%n",
+                    label, polls, notModified, statements, bytes, elapsedNanos / 1_000_000.0 / polls);
+        }
+    }
+}
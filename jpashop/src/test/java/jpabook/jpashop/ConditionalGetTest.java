@@ -0,0 +1,153 @@
+package jpabook.jpashop;
+
+import jpabook.jpashop.monitoring.SqlStatementFilter;
+import jpabook.jpashop.service.MemberService;
+import jpabook.jpashop.service.OrderService;
+import jpabook.jpashop.service.ResourceVersions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * 회원/주문 조회 API 의 ETag, If-None-Match -> 304
+ * 별도 메모리 DB 에서 실행 (다른 테스트의 쓰기가 ETag 를 바꾸지 않게)
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create",
+        "spring.datasource.url=jdbc:h2:tcp://localhost/mem:conditional-get;DB_CLOSE_DELAY=-1",
+        "jpashop.sql-stats.enabled=true",
+        "jpashop.etag.enabled=true"})
+@AutoConfigureMockMvc
+public class ConditionalGetTest {
+
+    @Autowired
+    MockMvc mockMvc;
+    @Autowired
+    TestFixtures fixtures;
+    @Autowired
+    MemberService memberService;
+    @Autowired
+    OrderService orderService;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Test
+    public void 바뀌지_않았으면_DB조회_없이_304() throws Exception {
+        //given
+        MockHttpServletResponse first = perform("/api/v2/members", null);
+        String etag = first.getHeader("ETag");
+        assertEquals(200, first.getStatus());
+        assertNotNull(etag);
+
+        //when
+        MockHttpServletResponse second = perform("/api/v2/members", etag);
+
+        //then
+        assertEquals(304, second.getStatus());
+        assertEquals("0", second.getHeader(SqlStatementFilter.COUNT_HEADER));
+        assertEquals(0, second.getContentAsByteArray().length);
+        assertEquals(etag, second.getHeader("ETag"));
+    }
+
+    @Test
+    public void 회원을_바꾸면_새_ETag() throws Exception {
+        //given
+        String before = perform("/api/v2/members", null).getHeader("ETag");
+
+        //when
+        Long memberId = fixtures.createMember("etag-");
+        String joined = perform("/api/v2/members", before).getHeader("ETag");
+        memberService.update(memberId, "etag-renamed-" + System.nanoTime());
+        MockHttpServletResponse updated = perform("/api/v2/members", joined);
+
+        //then
+        assertNotEquals(before, joined);
+        assertEquals(200, updated.getStatus());
+        assertNotEquals(joined, updated.getHeader("ETag"));
+    }
+
+    @Test
+    public void 주문_취소와_회원_상품_변경이_주문목록_ETag를_바꾼다() throws Exception {
+        //given
+        Long memberId = fixtures.createMember("etag-order-");
+        Long bookId = fixtures.createBook(100);
+        String before = perform("/api/v3.1/orders", null).getHeader("ETag");
+
+        //when
+        Long orderId = orderService.order(memberId, bookId, 1);
+        String ordered = perform("/api/v3.1/orders", before).getHeader("ETag");
+        orderService.cancelOrder(orderId);
+        String cancelled = perform("/api/v3.1/orders", ordered).getHeader("ETag");
+        memberService.update(memberId, "etag-order-renamed-" + System.nanoTime());
+        String renamed = perform("/api/v3.1/orders", cancelled).getHeader("ETag");
+
+        //then
+        assertNotEquals(before, ordered);
+        assertNotEquals(ordered, cancelled);
+        assertNotEquals(cancelled, renamed, "응답에 회원 이름이 들어간다");
+        assertEquals(304, perform("/api/v3.1/orders?after=", renamed).getStatus(), "키셋 페이지도 같은 ETag");
+    }
+
+    @Test
+    public void 롤백된_쓰기는_ETag를_바꾸지_않는다() throws Exception {
+        //given
+        String before = perform("/api/v2/members", null).getHeader("ETag");
+
+        //when
+        transactionTemplate.executeWithoutResult(status -> {
+            fixtures.createMember("etag-rollback-");
+            status.setRollbackOnly();
+        });
+        assertThrows(IllegalStateException.class, () -> memberService.join(TestFixtures.member("userA")), "중복 회원");
+
+        //then
+        assertEquals(304, perform("/api/v2/members", before).getStatus());
+    }
+
+    @Test
+    public void 복제DB를_쓰면_변경직후에는_ETag없이() throws Exception {
+        //given
+        ResourceVersions versions = new ResourceVersions(List.of("jdbc:h2:tcp://localhost/mem:replica"), 200, true);
+        String before = versions.etag(ResourceVersions.MEMBERS);
+
+        //when
+        versions.changed(ResourceVersions.MEMBERS);
+        String justChanged = versions.etag(ResourceVersions.MEMBERS);
+        Thread.sleep(250);
+        String settled = versions.etag(ResourceVersions.MEMBERS);
+
+        //then
+        assertNotNull(before);
+        assertNull(justChanged, "복제 DB 에 아직 반영되지 않았을 수 있음");
+        assertNotNull(settled);
+        assertNotEquals(before, settled);
+        assertNotEquals(before, new ResourceVersions(List.of(), 0, true).etag(ResourceVersions.MEMBERS), "서버마다 다른 ETag");
+    }
+
+    @Test
+    public void 꺼져있으면_ETag없이() throws Exception {
+        //given 서버가 여러 대일 수 있는 기본 설정 (jpashop.etag.enabled=false)
+        ResourceVersions versions = new ResourceVersions(List.of(), 0, false);
+
+        //when
+        versions.changed(ResourceVersions.MEMBERS);
+
+        //then 다른 서버의 변경을 모르는 ETag 로 304 를 돌려주지 않는다
+        assertNull(versions.etag(ResourceVersions.MEMBERS));
+        assertNull(versions.etag(ResourceVersions.ORDERS, ResourceVersions.MEMBERS, ResourceVersions.ITEMS));
+    }
+
+    private MockHttpServletResponse perform(String url, String ifNoneMatch) throws Exception {
+        return mockMvc.perform(ifNoneMatch == null ? get(url) : get(url).header("If-None-Match", ifNoneMatch))
+                .andReturn().getResponse();
+    }
+}
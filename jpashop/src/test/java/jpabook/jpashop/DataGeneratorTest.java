@@ -0,0 +1,122 @@
+package jpabook.jpashop;
+
+import jpabook.jpashop.datagen.DataGenerator;
+import jpabook.jpashop.domain.item.Member;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * datagen 프로필 - 시작할 때 DataGenerator 가 별도 메모리 DB 에 데이터를 넣는다
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:tcp://localhost/mem:datagen;DB_CLOSE_DELAY=-1",
+        "jpashop.datagen.members=2000",
+        "jpashop.datagen.items=300",
+        "jpashop.datagen.categories=40",
+        "jpashop.datagen.orders=5000",
+        "jpashop.datagen.threads=3",
+        "jpashop.datagen.batch-size=100",
+        "jpashop.datagen.exit-when-done=false"})
+@ActiveProfiles("datagen")
+public class DataGeneratorTest {
+
+    @Autowired
+    DataGenerator dataGenerator;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Test
+    public void 설정한_건수만큼_생성() {
+        assertEquals(2000L, count("select count(m) from Member m"));
+        assertEquals(300L, count("select count(i) from Item i"));
+        assertEquals(40L, count("select count(c) from Category c"));
+        assertEquals(5000L, count("select count(o) from Order o"));
+        assertEquals(5000L, count("select count(d) from Delivery d"));
+        long orderItems = count("select count(oi) from OrderItem oi");
+        assertTrue(orderItems > 5000 && orderItems < 5000 * 4, "주문당 평균 약 2.2개: " + orderItems);
+        // 주문 금액 = 주문상품 합계, 회원별 합계 = 취소되지 않은 주문 금액 합계
+        assertEquals(count("select sum(oi.orderPrice * oi.count) from OrderItem oi"),
+                count("select sum(o.totalPrice) from Order o"));
+        assertEquals(count("select sum(o.totalPrice) from Order o where o.status = jpabook.jpashop.domain.item.OrderStatus.ORDER"),
+                count("select sum(s.totalSpent) from MemberSpend s"));
+        // Book/Album/Movie 가 모두 있음
+        assertEquals(3, em.createQuery("select distinct type(i) from Item i").getResultList().size());
+        // InitDB 샘플 데이터는 넣지 않음
+        assertTrue(em.createQuery("select m from Member m where m.name = 'userA'", Member.class).getResultList().isEmpty());
+    }
+
+    @Test
+    public void 인기상품에_주문이_몰림() {
+        List<Long> perItem = em.createQuery("select count(oi) from OrderItem oi group by oi.item order by count(oi) desc",
+                Long.class).getResultList();
+
+        long top = perItem.get(0);
+        long median = perItem.get(perItem.size() / 2);
+        assertTrue(top > median * 20, "top=" + top + ", median=" + median);
+    }
+
+    @Test
+    public void 생성한_데이터로_JPA_저장_조회() {
+        // 카테고리 경로가 Category 의 규칙(상위 경로 + 상위 id + "/")과 같음
+        List<Object[]> paths = em.createQuery("select c.path, p.path, p.id from Category c join c.parent p",
+                Object[].class).getResultList();
+        assertFalse(paths.isEmpty());
+        for (Object[] row : paths) {
+            assertEquals(row[1] + String.valueOf(row[2]) + "/", row[0]);
+        }
+
+        // 시퀀스가 생성한 id 다음으로 옮겨져서 새 회원 id 가 겹치지 않음
+        Long maxId = em.createQuery("select max(oi.id) from OrderItem oi", Long.class).getSingleResult();
+        Long memberId = transactionTemplate.execute(status -> {
+            Member member = new Member();
+            member.setName("datagen-" + System.nanoTime());
+            em.persist(member);
+            return member.getId();
+        });
+        assertTrue(memberId > maxId);
+        transactionTemplate.executeWithoutResult(status -> em.remove(em.find(Member.class, memberId)));
+    }
+
+    @Test
+    public void 같은_seed_면_같은_데이터() throws Exception {
+        //given
+        List<String> members = snapshot("select m.id, m.name, m.address.city, m.address.zipcode from Member m order by m.id");
+        List<String> orders = snapshot("select o.id, o.member.id, o.orderDate, o.status, o.delivery.status from Order o order by o.id");
+        List<String> orderItems = snapshot("select oi.id, oi.order.id, oi.item.id, oi.orderPrice, oi.count from OrderItem oi order by oi.id");
+
+        //when
+        transactionTemplate.executeWithoutResult(status -> {
+            for (String table : new String[]{"category_item", "order_item", "orders", "delivery", "member_spend", "member", "category", "item"}) {
+                em.createNativeQuery("delete from " + table).executeUpdate();
+            }
+        });
+        dataGenerator.generate();
+
+        //then
+        assertEquals(members, snapshot("select m.id, m.name, m.address.city, m.address.zipcode from Member m order by m.id"));
+        assertEquals(orders, snapshot("select o.id, o.member.id, o.orderDate, o.status, o.delivery.status from Order o order by o.id"));
+        assertEquals(orderItems, snapshot("select oi.id, oi.order.id, oi.item.id, oi.orderPrice, oi.count from OrderItem oi order by oi.id"));
+    }
+
+    private long count(String jpql) {
+        return em.createQuery(jpql, Long.class).getSingleResult();
+    }
+
+    private List<String> snapshot(String jpql) {
+        return em.createQuery(jpql, Object[].class).getResultList().stream()
+                .map(Arrays::toString)
+                .collect(toList());
+    }
+}
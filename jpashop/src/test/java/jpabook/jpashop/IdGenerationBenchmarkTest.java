@@ -0,0 +1,100 @@
+package jpabook.jpashop;
+
+import jpabook.jpashop.domain.item.*;
+import jpabook.jpashop.monitoring.SqlStatementStats;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+
+/**
+ * InitDB 와 같은 형태(회원 1, 상품 2, 주문 1 + 주문상품 2 + 배송 1)의 대량 insert
+ * id 를 건마다 시퀀스에서 받을 때(allocation-size=1) vs 50개씩 미리 받을 때 시간/SQL 문 수 비교
+ * 시퀀스 증가값이 달라지므로 각각 별도 메모리 DB 에서 실행한다. (DB 왕복 비용이 있어야 하므로 TCP 서버를 거침)
+ * -Dbenchmark=true 일 때만 실행
+ * ex) ./gradlew test --tests "*IdGenerationBenchmarkTest" -Dbenchmark=true -Dbenchmark.rounds=5000
+ */
+@SpringBootTest(properties = "spring.jpa.hibernate.ddl-auto=create")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class IdGenerationBenchmarkTest {
+
+    private static final int ROUNDS_PER_TRANSACTION = 100;
+
+    @Nested
+    @TestPropertySource(properties = {
+            "jpashop.id.allocation-size=1",
+            "spring.datasource.url=jdbc:h2:tcp://localhost/mem:id-benchmark-1;DB_CLOSE_DELAY=-1"})
+    class SequencePerRow extends BulkInsert {
+        @Test
+        public void 대량등록() {
+            run(1);
+        }
+    }
+
+    @Nested
+    @TestPropertySource(properties = {
+            "jpashop.id.allocation-size=50",
+            "spring.datasource.url=jdbc:h2:tcp://localhost/mem:id-benchmark-50;DB_CLOSE_DELAY=-1"})
+    class PooledSequence extends BulkInsert {
+        @Test
+        public void 대량등록() {
+            run(50);
+        }
+    }
+
+    abstract static class BulkInsert {
+
+        @Autowired
+        EntityManager em;
+        @Autowired
+        TransactionTemplate transactionTemplate;
+
+        void run(int allocationSize) {
+            int rounds = Integer.getInteger("benchmark.rounds", 2000);
+            insert(ROUNDS_PER_TRANSACTION * 2); // 워밍업
+
+            long statements;
+            long begin = System.nanoTime();
+            try (SqlStatementStats stats = SqlStatementStats.begin()) {
+                insert(rounds);
+                statements = stats.getStatementCount();
+            }
+            long elapsed = System.nanoTime() - begin;
+
+            System.out.printf("allocation-size %d: %d orders in %.0f ms, %d statements (%.2f per order)%n",
+                    allocationSize, rounds, elapsed / 1_000_000.0, statements, (double) statements / rounds);
+        }
+
+        private void insert(int rounds) {
+            for (int done = 0; done < rounds; done += ROUNDS_PER_TRANSACTION) {
+                int count = Math.min(ROUNDS_PER_TRANSACTION, rounds - done);
+                transactionTemplate.executeWithoutResult(status -> {
+                    for (int i = 0; i < count; i++) {
+                        persistOrder();
+                    }
+                });
+            }
+        }
+
+        private void persistOrder() {
+            Member member = TestFixtures.member("bulk");
+            em.persist(member);
+
+            Book book1 = TestFixtures.book("JPA1 BOOK", 10000, 100);
+            em.persist(book1);
+            Book book2 = TestFixtures.book("JPA2 BOOK", 20000, 100);
+            em.persist(book2);
+
+            Delivery delivery = new Delivery();
+            delivery.setAddress(member.getAddress());
+            OrderItem orderItem1 = OrderItem.createOrderItem(book1, 10000, 1);
+            OrderItem orderItem2 = OrderItem.createOrderItem(book2, 20000, 2);
+            em.persist(Order.createOrder(member, delivery, orderItem1, orderItem2));
+        }
+    }
+}
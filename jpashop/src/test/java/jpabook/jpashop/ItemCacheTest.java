@@ -0,0 +1,137 @@
+package jpabook.jpashop;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.monitoring.SqlStatementStats;
+import jpabook.jpashop.repository.ItemRepository;
+import jpabook.jpashop.service.ItemService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 상품 2차 캐시 - 커밋 단위로 확인해야 하므로 @Transactional 을 걸지 않는다.
+ */
+@SpringBootTest(properties = "jpashop.cache.enabled=true")
+public class ItemCacheTest {
+
+    @Autowired
+    TestFixtures fixtures;
+    @Autowired
+    ItemService itemService;
+    @Autowired
+    ItemRepository itemRepository;
+    @Autowired
+    EntityManagerFactory emf;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    public void 상품조회_캐시적중() throws Exception {
+        //given
+        Long itemId = fixtures.createBook("CACHED BOOK", 10000, 10);
+        itemService.findOne(itemId);
+        long hits = itemRegion().getHitCount();
+
+        //when
+        Item item;
+        long statements;
+        try (SqlStatementStats stats = SqlStatementStats.begin()) {
+            item = itemService.findOne(itemId);
+            statements = stats.getStatementCount();
+        }
+
+        //then
+        assertEquals("CACHED BOOK", item.getName());
+        assertEquals(hits + 1, itemRegion().getHitCount());
+        assertEquals(0, statements, "캐시에서 읽으면 쿼리가 나가지 않는다");
+    }
+
+    @Test
+    public void 재고차감_해당상품만_캐시제거() throws Exception {
+        //given
+        Long soldId = fixtures.createBook("SOLD BOOK", 10000, 10);
+        Long otherId = fixtures.createBook("OTHER BOOK", 10000, 10);
+        itemService.findOne(soldId);
+        itemService.findOne(otherId);
+
+        //when
+        transactionTemplate.execute(status -> itemRepository.decreaseStock(soldId, 3));
+
+        //then
+        long hits = itemRegion().getHitCount();
+        assertEquals(7, itemService.findOne(soldId).getStockQuantity());
+        assertEquals(10, itemService.findOne(otherId).getStockQuantity());
+        assertEquals(hits + 1, itemRegion().getHitCount(), "다른 상품은 캐시에 남아 있어야 한다");
+    }
+
+    @Test
+    public void 재고차감_롤백() throws Exception {
+        //given
+        Long itemId = fixtures.createBook("ROLLBACK BOOK", 10000, 10);
+        itemService.findOne(itemId);
+
+        //when
+        transactionTemplate.executeWithoutResult(status -> {
+            itemRepository.decreaseStock(itemId, 3);
+            status.setRollbackOnly();
+        });
+
+        //then
+        assertEquals(10, itemService.findOne(itemId).getStockQuantity());
+    }
+
+    @Test
+    public void 상품수정_캐시반영() throws Exception {
+        //given
+        Long itemId = fixtures.createBook("OLD NAME", 10000, 10);
+        itemService.findOne(itemId);
+
+        //when
+        itemService.updateItem(itemId, "NEW NAME", 20000, 5);
+
+        //then
+        Item item = itemService.findOne(itemId);
+        assertEquals("NEW NAME", item.getName());
+        assertEquals(5, item.getStockQuantity());
+    }
+
+    @Test
+    public void 상품등록_상품목록_쿼리캐시무효화() throws Exception {
+        //given
+        itemService.findItems();
+        long statements;
+        try (SqlStatementStats stats = SqlStatementStats.begin()) {
+            itemService.findItems();
+            statements = stats.getStatementCount();
+        }
+        assertEquals(0, statements, "두번째 목록 조회는 쿼리 캐시 + 엔티티 캐시");
+
+        //when
+        Long itemId = fixtures.createBook("NEW BOOK", 10000, 10);
+
+        //then
+        List<Item> items = itemService.findItems();
+        assertTrue(items.stream().anyMatch(i -> i.getId().equals(itemId)));
+    }
+
+    @Test
+    public void 캐시지표_등록() {
+        assertNotNull(meterRegistry.find("cache.evictions").tag("cache", "item").functionCounter());
+        assertNotNull(meterRegistry.find("cache.gets").tag("cache", "item").tag("result", "hit").functionCounter());
+    }
+
+    private CacheRegionStatistics itemRegion() {
+        return emf.unwrap(SessionFactory.class).getStatistics().getDomainDataRegionStatistics("item");
+    }
+}
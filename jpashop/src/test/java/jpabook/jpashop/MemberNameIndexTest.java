@@ -0,0 +1,169 @@
+package jpabook.jpashop;
+
+import jpabook.jpashop.domain.item.Order;
+import jpabook.jpashop.domain.item.OrderStatus;
+import jpabook.jpashop.monitoring.SqlStatementStats;
+import jpabook.jpashop.repository.MemberNameIndex;
+import jpabook.jpashop.repository.OrderRepository;
+import jpabook.jpashop.repository.OrderSearch;
+import jpabook.jpashop.service.MemberService;
+import jpabook.jpashop.service.OrderService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 회원 이름 인덱스 - 커밋된 가입/이름 변경이 반영되고, 주문 검색 결과가 like 로만 조회할 때와 같은지
+ * 인덱스는 커밋 후에 반영되므로 트랜잭션 없이 서비스를 호출한다.
+ */
+@SpringBootTest(properties = "jpashop.member-name-index.enabled=true")
+public class MemberNameIndexTest {
+
+    @Autowired
+    MemberNameIndex memberNameIndex;
+    @Autowired
+    MemberService memberService;
+    @Autowired
+    TestFixtures fixtures;
+    @Autowired
+    OrderService orderService;
+    @Autowired
+    OrderRepository orderRepository;
+    @Autowired
+    DataSource dataSource;
+
+    @BeforeEach
+    public void waitUntilLoaded() throws Exception {
+        for (int i = 0; i < 300 && !memberNameIndex.isReady(); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(memberNameIndex.isReady());
+    }
+
+    @Test
+    public void 엔티티를_거치지_않은_회원은_invalidate_후에_찾는다() throws Exception {
+        //given - datagen 처럼 JDBC 로 회원을 넣으면 커밋 후 이벤트가 없다
+        String name = "직접추가" + System.nanoTime();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        Long memberId = jdbcTemplate.queryForObject("select next value for jpashop_seq", Long.class);
+        jdbcTemplate.update("insert into member (member_id, name, city, street, zipcode) values (?, ?, '서울', '강가', '01234')",
+                memberId, name);
+        Long orderId = orderService.order(memberId, fixtures.createBook(10), 1);
+        OrderSearch search = new OrderSearch();
+        search.setMemberName(name);
+        assertEquals(Optional.of(List.of()), memberNameIndex.findIdsLike("%" + name + "%"), "인덱스는 모른다");
+
+        //when
+        memberNameIndex.invalidate();
+        List<Long> whileLoading = orderIds(orderRepository.findAllByCriteria(search));
+        waitUntilLoaded();
+
+        //then
+        assertEquals(List.of(orderId), whileLoading, "다시 읽는 동안에는 like 로");
+        assertEquals(Optional.of(List.of(memberId)), memberNameIndex.findIdsLike("%" + name + "%"));
+        assertEquals(List.of(orderId), orderIds(orderRepository.findAllByCriteria(search)));
+    }
+
+    @Test
+    public void 가입_이름변경_반영() throws Exception {
+        //given
+        String name = "색인" + System.nanoTime();
+        Long memberId = join(name + "-kim");
+
+        //when
+        Optional<List<Long>> joined = memberNameIndex.findIdsLike("%" + name.substring(2) + "%");
+        memberService.update(memberId, name + "-lee");
+
+        //then
+        assertEquals(Optional.of(List.of(memberId)), joined);
+        assertEquals(Optional.of(List.of()), memberNameIndex.findIdsLike(name + "-kim"), "이전 이름으로는 찾을 수 없다");
+        assertEquals(Optional.of(List.of(memberId)), memberNameIndex.findIdsLike(name + "-l%"));
+        assertEquals(Optional.of(List.of(memberId)), memberNameIndex.findIdsLike("%" + name.substring(2) + "-lee"));
+    }
+
+    @Test
+    public void 해석할수없는_패턴은_like로_조회() throws Exception {
+        assertEquals(Optional.empty(), memberNameIndex.findIdsLike("a%b"));
+        assertEquals(Optional.empty(), memberNameIndex.findIdsLike("user_"));
+        assertEquals(Optional.empty(), memberNameIndex.findIdsLike("%ab%"), "세 글자 미만 포함 검색");
+        assertEquals(Optional.empty(), memberNameIndex.findIdsLike("%"));
+    }
+
+    @Test
+    public void 주문검색_결과는_like와_같다() throws Exception {
+        //given 트라이그램은 모두 있지만 순서가 다른 이름도 섞어둔다
+        String name = "주문검색" + System.nanoTime();
+        Long abc = join(name + "abcd");
+        Long bcd = join(name + "bcdabc");
+        Long other = join(name + "xyz");
+        Long itemId = fixtures.createBook(10);
+        Long order1 = orderService.order(abc, itemId, 1);
+        Long order2 = orderService.order(bcd, itemId, 1);
+        orderService.order(other, itemId, 1);
+
+        //when
+        OrderSearch contains = new OrderSearch();
+        contains.setMemberName("abcd");
+        OrderSearch exact = new OrderSearch();
+        exact.setMemberName(name + "bcdabc");
+        exact.setOrderStatus(OrderStatus.ORDER);
+        OrderSearch none = new OrderSearch();
+        none.setMemberName("없는회원" + System.nanoTime());
+
+        //then
+        List<Long> containsResult = orderIds(orderRepository.findAllByCriteria(contains));
+        assertTrue(containsResult.contains(order1));
+        assertFalse(containsResult.contains(order2), "abcd 가 들어있지 않은 이름은 like 가 걸러낸다");
+        assertEquals(List.of(order2), orderIds(orderService.findOrders(exact)));
+        assertTrue(orderRepository.findAllByCriteria(none).isEmpty());
+    }
+
+    @Test
+    public void 후보_회원수가_달라도_SQL은_몇가지뿐() throws Exception {
+        //given - 이름에 "#k" 가 들어간 회원이 k 명 (k = 1..9)
+        String name = "후보수" + System.nanoTime();
+        for (int k = 1; k <= 9; k++) {
+            for (int i = 0; i < k; i++) {
+                join(name + "#" + k + "-" + i);
+            }
+        }
+
+        //when
+        Set<Integer> candidateCounts = new HashSet<>();
+        int distinct;
+        try (SqlStatementStats stats = SqlStatementStats.begin()) {
+            for (int m = 1; m <= 9; m++) {
+                OrderSearch search = new OrderSearch();
+                search.setMemberName(name + "#" + m);
+                int candidates = memberNameIndex.findIdsLike("%" + search.getMemberName() + "%").orElseThrow().size();
+                candidateCounts.add(candidates);
+                orderRepository.findAllByCriteria(search);
+            }
+            distinct = stats.getDistinctStatementCount();
+        }
+
+        //then - in 절 바인딩 수를 1, 2, 4, 8, 16 으로 채우므로 후보 수 9가지에 SQL 은 5가지
+        assertEquals(9, candidateCounts.size());
+        assertEquals(5, distinct);
+    }
+
+    private Long join(String name) {
+        return memberService.join(TestFixtures.member(name));
+    }
+
+    private List<Long> orderIds(List<Order> orders) {
+        return orders.stream().map(Order::getId).collect(toList());
+    }
+}
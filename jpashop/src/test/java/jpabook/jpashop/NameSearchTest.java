@@ -0,0 +1,91 @@
+package jpabook.jpashop;
+
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Member;
+import jpabook.jpashop.repository.NameOptionDto;
+import jpabook.jpashop.service.ItemService;
+import jpabook.jpashop.service.MemberService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Transactional
+public class NameSearchTest {
+
+    @Autowired
+    MemberService memberService;
+    @Autowired
+    ItemService itemService;
+    @Autowired
+    EntityManager em;
+
+    @Test
+    public void 회원이름_앞부분검색() throws Exception {
+        //given
+        String prefix = "검색" + System.nanoTime();
+        createMember(prefix + "-abd");
+        createMember(prefix + "-abc");
+        createMember(prefix + "-x");
+        createMember("다른" + prefix + "-abc");
+
+        //when
+        List<NameOptionDto> result = memberService.searchMembers(prefix + "-ab", 20);
+
+        //then 이름순, 앞부분이 같은 회원만
+        assertEquals(List.of(prefix + "-abc", prefix + "-abd"), names(result));
+        assertEquals(1, memberService.searchMembers(prefix, 1).size(), "limit 건까지만");
+    }
+
+    @Test
+    public void 검색어_와일드카드_문자() throws Exception {
+        //given
+        String prefix = "검색" + System.nanoTime();
+        createMember(prefix + "%off");
+        createMember(prefix + "_1");
+        createMember(prefix + "-off");
+
+        //when
+        List<NameOptionDto> percent = memberService.searchMembers(prefix + "%", 20);
+        List<NameOptionDto> underscore = memberService.searchMembers(prefix + "_", 20);
+
+        //then %, _ 는 글자 그대로 검색
+        assertEquals(List.of(prefix + "%off"), names(percent));
+        assertEquals(List.of(prefix + "_1"), names(underscore));
+    }
+
+    @Test
+    public void 상품이름_앞부분검색() throws Exception {
+        //given
+        String prefix = "BOOK" + System.nanoTime();
+        Book book = new Book();
+        book.setName(prefix + " JPA");
+        book.setPrice(10000);
+        book.setStockQuantity(10);
+        em.persist(book);
+
+        //when
+        List<NameOptionDto> result = itemService.searchItems(prefix, 20);
+
+        //then
+        assertEquals(1, result.size());
+        assertEquals(book.getId(), result.get(0).getId());
+    }
+
+    private void createMember(String name) {
+        Member member = new Member();
+        member.setName(name);
+        em.persist(member);
+    }
+
+    private List<String> names(List<NameOptionDto> options) {
+        return options.stream().map(NameOptionDto::getName).collect(toList());
+    }
+}
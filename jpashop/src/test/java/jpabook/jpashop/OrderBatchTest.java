@@ -0,0 +1,131 @@
+package jpabook.jpashop;
+
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.exception.NotEnoughStockException;
+import jpabook.jpashop.monitoring.SqlStatementStats;
+import jpabook.jpashop.service.OrderLine;
+import jpabook.jpashop.service.OrderService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 일괄 주문 - 커밋(배치 insert)까지 확인해야 하므로 @Transactional 을 걸지 않는다.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+public class OrderBatchTest {
+
+    @Autowired
+    OrderService orderService;
+    @Autowired
+    MockMvc mockMvc;
+    @Autowired
+    TestFixtures fixtures;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Test
+    public void 일괄주문() throws Exception {
+        //given
+        Long memberA = fixtures.createMember("일괄주문-");
+        Long memberB = fixtures.createMember("일괄주문-");
+        Long book1 = fixtures.createBook(100);
+        Long book2 = fixtures.createBook(100);
+        List<OrderLine> lines = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            lines.add(new OrderLine(i % 2 == 0 ? memberA : memberB, i % 5 == 0 ? book2 : book1, 1));
+        }
+
+        //when
+        List<Long> ids;
+        long statements;
+        try (SqlStatementStats stats = SqlStatementStats.begin()) {
+            ids = orderService.orderBatch(lines);
+            statements = stats.getStatementCount();
+        }
+
+        //then
+        assertEquals(50, ids.size());
+        assertEquals(60, stock(book1), "book1 40개 주문");
+        assertEquals(90, stock(book2), "book2 10개 주문");
+        // 주문마다 insert 하면 주문/주문상품/배송 3문장 이상. 배치로 묶이면 50건에 16문장 정도
+        double perOrder = (double) statements / lines.size();
+        assertTrue(perOrder < 0.5, () -> "주문당 insert 가 배치로 묶여야 한다: 주문당 " + perOrder + "문장");
+    }
+
+    @Test
+    public void 일괄주문_재고부족_전체실패() throws Exception {
+        //given
+        Long member = fixtures.createMember("일괄주문-");
+        Long enough = fixtures.createBook(10);
+        Long short_ = fixtures.createBook(1);
+        List<OrderLine> lines = List.of(
+                new OrderLine(member, enough, 3),
+                new OrderLine(member, short_, 2));
+
+        //when
+        assertThrows(NotEnoughStockException.class, () -> orderService.orderBatch(lines));
+
+        //then
+        assertEquals(10, stock(enough), "다른 상품 재고 차감도 롤백되어야 한다");
+        assertEquals(1, stock(short_));
+    }
+
+    @Test
+    public void 일괄주문_없는상품_전체실패() throws Exception {
+        //given
+        Long member = fixtures.createMember("일괄주문-");
+        Long book = fixtures.createBook(10);
+        List<OrderLine> lines = List.of(
+                new OrderLine(member, book, 3),
+                new OrderLine(member, Long.MAX_VALUE, 1));
+
+        //when 재고 부족이 아니라 없는 상품
+        assertThrows(IllegalArgumentException.class, () -> orderService.orderBatch(lines));
+
+        //then
+        assertEquals(10, stock(book), "다른 상품 재고 차감도 롤백되어야 한다");
+    }
+
+    @Test
+    public void 수량0이하_주문거절() throws Exception {
+        //given
+        Long member = fixtures.createMember("일괄주문-");
+        Long book = fixtures.createBook(10);
+        List<OrderLine> lines = List.of(
+                new OrderLine(member, book, 3),
+                new OrderLine(member, book, -3));
+
+        //when
+        assertThrows(IllegalArgumentException.class, () -> orderService.order(member, book, 0));
+        assertThrows(IllegalArgumentException.class, () -> orderService.orderBatch(lines));
+        mockMvc.perform(post("/api/v1/orders").contentType(MediaType.APPLICATION_JSON)
+                        .content(String.format("{\"memberId\": %d, \"itemId\": %d, \"count\": 0}", member, book)))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/api/v1/orders/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content(String.format("{\"orders\": [{\"memberId\": %d, \"itemId\": %d, \"count\": -1}]}", member, book)))
+                .andExpect(status().isBadRequest());
+
+        //then
+        assertEquals(10, stock(book), "재고가 늘어나면 안된다");
+    }
+
+    private int stock(Long itemId) {
+        return transactionTemplate.execute(status -> em.find(Item.class, itemId).getStockQuantity());
+    }
+}
@@ -0,0 +1,107 @@
+package jpabook.jpashop;
+
+import jpabook.jpashop.domain.item.*;
+import jpabook.jpashop.service.OrderLine;
+import jpabook.jpashop.service.OrderService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 주문 N건 취소 시간
+ * - 한 건씩 취소 (cancelOrder 를 주문마다 호출)
+ * - 일괄 취소 (cancelOrders - 벌크 update + 상품별 재고 update)
+ * 주문을 많이 넣으므로 별도 메모리 DB 에서 -Dbenchmark=true 일 때만 실행
+ * ex) ./gradlew test --tests "*OrderBulkCancelBenchmarkTest" -Dbenchmark=true -Dbenchmark.cancel=100,1000,10000
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create",
+        "spring.datasource.url=jdbc:h2:tcp://localhost/mem:order-cancel-benchmark;DB_CLOSE_DELAY=-1"})
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class OrderBulkCancelBenchmarkTest {
+
+    private static final int ITEMS = 20;
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    OrderService orderService;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Test
+    public void 취소건수별_취소시간() throws Exception {
+        int[] sizes = Arrays.stream(System.getProperty("benchmark.cancel", "100,1000,10000").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        List<Long> members = new ArrayList<>();
+        List<Long> items = new ArrayList<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < ITEMS; i++) {
+                Member member = new Member();
+                member.setName("cancel-bench-" + i);
+                member.setAddress(new Address("서울", "1", "1111"));
+                em.persist(member);
+                members.add(member.getId());
+
+                Book book = new Book();
+                book.setName("CANCEL BENCH BOOK " + i);
+                book.setPrice(10000);
+                book.setStockQuantity(Integer.MAX_VALUE / 2);
+                em.persist(book);
+                items.add(book.getId());
+            }
+        });
+
+        // 워밍업
+        cancelOneByOne(place(100, members, items));
+        orderService.cancelOrders(place(100, members, items));
+
+        for (int size : sizes) {
+            List<Long> single = place(size, members, items);
+            long start = System.nanoTime();
+            cancelOneByOne(single);
+            long oneByOne = System.nanoTime() - start;
+
+            List<Long> bulk = place(size, members, items);
+            start = System.nanoTime();
+            orderService.cancelOrders(bulk);
+            long bulkElapsed = System.nanoTime() - start;
+
+            assertEquals(0L, (long) transactionTemplate.execute(status ->
+                    em.createQuery("select count(o) from Order o join o.member m" +
+                                    " where m.name like 'cancel-bench-%' and o.status = :status", Long.class)
+                            .setParameter("status", OrderStatus.ORDER)
+                            .getSingleResult()));
+            System.out.printf("cancel %6d orders: one by one %8.1f ms, bulk %7.1f ms%n",
+                    size, oneByOne / 1_000_000.0, bulkElapsed / 1_000_000.0);
+        }
+    }
+
+    private void cancelOneByOne(List<Long> orderIds) {
+        for (Long orderId : orderIds) {
+            orderService.cancelOrder(orderId);
+        }
+    }
+
+    private List<Long> place(int size, List<Long> members, List<Long> items) {
+        List<Long> ids = new ArrayList<>(size);
+        int chunk = 1000;
+        for (int done = 0; done < size; done += chunk) {
+            List<OrderLine> lines = new ArrayList<>();
+            for (int i = done; i < Math.min(done + chunk, size); i++) {
+                lines.add(new OrderLine(members.get(i % ITEMS), items.get(i * 7 % ITEMS), 1));
+            }
+            ids.addAll(orderService.orderBatch(lines));
+        }
+        return ids;
+    }
+}
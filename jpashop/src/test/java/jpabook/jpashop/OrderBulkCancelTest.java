@@ -0,0 +1,148 @@
+package jpabook.jpashop;
+
+import jpabook.jpashop.domain.item.*;
+import jpabook.jpashop.monitoring.SqlStatementStats;
+import jpabook.jpashop.repository.OrderSearch;
+import jpabook.jpashop.service.OrderLine;
+import jpabook.jpashop.service.OrderService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 일괄 취소 - 회원별 주문 금액 합계는 커밋 직전에 반영되므로 @Transactional 을 걸지 않는다.
+ */
+@SpringBootTest
+public class OrderBulkCancelTest {
+
+    @Autowired
+    OrderService orderService;
+    @Autowired
+    TestFixtures fixtures;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Test
+    public void 일괄취소() throws Exception {
+        //given
+        Long member = fixtures.createMember("일괄취소-");
+        Long book1 = fixtures.createBook(100);
+        Long book2 = fixtures.createBook(100);
+        List<OrderLine> lines = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            lines.add(new OrderLine(member, i % 4 == 0 ? book2 : book1, 2));
+        }
+        List<Long> ids = orderService.orderBatch(lines);
+
+        //when
+        List<Long> cancelled;
+        long statements;
+        try (SqlStatementStats stats = SqlStatementStats.begin()) {
+            cancelled = orderService.cancelOrders(ids);
+            statements = stats.getStatementCount();
+        }
+
+        //then
+        assertEquals(40, cancelled.size());
+        assertEquals(100, stock(book1), "book1 60개 복구");
+        assertEquals(100, stock(book2), "book2 20개 복구");
+        assertEquals(0, countByStatus(ids, OrderStatus.ORDER));
+        MemberSpend spend = transactionTemplate.execute(status -> em.find(MemberSpend.class, member));
+        assertEquals(0, spend.getTotalSpent());
+        assertEquals(0, spend.getOrderCount());
+        assertTrue(statements < 10, () -> "주문 수와 관계없이 쿼리 수가 일정해야 한다: " + statements + "문장");
+    }
+
+    @Test
+    public void 배송완료된_주문이_있으면_전체실패() throws Exception {
+        //given
+        Long member = fixtures.createMember("일괄취소-");
+        Long book = fixtures.createBook(10);
+        List<Long> ids = orderService.orderBatch(List.of(
+                new OrderLine(member, book, 1),
+                new OrderLine(member, book, 1),
+                new OrderLine(member, book, 1)));
+        transactionTemplate.executeWithoutResult(status ->
+                em.find(Order.class, ids.get(1)).getDelivery().setStatus(DeliveryStatus.COMP));
+
+        //when
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> orderService.cancelOrders(ids));
+
+        //then
+        assertTrue(e.getMessage().contains(String.valueOf(ids.get(1))), "배송완료된 주문 id 를 알려준다");
+        assertEquals(3, countByStatus(ids, OrderStatus.ORDER));
+        assertEquals(7, stock(book));
+        assertThrows(IllegalStateException.class, () -> orderService.cancelOrders(List.of(ids.get(0), -1L)),
+                "없는 주문 id 가 섞여 있어도 전체 실패");
+        assertEquals(3, countByStatus(ids, OrderStatus.ORDER));
+    }
+
+    @Test
+    public void 검색조건으로_일괄취소() throws Exception {
+        //given
+        String prefix = "리콜-" + System.nanoTime() + "-";
+        Long target = fixtures.createMember(prefix);
+        Long other = fixtures.createMember("일괄취소-");
+        Long book = fixtures.createBook(100);
+        List<Long> targetIds = orderService.orderBatch(List.of(
+                new OrderLine(target, book, 1),
+                new OrderLine(target, book, 2)));
+        orderService.cancelOrder(orderService.orderBatch(List.of(new OrderLine(target, book, 3))).get(0));
+        List<Long> otherIds = orderService.orderBatch(List.of(new OrderLine(other, book, 4)));
+
+        //when
+        OrderSearch orderSearch = new OrderSearch();
+        orderSearch.setMemberName(prefix);
+        List<Long> cancelled = orderService.cancelOrders(orderSearch);
+
+        //then
+        assertEquals(targetIds, cancelled, "이미 취소된 주문은 제외");
+        assertEquals(96, stock(book));
+        assertEquals(1, countByStatus(otherIds, OrderStatus.ORDER));
+    }
+
+    @Test
+    public void 일괄취소후_영속성컨텍스트도_맞춘다() throws Exception {
+        //given
+        Long member = fixtures.createMember("일괄취소-");
+        Long book = fixtures.createBook(10);
+        List<Long> ids = orderService.orderBatch(List.of(
+                new OrderLine(member, book, 2),
+                new OrderLine(member, book, 3)));
+
+        //when
+        transactionTemplate.executeWithoutResult(status -> {
+            Order loaded = em.find(Order.class, ids.get(0));
+            Item item = em.find(Item.class, book);
+            assertEquals(5, item.getStockQuantity());
+
+            orderService.cancelOrders(ids);
+
+            //then
+            assertEquals(OrderStatus.CANCEL, loaded.getStatus());
+            assertEquals(10, item.getStockQuantity());
+        });
+        assertEquals(10, stock(book));
+    }
+
+    private long countByStatus(List<Long> ids, OrderStatus orderStatus) {
+        return transactionTemplate.execute(status ->
+                em.createQuery("select count(o) from Order o where o.id in :ids and o.status = :status", Long.class)
+                        .setParameter("ids", ids)
+                        .setParameter("status", orderStatus)
+                        .getSingleResult());
+    }
+
+    private int stock(Long itemId) {
+        return transactionTemplate.execute(status -> em.find(Item.class, itemId).getStockQuantity());
+    }
+}
@@ -0,0 +1,127 @@
+package jpabook.jpashop;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jpabook.jpashop.monitoring.SqlStatementStats;
+import jpabook.jpashop.repository.order.query.OrderQueryRepository;
+import jpabook.jpashop.service.OrderExportService;
+import jpabook.jpashop.service.OrderService;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * V6 NDJSON 스트리밍 (/api/v6/orders/stream, OrderExportService)
+ * 커서가 한 번에 3 row 씩 가져오게 해서 주문상품 2건짜리 주문(InitDB)이 가져오는 묶음 경계에 걸치게 한다.
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create",
+        "spring.datasource.url=jdbc:h2:tcp://localhost/mem:order-export;DB_CLOSE_DELAY=-1",
+        "jpashop.export.fetch-size=3"})
+@AutoConfigureMockMvc
+public class OrderExportTest {
+
+    @Autowired
+    MockMvc mockMvc;
+    @Autowired
+    ObjectMapper objectMapper;
+    @Autowired
+    OrderExportService orderExportService;
+    @SpyBean
+    OrderQueryRepository orderQueryRepository;
+    @Autowired
+    TestFixtures fixtures;
+    @Autowired
+    OrderService orderService;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    public void orders() {
+        Long memberId = fixtures.createMember("export-");
+        Long bookId = fixtures.createBook(100);
+        for (int i = 0; i < 5; i++) {
+            orderService.order(memberId, bookId, i + 1);
+        }
+    }
+
+    @Test
+    public void 한줄에_주문하나_V6와_같은_순서와_내용() throws Exception {
+        //given
+        JsonNode expected = objectMapper.readTree(mockMvc.perform(get("/api/v6/orders"))
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8));
+
+        //when
+        MockHttpServletResponse response = mockMvc.perform(get("/api/v6/orders/stream")).andReturn().getResponse();
+
+        //then
+        assertEquals(200, response.getStatus());
+        assertEquals("application/x-ndjson;charset=UTF-8", response.getContentType());
+        String body = response.getContentAsString(StandardCharsets.UTF_8);
+        assertTrue(body.endsWith("\n"), "마지막 주문도 줄바꿈으로 끝남");
+        String[] lines = body.split("\n");
+        assertEquals(expected.size(), lines.length, "한 줄에 주문 하나");
+
+        long previousId = 0;
+        for (int i = 0; i < lines.length; i++) {
+            JsonNode order = objectMapper.readTree(lines[i]);
+            assertEquals(expected.get(i), order, "묶음 경계에 걸친 주문도 주문상품이 모두 한 줄에");
+            assertTrue(order.get("orderId").asLong() > previousId, "order id 순서");
+            previousId = order.get("orderId").asLong();
+        }
+    }
+
+    @Test
+    public void 내보내는_동안_영속성컨텍스트에_엔티티가_쌓이지_않고_커서_하나로() throws Exception {
+        //given - 커서에서 row 를 하나 꺼낼 때마다 현재 영속성 컨텍스트의 엔티티 수를 기록
+        List<Integer> managed = new ArrayList<>();
+        doAnswer(invocation -> ((Stream<?>) invocation.callRealMethod()).peek(row -> managed.add(managedEntities())))
+                .when(orderQueryRepository).streamAllByDto_flat(anyInt());
+
+        //when
+        long statements;
+        try (SqlStatementStats stats = SqlStatementStats.begin()) {
+            transactionTemplate.executeWithoutResult(status -> {
+                try {
+                    orderExportService.exportOrders(OutputStream.nullOutputStream());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                managed.add(managedEntities());
+            });
+            statements = stats.getStatementCount();
+        }
+
+        //then
+        assertEquals(1, statements, "묶음마다 다시 조회하지 않고 커서 하나로");
+        assertTrue(managed.size() > 9, "InitDB 4 row + 주문 5 row + 끝난 뒤");
+        assertTrue(managed.stream().allMatch(count -> count == 0), "DTO 로 바로 조회 - 관리 엔티티 없음: " + managed);
+    }
+
+    private int managedEntities() {
+        return em.unwrap(SessionImplementor.class).getPersistenceContext().getNumberOfManagedEntities();
+    }
+}
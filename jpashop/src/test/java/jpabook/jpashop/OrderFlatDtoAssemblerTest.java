@@ -0,0 +1,48 @@
+package jpabook.jpashop;
+
+import jpabook.jpashop.domain.item.Address;
+import jpabook.jpashop.domain.item.OrderStatus;
+import jpabook.jpashop.repository.order.query.OrderFlatDto;
+import jpabook.jpashop.repository.order.query.OrderFlatDtoAssembler;
+import jpabook.jpashop.repository.order.query.OrderQueryDto;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrderFlatDtoAssemblerTest {
+
+    @Test
+    public void 정렬된_플랫데이터_조립() throws Exception {
+        //given
+        List<OrderFlatDto> flats = List.of(
+                flat(3L, "JPA1 BOOK"), flat(3L, "JPA2 BOOK"),
+                flat(1L, "SPRING1 BOOK"),
+                flat(7L, "SPRING2 BOOK"), flat(7L, "JPA1 BOOK"), flat(7L, "JPA2 BOOK"));
+
+        //when
+        List<OrderQueryDto> result = OrderFlatDtoAssembler.assemble(flats);
+
+        //then 조회 순서 유지, 주문별 주문상품 묶음
+        assertEquals(3, result.size());
+        assertEquals(3L, result.get(0).getOrderId());
+        assertEquals(1L, result.get(1).getOrderId());
+        assertEquals(7L, result.get(2).getOrderId());
+        assertEquals(2, result.get(0).getOrderItems().size());
+        assertEquals(1, result.get(1).getOrderItems().size());
+        assertEquals(3, result.get(2).getOrderItems().size());
+        assertEquals("SPRING2 BOOK", result.get(2).getOrderItems().get(0).getItemName());
+    }
+
+    @Test
+    public void 빈_결과() throws Exception {
+        assertTrue(OrderFlatDtoAssembler.assemble(List.of()).isEmpty());
+    }
+
+    private OrderFlatDto flat(Long orderId, String itemName) {
+        return new OrderFlatDto(orderId, "회원" + orderId, LocalDateTime.now(), OrderStatus.ORDER,
+                new Address("서울", "강가", "01234"), itemName, 10000, 1);
+    }
+}
@@ -0,0 +1,103 @@
+package jpabook.jpashop;
+
+import com.sun.management.ThreadMXBean;
+import jpabook.jpashop.domain.item.Address;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Member;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * 주문 화면(/order) 응답 시간, 요청당 힙 할당량, 응답 크기 + 회원/상품 검색 API
+ * 회원/상품을 많이 넣기 때문에 -Dbenchmark=true 일 때만 실행
+ * ex) ./gradlew test --tests "*OrderFormBenchmarkTest" -Dbenchmark=true -Dbenchmark.members=50000
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class OrderFormBenchmarkTest {
+
+    private static final int RUNS = 20;
+
+    @Autowired
+    MockMvc mockMvc;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Test
+    public void 주문화면_응답시간_할당량() throws Exception {
+        seed("select count(m) from Member m where m.name like 'picker-%'", Integer.getInteger("benchmark.members", 50000), true);
+        seed("select count(i) from Item i where i.name like 'picker-%'", Integer.getInteger("benchmark.items", 5000), false);
+
+        measure("GET /order", "/order");
+        measure("GET /api/v1/members/search", "/api/v1/members/search?q=picker-12");
+        measure("GET /api/v1/items/search", "/api/v1/items/search?q=picker-12");
+    }
+
+    private void measure(String label, String url) throws Exception {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long[] elapsed = new long[RUNS];
+        long[] allocated = new long[RUNS];
+        int size = 0;
+        for (int i = 0; i < RUNS + 5; i++) {
+            long bytes = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            MockHttpServletResponse response = mockMvc.perform(get(url)).andReturn().getResponse();
+            long took = System.nanoTime() - start;
+            long allocatedBytes = threads.getThreadAllocatedBytes(threadId) - bytes;
+            assertEquals(200, response.getStatus(), url);
+            size = response.getContentAsByteArray().length;
+            if (i >= 5) { // 앞의 5번은 워밍업
+                elapsed[i - 5] = took;
+                allocated[i - 5] = allocatedBytes;
+            }
+        }
+        Arrays.sort(elapsed);
+        Arrays.sort(allocated);
+        System.out.printf("%s: %.2f ms, %.1f MB allocated per request, %,d bytes response%n",
+                label, elapsed[RUNS / 2] / 1_000_000.0, allocated[RUNS / 2] / 1024.0 / 1024.0, size);
+    }
+
+    private void seed(String countQuery, int required, boolean member) {
+        Long count = transactionTemplate.execute(status -> em.createQuery(countQuery, Long.class).getSingleResult());
+        int chunk = 1000;
+        for (int done = count.intValue(); done < required; done += chunk) {
+            int from = done;
+            int size = Math.min(chunk, required - done);
+            transactionTemplate.executeWithoutResult(status -> {
+                for (int i = from; i < from + size; i++) {
+                    if (member) {
+                        Member m = new Member();
+                        m.setName("picker-" + i);
+                        m.setAddress(new Address("서울", "1", "1111"));
+                        em.persist(m);
+                    } else {
+                        Book book = new Book();
+                        book.setName("picker-" + i);
+                        book.setPrice(10000);
+                        book.setStockQuantity(100);
+                        em.persist(book);
+                    }
+                }
+                em.flush();
+                em.clear();
+            });
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package jpabook.jpashop;
+
+import jpabook.jpashop.domain.item.*;
+import jpabook.jpashop.service.OrderService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 주문 1건 처리 시간 - 회원의 주문 이력 크기별
+ * - member.orders 를 로딩하지 않는 경우 (Order.setMember 의 add 는 하이버네이트가 로딩하지 않고 모아둔다)
+ * - member.orders 를 로딩하는 경우 (주문하기 전에 같은 트랜잭션에서 컬렉션을 꺼냄)
+ * 주문을 많이 넣으므로 별도 메모리 DB 에서 -Dbenchmark=true 일 때만 실행
+ * ex) ./gradlew test --tests "*OrderHistoryBenchmarkTest" -Dbenchmark=true -Dbenchmark.history=0,1000,10000,50000
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create",
+        "spring.datasource.url=jdbc:h2:tcp://localhost/mem:order-history-benchmark;DB_CLOSE_DELAY=-1"})
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class OrderHistoryBenchmarkTest {
+
+    private static final int RUNS = 20;
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    OrderService orderService;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Test
+    public void 주문이력_크기별_주문시간() throws Exception {
+        int[] histories = Arrays.stream(System.getProperty("benchmark.history", "0,1000,10000,50000").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        Long itemId = transactionTemplate.execute(status -> {
+            Book book = new Book();
+            book.setName("BENCH BOOK");
+            book.setPrice(10000);
+            book.setStockQuantity(Integer.MAX_VALUE);
+            em.persist(book);
+            return book.getId();
+        });
+
+        for (int history : histories) {
+            Long memberId = seedMember(history, itemId);
+
+            // 워밍업
+            median(() -> orderService.order(memberId, itemId, 1));
+            median(() -> orderWithLoadedHistory(memberId, itemId));
+
+            long current = median(() -> orderService.order(memberId, itemId, 1));
+            long loaded = median(() -> orderWithLoadedHistory(memberId, itemId));
+            System.out.printf("history %6d orders: order %.2f ms, with loaded member.orders %.2f ms%n",
+                    history, current / 1_000_000.0, loaded / 1_000_000.0);
+        }
+    }
+
+    private Long orderWithLoadedHistory(Long memberId, Long itemId) {
+        return transactionTemplate.execute(status -> {
+            em.find(Member.class, memberId).getOrders().size();
+            return orderService.order(memberId, itemId, 1);
+        });
+    }
+
+    // RUNS 번 실행한 시간의 중앙값 (ns)
+    private long median(Runnable order) {
+        long[] elapsed = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            order.run();
+            elapsed[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(elapsed);
+        return elapsed[RUNS / 2];
+    }
+
+    private Long seedMember(int history, Long itemId) {
+        Long memberId = transactionTemplate.execute(status -> {
+            Member member = new Member();
+            member.setName("bench-" + System.nanoTime());
+            member.setAddress(new Address("서울", "1", "1111"));
+            em.persist(member);
+            return member.getId();
+        });
+
+        int chunk = 1000;
+        for (int done = 0; done < history; done += chunk) {
+            int size = Math.min(chunk, history - done);
+            transactionTemplate.executeWithoutResult(status -> {
+                Member member = em.find(Member.class, memberId);
+                Item item = em.find(Item.class, itemId);
+                for (int i = 0; i < size; i++) {
+                    Delivery delivery = new Delivery();
+                    delivery.setAddress(member.getAddress());
+                    em.persist(Order.createOrder(member, delivery, OrderItem.createOrderItem(item, item.getPrice(), 1)));
+                }
+                em.flush();
+                em.clear();
+            });
+        }
+        assertEquals(history, (long) transactionTemplate.execute(status ->
+                em.createQuery("select count(o) from Order o where o.member.id = :memberId", Long.class)
+                        .setParameter("memberId", memberId)
+                        .getSingleResult()));
+        return memberId;
+    }
+}
@@ -0,0 +1,211 @@
+package jpabook.jpashop;
+
+import jpabook.jpashop.domain.item.Address;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.domain.item.Member;
+import jpabook.jpashop.exception.NotEnoughStockException;
+import jpabook.jpashop.service.OrderIntakePipeline;
+import jpabook.jpashop.service.OrderService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 주문 모아서 처리하기 - 재고보다 많이 팔리지 않는지 + (-Dbenchmark=true) 주문마다 처리하는 방식과 처리량/p99 비교
+ * ex) ./gradlew test --tests "*OrderIntakePipelineTest" -Dbenchmark=true
+ */
+@SpringBootTest(properties = "jpashop.order-intake.enabled=true")
+public class OrderIntakePipelineTest {
+
+    private static final int THREADS = 16;
+
+    @Autowired
+    OrderIntakePipeline orderIntakePipeline;
+    @Autowired
+    OrderService orderService;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Test
+    public void 모아서주문_재고초과_판매없음() throws Exception {
+        //given
+        Long[] ids = createMemberAndItem(300);
+
+        //when 재고 300개에 400건 주문
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            futures.add(orderIntakePipeline.submit(ids[0], ids[1], 1));
+        }
+
+        //then
+        int success = 0;
+        int soldOut = 0;
+        for (CompletableFuture<Long> future : futures) {
+            try {
+                assertNotNull(future.get(10, TimeUnit.SECONDS));
+                success++;
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof NotEnoughStockException);
+                soldOut++;
+            }
+        }
+        Item item = transactionTemplate.execute(status -> em.find(Item.class, ids[1]));
+        assertEquals(300, success);
+        assertEquals(100, soldOut);
+        assertEquals(0, item.getStockQuantity());
+    }
+
+    @Test
+    public void 없는회원_주문실패() {
+        //given
+        Long[] ids = createMemberAndItem(10);
+
+        //when
+        CompletableFuture<Long> future = orderIntakePipeline.submit(-1L, ids[1], 1);
+
+        //then
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalArgumentException);
+        Item item = transactionTemplate.execute(status -> em.find(Item.class, ids[1]));
+        assertEquals(10, item.getStockQuantity(), "재고가 차감되면 안된다");
+    }
+
+    @Test
+    public void 수량0이하_접수거절() {
+        //given
+        Long[] ids = createMemberAndItem(10);
+
+        //when
+        CompletableFuture<Long> zero = orderIntakePipeline.submit(ids[0], ids[1], 0);
+        CompletableFuture<Long> negative = orderIntakePipeline.submit(ids[0], ids[1], -5);
+
+        //then
+        for (CompletableFuture<Long> future : List.of(zero, negative)) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        Item item = transactionTemplate.execute(status -> em.find(Item.class, ids[1]));
+        assertEquals(10, item.getStockQuantity(), "재고가 늘어나면 안된다");
+    }
+
+    @Test
+    public void 여러상품_주문은_상품id순서로_재고를_잠근다() throws Exception {
+        //given 상품 두 개 (first < second)
+        Long[] first = createMemberAndItem(10);
+        Long[] second = createMemberAndItem(10);
+
+        //when 다른 트랜잭션이 first 를 잠근 사이에 second, first 순서로 들어온 주문을 모아서 처리
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            lockItem(first[1]);
+            futures.add(orderIntakePipeline.submit(first[0], second[1], 1));
+            futures.add(orderIntakePipeline.submit(first[0], first[1], 1));
+            sleep(300);
+
+            //then 모아서 처리하는 쪽이 first 를 기다리는 동안 second 는 잠그지 않았다 (잠갔으면 여기서 교착상태)
+            lockItem(second[1]);
+        });
+        for (CompletableFuture<Long> future : futures) {
+            assertNotNull(future.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    public void 인기상품_주문_처리량_비교() throws Exception {
+        int orders = Integer.getInteger("benchmark.orders", 4000);
+
+        Long[] perRequest = createMemberAndItem(orders);
+        Result direct = run(orders, () -> orderService.order(perRequest[0], perRequest[1], 1));
+
+        Long[] grouped = createMemberAndItem(orders);
+        Result pipeline = run(orders, () -> orderIntakePipeline.submit(grouped[0], grouped[1], 1).get());
+
+        System.out.printf("per-request: %.0f orders/sec, p99 %.2f ms%n", direct.throughput, direct.p99Millis);
+        System.out.printf("group-commit: %.0f orders/sec, p99 %.2f ms%n", pipeline.throughput, pipeline.p99Millis);
+    }
+
+    private Result run(int orders, Callable<Long> placeOrder) throws Exception {
+        long[] latencies = new long[orders];
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = thread; i < orders; i += THREADS) {
+                    long begin = System.nanoTime();
+                    assertNotNull(placeOrder.call());
+                    latencies[i] = System.nanoTime() - begin;
+                }
+                return null;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+
+        Arrays.sort(latencies);
+        return new Result(orders / (elapsed / 1_000_000_000.0),
+                latencies[(int) (orders * 0.99) - 1] / 1_000_000.0);
+    }
+
+    // 재고 row 잠그기 (값은 그대로)
+    private void lockItem(Long itemId) {
+        em.createQuery("update Item i set i.stockQuantity = i.stockQuantity where i.id = :id")
+                .setParameter("id", itemId)
+                .executeUpdate();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Long[] createMemberAndItem(int stock) {
+        return transactionTemplate.execute(status -> {
+            Member member = new Member();
+            member.setName("모아서주문-" + System.nanoTime());
+            member.setAddress(new Address("서울", "강가", "01234"));
+            em.persist(member);
+
+            Book book = new Book();
+            book.setName("HOT BOOK");
+            book.setPrice(10000);
+            book.setStockQuantity(stock);
+            em.persist(book);
+            return new Long[]{member.getId(), book.getId()};
+        });
+    }
+
+    private static class Result {
+        private final double throughput;
+        private final double p99Millis;
+
+        private Result(double throughput, double p99Millis) {
+            this.throughput = throughput;
+            this.p99Millis = p99Millis;
+        }
+    }
+}
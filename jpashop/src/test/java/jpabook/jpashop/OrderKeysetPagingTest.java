@@ -0,0 +1,114 @@
+package jpabook.jpashop;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jpabook.jpashop.service.OrderService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * V3.1 키셋 페이징 - 같은 orderDate 의 주문이 페이지 경계에 걸쳐도 order_id 로 이어서 빠짐/중복 없이
+ * 별도 메모리 DB 에서 실행 (다른 테스트의 주문이 섞이지 않게)
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create",
+        "spring.datasource.url=jdbc:h2:tcp://localhost/mem:keyset-paging;DB_CLOSE_DELAY=-1"})
+@AutoConfigureMockMvc
+public class OrderKeysetPagingTest {
+
+    @Autowired
+    MockMvc mockMvc;
+    @Autowired
+    ObjectMapper objectMapper;
+    @Autowired
+    TestFixtures fixtures;
+    @Autowired
+    OrderService orderService;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Test
+    public void 같은_주문시각이_페이지에_걸쳐도_빠짐_중복없이() throws Exception {
+        //given - 주문 10건을 주문시각 2개로 묶는다 (5건씩 같은 시각)
+        Long memberId = fixtures.createMember("keyset-");
+        Long bookId = fixtures.createBook(100);
+        List<Long> created = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            created.add(orderService.order(memberId, bookId, 1));
+        }
+        LocalDateTime first = LocalDateTime.of(2020, 1, 1, 0, 0);
+        sameOrderDate(created.subList(0, 5), first.plusHours(1));
+        sameOrderDate(created.subList(5, 10), first);
+        List<Long> expected = transactionTemplate.execute(status ->
+                em.createQuery("select o.id from Order o order by o.orderDate, o.id", Long.class).getResultList());
+
+        //when - 3건씩 next 를 따라간다 (같은 시각 5건이 페이지 경계에 걸침)
+        List<Long> walked = new ArrayList<>();
+        String after = "";
+        int pages = 0;
+        while (after != null) {
+            String body = mockMvc.perform(get("/api/v3.1/orders").param("after", after).param("limit", "3"))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            JsonNode page = objectMapper.readTree(body);
+            page.get("data").forEach(order -> walked.add(order.get("orderId").asLong()));
+            after = page.get("next").isNull() ? null : page.get("next").asText();
+            pages++;
+            assertTrue(pages <= expected.size() + 1, "next 가 끝나지 않음");
+        }
+
+        //then
+        assertEquals(expected, walked, "(orderDate, order_id) 순서 그대로");
+        assertEquals(walked.size(), new HashSet<>(walked).size(), "중복 없음");
+        assertTrue(walked.containsAll(created), "빠진 주문 없음");
+        assertEquals(created.subList(5, 10), walked.subList(0, 5), "같은 시각이면 order_id 순서");
+    }
+
+    @Test
+    public void 잘못된_limit과_커서는_400_큰_limit은_줄인다() throws Exception {
+        //given
+        Long memberId = fixtures.createMember("keyset-limit-");
+        Long bookId = fixtures.createBook(100);
+        orderService.order(memberId, bookId, 1);
+        orderService.order(memberId, bookId, 1);
+
+        //when
+        //then
+        mockMvc.perform(get("/api/v3.1/orders").param("after", "").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/v3.1/orders").param("after", "").param("limit", "-5"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/v3.1/orders").param("after", "not-a-cursor"))
+                .andExpect(status().isBadRequest());
+        String body = mockMvc.perform(get("/api/v3.1/orders").param("after", "").param("limit", "2000000000"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        JsonNode page = objectMapper.readTree(body);
+        assertTrue(page.get("data").size() >= 2);
+        assertTrue(page.get("next").isNull(), "전체가 한 페이지에 들어오면 다음 페이지 없음");
+    }
+
+    private void sameOrderDate(List<Long> orderIds, LocalDateTime orderDate) {
+        transactionTemplate.executeWithoutResult(status ->
+                em.createQuery("update Order o set o.orderDate = :orderDate where o.id in :ids")
+                        .setParameter("orderDate", orderDate)
+                        .setParameter("ids", orderIds)
+                        .executeUpdate());
+    }
+}
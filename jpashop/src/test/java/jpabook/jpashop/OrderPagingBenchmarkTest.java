@@ -0,0 +1,114 @@
+package jpabook.jpashop;
+
+import jpabook.jpashop.domain.item.*;
+import jpabook.jpashop.repository.OrderCursor;
+import jpabook.jpashop.repository.OrderRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * offset 페이징 vs 키셋 페이징 - 뒤쪽 페이지(기본 1000 페이지) 조회 시간 비교
+ * 데이터를 많이 넣기 때문에 -Dbenchmark=true 일 때만 실행
+ * ex) ./gradlew test --tests "*OrderPagingBenchmarkTest" -Dbenchmark=true -Dbenchmark.page=1000
+ */
+@SpringBootTest
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class OrderPagingBenchmarkTest {
+
+    private static final int LIMIT = 100;
+    private static final int RUNS = 20;
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    OrderRepository orderRepository;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Test
+    public void 뒤쪽페이지_조회시간_비교() throws Exception {
+        int page = Integer.getInteger("benchmark.page", 1000);
+        int offset = (page - 1) * LIMIT;
+        seedOrders(offset + LIMIT);
+
+        // 키셋 모드에서 page 번째 페이지를 요청할 때 넘어오는 커서 (측정 제외)
+        OrderCursor cursor = transactionTemplate.execute(status -> {
+            Order last = em.createQuery("select o from Order o order by o.orderDate, o.id", Order.class)
+                    .setFirstResult(offset - 1)
+                    .setMaxResults(1)
+                    .getSingleResult();
+            return OrderCursor.of(last);
+        });
+
+        long offsetNanos = median(() -> orderRepository.findAllWithMemberDelivery(offset, LIMIT));
+        long keysetNanos = median(() -> orderRepository.findAllWithMemberDelivery(cursor, LIMIT));
+
+        System.out.printf("page %d (limit %d) offset paging: %.2f ms, keyset paging: %.2f ms%n",
+                page, LIMIT, offsetNanos / 1_000_000.0, keysetNanos / 1_000_000.0);
+        assertTrue(keysetNanos < offsetNanos);
+    }
+
+    private long median(Supplier<List<Order>> pageQuery) {
+        long[] elapsed = new long[RUNS];
+        for (int i = 0; i < RUNS + 5; i++) {
+            long start = System.nanoTime();
+            List<Order> orders = transactionTemplate.execute(status -> pageQuery.get());
+            long took = System.nanoTime() - start;
+            assertEquals(LIMIT, orders.size());
+            if (i >= 5) { // 앞의 5번은 워밍업
+                elapsed[i - 5] = took;
+            }
+        }
+        Arrays.sort(elapsed);
+        return elapsed[RUNS / 2];
+    }
+
+    private void seedOrders(int required) {
+        Long count = transactionTemplate.execute(status ->
+                em.createQuery("select count(o) from Order o", Long.class).getSingleResult());
+        int missing = (int) (required - count);
+        if (missing <= 0) {
+            return;
+        }
+
+        Long[] ids = transactionTemplate.execute(status -> {
+            Member member = new Member();
+            member.setName("bench-" + System.nanoTime());
+            member.setAddress(new Address("서울", "1", "1111"));
+            em.persist(member);
+
+            Book book = new Book();
+            book.setName("BENCH BOOK");
+            book.setPrice(10000);
+            book.setStockQuantity(Integer.MAX_VALUE);
+            em.persist(book);
+            return new Long[]{member.getId(), book.getId()};
+        });
+
+        int chunk = 1000;
+        for (int done = 0; done < missing; done += chunk) {
+            int size = Math.min(chunk, missing - done);
+            transactionTemplate.executeWithoutResult(status -> {
+                Member member = em.find(Member.class, ids[0]);
+                Item item = em.find(Item.class, ids[1]);
+                for (int i = 0; i < size; i++) {
+                    Delivery delivery = new Delivery();
+                    delivery.setAddress(member.getAddress());
+                    em.persist(Order.createOrder(member, delivery, OrderItem.createOrderItem(item, item.getPrice(), 1)));
+                }
+                em.flush();
+                em.clear();
+            });
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package jpabook.jpashop;
+
+import jpabook.jpashop.domain.item.Member;
+import jpabook.jpashop.domain.item.Order;
+import jpabook.jpashop.domain.item.OrderStatus;
+import jpabook.jpashop.repository.OrderRepository;
+import jpabook.jpashop.repository.OrderSearch;
+import jpabook.jpashop.repository.support.QueryShapeCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.util.StringUtils;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 주문 동적 검색 - 매번 CriteriaQuery 를 만들 때(기존) vs 조건 조합별 JPQL 캐시(QueryShapeCache)
+ * 여러 스레드에서 네 가지 조건 조합을 돌아가며 검색하고, 검색 1번당 스레드 CPU 시간을 비교한다.
+ * 조회 결과가 작아야 쿼리 준비 비용이 보이므로 InitDB 데이터만 있는 별도 메모리 DB 에서 실행
+ * -Dbenchmark=true 일 때만 실행
+ * ex) ./gradlew test --tests "*OrderSearchQueryBenchmarkTest" -Dbenchmark=true -Dbenchmark.searches=20000
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create",
+        "spring.datasource.url=jdbc:h2:tcp://localhost/mem:order-search-benchmark;DB_CLOSE_DELAY=-1"})
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class OrderSearchQueryBenchmarkTest {
+
+    private static final int THREADS = 4;
+
+    @Autowired
+    EntityManager em;
+    @Autowired
+    OrderRepository orderRepository;
+
+    @Test
+    public void 검색1번당_CPU시간_비교() throws Exception {
+        int searches = Integer.getInteger("benchmark.searches", 20000);
+        List<OrderSearch> shapes = shapes();
+        for (OrderSearch search : shapes) {
+            assertEquals(criteriaSearch(search).size(), orderRepository.findAllByCriteria(search).size());
+        }
+
+        // 워밍업
+        run(shapes, searches / 4, this::criteriaSearch);
+        run(shapes, searches / 4, orderRepository::findAllByCriteria);
+
+        double criteria = run(shapes, searches, this::criteriaSearch);
+        QueryShapeCache cache = orderRepository.getSearchQueryCache();
+        long hits = cache.getHitCount();
+        long misses = cache.getMissCount();
+        double cached = run(shapes, searches, orderRepository::findAllByCriteria);
+
+        System.out.printf("%d threads x %d searches: criteria %.1f us cpu/search, shape cache %.1f us cpu/search (%.0f%% less)%n",
+                THREADS, searches, criteria, cached, (1 - cached / criteria) * 100);
+        System.out.printf("shape cache: %d shapes, hit ratio %.4f (this run: %d hits, %d misses)%n",
+                cache.size(), cache.getHitRatio(), cache.getHitCount() - hits, cache.getMissCount() - misses);
+        assertTrue(cached < criteria);
+    }
+
+    // 스레드마다 searches 번 검색하고, 검색 1번당 평균 CPU 시간(us)
+    private double run(List<OrderSearch> shapes, int searches, Function<OrderSearch, List<Order>> search) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        AtomicLong cpuNanos = new AtomicLong();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    long start = threads.getCurrentThreadCpuTime();
+                    for (int i = 0; i < searches; i++) {
+                        search.apply(shapes.get(i % shapes.size()));
+                    }
+                    cpuNanos.addAndGet(threads.getCurrentThreadCpuTime() - start);
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return cpuNanos.get() / 1000.0 / ((long) THREADS * searches);
+    }
+
+    // 상태/이름 조건이 없음, 상태만, 이름만, 둘 다
+    private List<OrderSearch> shapes() {
+        List<OrderSearch> shapes = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            OrderSearch search = new OrderSearch();
+            search.setOrderStatus((i & 1) != 0 ? OrderStatus.ORDER : null);
+            search.setMemberName((i & 2) != 0 ? "userA" : null);
+            shapes.add(search);
+        }
+        return shapes;
+    }
+
+    // 기존 findAllByCriteria - 호출할 때마다 CriteriaQuery 를 새로 만든다
+    private List<Order> criteriaSearch(OrderSearch orderSearch) {
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaQuery<Order> cq = cb.createQuery(Order.class);
+        Root<Order> o = cq.from(Order.class);
+        Join<Order, Member> m = o.join("member", JoinType.INNER);
+        List<Predicate> criteria = new ArrayList<>();
+        if (orderSearch.getOrderStatus() != null) {
+            criteria.add(cb.equal(o.get("status"), orderSearch.getOrderStatus()));
+        }
+        if (StringUtils.hasText(orderSearch.getMemberName())) {
+            criteria.add(cb.like(m.<String>get("name"), "%" + orderSearch.getMemberName() + "%"));
+        }
+        cq.where(cb.and(criteria.toArray(new Predicate[criteria.size()])));
+        return em.createQuery(cq).setMaxResults(1000).getResultList();
+    }
+}
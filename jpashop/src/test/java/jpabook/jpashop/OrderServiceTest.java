@@ -4,6 +4,7 @@ import jpabook.jpashop.domain.item.*;
 import jpabook.jpashop.exception.NotEnoughStockException;
 import jpabook.jpashop.repository.OrderRepository;
 import jpabook.jpashop.service.OrderService;
+import org.hibernate.Hibernate;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -62,6 +63,16 @@ public class OrderServiceTest {
         });
     }
 
+    @Test
+    public void 없는상품_주문() throws Exception {
+        //given
+        Member member = createMember();
+
+        //when
+        //then 재고 부족이 아니라 없는 상품
+        assertThrows(IllegalArgumentException.class, () -> orderService.order(member.getId(), Long.MAX_VALUE, 1));
+    }
+
     @Test
     public void 주문취소() throws Exception {
         //given
@@ -79,6 +90,29 @@ public class OrderServiceTest {
         assertEquals(10, item.getStockQuantity());
     }
 
+    @Test
+    public void 주문할때_회원의_주문이력은_로딩하지않음() throws Exception {
+        //given 주문 이력이 있는 회원
+        Member member = createMember();
+        Book item = createBook("JPA", 10000, 10);
+        orderService.order(member.getId(), item.getId(), 1);
+        orderService.order(member.getId(), item.getId(), 1);
+        em.flush();
+        em.clear();
+
+        //when
+        Long orderId = orderService.order(member.getId(), item.getId(), 1);
+
+        //then 회원의 주문 컬렉션은 로딩되지 않고, 나중에 로딩하면 새 주문까지 보인다
+        Member findMember = em.find(Member.class, member.getId());
+        assertFalse(Hibernate.isInitialized(findMember.getOrders()));
+        assertEquals(3, findMember.getOrders().size());
+        em.flush();
+        em.clear();
+        assertTrue(em.find(Member.class, member.getId()).getOrders().stream()
+                .anyMatch(o -> o.getId().equals(orderId)));
+    }
+
     private Member createMember() {
         Member member = new Member();
         member.setName("회원");
@@ -0,0 +1,177 @@
+package jpabook.jpashop;
+
+import jpabook.jpashop.domain.item.*;
+import jpabook.jpashop.repository.MemberSpendRepository;
+import jpabook.jpashop.repository.OrderRepository;
+import jpabook.jpashop.service.OrderLine;
+import jpabook.jpashop.service.OrderService;
+import jpabook.jpashop.service.OrderTotalsRepairJob;
+import org.hibernate.Hibernate;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 주문 금액(orders.total_price)과 회원별 합계(member_spend) - 합계는 커밋 직전에 반영되므로 @Transactional 을 걸지 않는다.
+ * 다른 테스트 데이터와 섞이지 않도록 별도 메모리 DB 에서 실행
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create",
+        "spring.datasource.url=jdbc:h2:tcp://localhost/mem:order-totals;DB_CLOSE_DELAY=-1",
+        "jpashop.totals-repair.partitions=3",
+        "jpashop.totals-repair.threads=2"})
+public class OrderTotalsTest {
+
+    @Autowired
+    TestFixtures fixtures;
+    @Autowired
+    OrderService orderService;
+    @Autowired
+    OrderRepository orderRepository;
+    @Autowired
+    MemberSpendRepository memberSpendRepository;
+    @Autowired
+    OrderTotalsRepairJob orderTotalsRepairJob;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+    @Autowired
+    EntityManager em;
+
+    @Test
+    public void 주문_취소할때_금액과_회원합계() throws Exception {
+        //given
+        Long memberId = fixtures.createMember("totals-");
+        Long itemId = fixtures.createBook("TOTALS BOOK", 10000, 100);
+
+        //when
+        Long orderId1 = orderService.order(memberId, itemId, 2);
+        Long orderId2 = orderService.order(memberId, itemId, 3);
+        orderService.cancelOrder(orderId1);
+
+        //then 주문 금액은 주문상품을 로딩하지 않고 읽고, 합계에서는 취소한 주문이 빠진다
+        transactionTemplate.executeWithoutResult(status -> {
+            Order order = orderRepository.findOne(orderId2);
+            assertEquals(30000, order.getTotalPrice());
+            assertFalse(Hibernate.isInitialized(order.getOrderItems()));
+            assertEquals(20000, orderRepository.findOne(orderId1).getTotalPrice());
+        });
+        MemberSpend spend = spend(memberId);
+        assertEquals(30000, spend.getTotalSpent());
+        assertEquals(1, spend.getOrderCount());
+        assertThrows(IllegalStateException.class, () -> orderService.cancelOrder(orderId1));
+    }
+
+    @Test
+    public void 일괄주문_회원별_합계() throws Exception {
+        //given
+        Long memberA = fixtures.createMember("totals-");
+        Long memberB = fixtures.createMember("totals-");
+        Long itemId = fixtures.createBook("TOTALS BOOK", 1000, 100);
+
+        //when
+        orderService.orderBatch(List.of(
+                new OrderLine(memberA, itemId, 1),
+                new OrderLine(memberB, itemId, 2),
+                new OrderLine(memberA, itemId, 3)));
+
+        //then
+        assertEquals(4000, spend(memberA).getTotalSpent());
+        assertEquals(2, spend(memberA).getOrderCount());
+        assertEquals(2000, spend(memberB).getTotalSpent());
+        assertEquals(1, spend(memberB).getOrderCount());
+    }
+
+    @Test
+    public void 첫주문이_동시에_커밋돼도_합계행_하나() throws Exception {
+        //given 주문이 없는 회원들, 스레드마다 다른 상품 (상품 재고 락 때문에 주문이 줄 서지 않도록)
+        int threads = 8;
+        int members = 10;
+        List<Long> itemIds = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            itemIds.add(fixtures.createBook("TOTALS BOOK", 1000, members));
+        }
+        List<Long> memberIds = new ArrayList<>();
+        for (int m = 0; m < members; m++) {
+            memberIds.add(fixtures.createMember("totals-first-"));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        //when 회원마다 첫 주문을 스레드 수만큼 동시에
+        try {
+            for (Long memberId : memberIds) {
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<?>> futures = new ArrayList<>();
+                for (Long itemId : itemIds) {
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        return orderService.order(memberId, itemId, 1);
+                    }));
+                }
+                start.countDown();
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        //then 주문이 하나도 실패하지 않고, 합계 행 하나에 모두 더해진다
+        for (Long memberId : memberIds) {
+            assertEquals(1000L * threads, spend(memberId).getTotalSpent());
+            assertEquals(threads, spend(memberId).getOrderCount());
+        }
+    }
+
+    @Test
+    public void 어긋난_금액과_합계_다시계산() throws Exception {
+        //given 주문 금액, 회원 합계를 SQL 로 망가뜨리고 한 회원은 합계 행을 지운다
+        Long memberA = fixtures.createMember("totals-");
+        Long memberB = fixtures.createMember("totals-");
+        Long itemId = fixtures.createBook("TOTALS BOOK", 1000, 100);
+        Long orderId = orderService.order(memberA, itemId, 2);
+        orderService.order(memberA, itemId, 1);
+        orderService.order(memberB, itemId, 5);
+        transactionTemplate.executeWithoutResult(status -> {
+            em.createNativeQuery("update orders set total_price = 1 where order_id = :id")
+                    .setParameter("id", orderId).executeUpdate();
+            em.createNativeQuery("update member_spend set order_count = 7 where member_id = :id")
+                    .setParameter("id", memberA).executeUpdate();
+            em.createNativeQuery("delete from member_spend where member_id = :id")
+                    .setParameter("id", memberB).executeUpdate();
+        });
+
+        //when
+        OrderTotalsRepairJob.RepairResult result = orderTotalsRepairJob.repair();
+
+        //then
+        assertEquals(3, result.getPartitions());
+        assertTrue(result.getOrdersFixed() >= 1);
+        assertTrue(result.getSpendFixed() >= 1);
+        assertTrue(result.getSpendInserted() >= 1);
+        assertEquals(0, result.getRemaining());
+        assertEquals(2000, (int) transactionTemplate.execute(status -> orderRepository.findOne(orderId).getTotalPrice()));
+        assertEquals(3000, spend(memberA).getTotalSpent());
+        assertEquals(2, spend(memberA).getOrderCount());
+        assertEquals(5000, spend(memberB).getTotalSpent());
+
+        // 이미 맞으면 고치는 행이 없다
+        OrderTotalsRepairJob.RepairResult again = orderTotalsRepairJob.repair();
+        assertEquals(0, again.getOrdersFixed() + again.getSpendFixed() + again.getSpendInserted());
+    }
+
+    private MemberSpend spend(Long memberId) {
+        return transactionTemplate.execute(status -> memberSpendRepository.findOne(memberId));
+    }
+}
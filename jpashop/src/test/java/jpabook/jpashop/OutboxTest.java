@@ -0,0 +1,182 @@
+package jpabook.jpashop;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jpabook.jpashop.domain.item.*;
+import jpabook.jpashop.exception.NotEnoughStockException;
+import jpabook.jpashop.outbox.FileOutboxSink;
+import jpabook.jpashop.outbox.InMemoryOutboxSink;
+import jpabook.jpashop.outbox.OutboxRelay;
+import jpabook.jpashop.outbox.OutboxSink;
+import jpabook.jpashop.repository.OutboxRepository;
+import jpabook.jpashop.service.OrderLine;
+import jpabook.jpashop.service.OrderService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 주문 이벤트 outbox + 릴레이
+ * 별도 메모리 DB, 묶음 3건. 예약 실행은 사실상 끄고(주기 1시간) relay() 를 직접 호출한다.
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create",
+        "spring.datasource.url=jdbc:h2:tcp://localhost/mem:outbox;DB_CLOSE_DELAY=-1",
+        "jpashop.outbox.sink=memory",
+        "jpashop.outbox.relay.batch-size=3",
+        "jpashop.outbox.relay.poll-interval-ms=3600000"})
+public class OutboxTest {
+
+    @Autowired
+    OrderService orderService;
+    @Autowired
+    OutboxRepository outboxRepository;
+    @Autowired
+    OutboxRelay outboxRelay;
+    @Autowired
+    InMemoryOutboxSink sink;
+    @Autowired
+    MeterRegistry meterRegistry;
+    @Autowired
+    ObjectMapper objectMapper;
+    @Autowired
+    TestFixtures fixtures;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    public void drain() {
+        outboxRelay.relay();
+        sink.clear();
+    }
+
+    @Test
+    public void 주문_취소와_같은_트랜잭션으로_쌓인다() throws Exception {
+        //given
+        Long member = fixtures.createMember("outbox-");
+        Long book = fixtures.createBook(5);
+
+        //when
+        Long orderId = orderService.order(member, book, 2);
+        orderService.cancelOrder(orderId);
+        assertThrows(NotEnoughStockException.class, () -> orderService.order(member, book, 6));
+
+        //then
+        List<OutboxEvent> events = pending();
+        assertEquals(2, events.size(), "실패한 주문은 이벤트도 롤백");
+        assertEquals(OutboxEventType.ORDER_CREATED, events.get(0).getType());
+        assertEquals(OutboxEventType.ORDER_CANCELLED, events.get(1).getType());
+        assertEquals(orderId, events.get(1).getOrderId());
+        JsonNode created = objectMapper.readTree(events.get(0).getPayload());
+        assertEquals(member.longValue(), created.get("memberId").asLong());
+        assertEquals(20000, created.get("totalPrice").asInt());
+    }
+
+    @Test
+    public void 릴레이는_묶음으로_보내고_지운다() throws Exception {
+        //given
+        Long member = fixtures.createMember("outbox-");
+        Long book = fixtures.createBook(100);
+        List<Long> ids = orderService.orderBatch(List.of(
+                new OrderLine(member, book, 1),
+                new OrderLine(member, book, 1),
+                new OrderLine(member, book, 1),
+                new OrderLine(member, book, 1)));
+        orderService.cancelOrders(ids.subList(0, 3));
+        double before = meterRegistry.get("jpashop.outbox.relayed").counter().count();
+        long batchesBefore = meterRegistry.get("jpashop.outbox.relay.batch").timer().count();
+
+        //when
+        int relayed = outboxRelay.relay();
+
+        //then
+        assertEquals(7, relayed);
+        assertEquals(0L, (long) transactionTemplate.execute(status -> outboxRepository.count()));
+        assertEquals(7, meterRegistry.get("jpashop.outbox.relayed").counter().count() - before);
+        assertEquals(3, meterRegistry.get("jpashop.outbox.relay.batch").timer().count() - batchesBefore, "3 + 3 + 1 건");
+        assertEquals(0, meterRegistry.get("jpashop.outbox.lag").timeGauge().value());
+
+        List<OutboxEvent> received = sink.getEvents();
+        for (Long orderId : ids.subList(0, 3)) {
+            List<OutboxEventType> types = received.stream()
+                    .filter(e -> e.getOrderId().equals(orderId))
+                    .map(OutboxEvent::getType)
+                    .collect(toList());
+            assertEquals(List.of(OutboxEventType.ORDER_CREATED, OutboxEventType.ORDER_CANCELLED), types, "주문별 순서");
+        }
+    }
+
+    @Test
+    public void 전송에_실패하면_지우지_않고_다음에_같은_이벤트부터() throws Exception {
+        //given
+        Long member = fixtures.createMember("outbox-");
+        Long book = fixtures.createBook(100);
+        orderService.orderBatch(List.of(
+                new OrderLine(member, book, 1),
+                new OrderLine(member, book, 1),
+                new OrderLine(member, book, 1),
+                new OrderLine(member, book, 1)));
+        List<Long> expected = pending().stream().map(OutboxEvent::getId).collect(toList());
+
+        AtomicInteger calls = new AtomicInteger();
+        List<Long> received = new ArrayList<>();
+        OutboxSink failsSecondBatch = events -> {
+            if (calls.incrementAndGet() == 2) {
+                throw new IllegalStateException("브로커 연결 실패");
+            }
+            events.forEach(e -> received.add(e.getId()));
+        };
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        OutboxRelay relay = new OutboxRelay(outboxRepository, failsSecondBatch, transactionTemplate, registry, 3);
+
+        //when
+        int first = relay.relay();
+        int second = relay.relay();
+
+        //then
+        assertEquals(3, first, "첫 묶음만 보내고 멈춤");
+        assertEquals(1, registry.get("jpashop.outbox.relay.failures").counter().count());
+        assertTrue(registry.get("jpashop.outbox.lag").timeGauge().value() >= 0);
+        assertEquals(1, second);
+        assertEquals(expected, received, "빠지거나 순서가 바뀐 이벤트 없음");
+        assertEquals(0L, (long) transactionTemplate.execute(status -> outboxRepository.count()));
+    }
+
+    @Test
+    public void 파일로_보내기(@TempDir Path dir) throws Exception {
+        //given
+        Long member = fixtures.createMember("outbox-");
+        Long book = fixtures.createBook(10);
+        Long orderId = orderService.order(member, book, 1);
+        FileOutboxSink fileSink = new FileOutboxSink(dir.resolve("events/order-events.ndjson").toString(), objectMapper);
+
+        //when
+        fileSink.publish(pending());
+
+        //then
+        List<String> lines = Files.readAllLines(fileSink.getFile(), StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        JsonNode line = objectMapper.readTree(lines.get(0));
+        assertEquals("ORDER_CREATED", line.get("type").asText());
+        assertEquals(orderId.longValue(), line.get("payload").get("orderId").asLong());
+    }
+
+    private List<OutboxEvent> pending() {
+        return transactionTemplate.execute(status -> outboxRepository.findOldest(100));
+    }
+}
@@ -0,0 +1,55 @@
+package jpabook.jpashop;
+
+import jpabook.jpashop.domain.PooledSequenceIdGenerator;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 기존 데이터가 있는 DB 에 ddl-auto: update 로 붙을 때 - jpashop_seq 가 1부터면 InitDB 부터 PK 충돌
+ * 스프링 컨텍스트(하이버네이트)가 뜨기 전에 회원 테이블과 시작값 1인 시퀀스를 미리 만들어 둔다.
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=update",
+        "spring.datasource.url=" + PooledSequenceSeederTest.URL})
+public class PooledSequenceSeederTest {
+
+    static final String URL = "jdbc:h2:tcp://localhost/mem:sequence-seed;DB_CLOSE_DELAY=-1";
+    static final long EXISTING_MAX_ID = 120;
+
+    @Autowired
+    TestFixtures fixtures;
+
+    @BeforeAll
+    static void existingDatabase() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute("drop all objects");
+            statement.execute("create table member (member_id bigint not null primary key, name varchar(255))");
+            for (long id = 1; id < EXISTING_MAX_ID; id += 7) {
+                statement.execute("insert into member (member_id, name) values (" + id + ", 'existing-" + id + "')");
+            }
+            statement.execute("insert into member (member_id, name) values (" + EXISTING_MAX_ID + ", 'existing-max')");
+            statement.execute("create sequence " + PooledSequenceIdGenerator.SEQUENCE_NAME + " start with 1 increment by 50");
+        }
+    }
+
+    @Test
+    public void 시퀀스가_기존_최대id_뒤에서_시작() {
+        //given - 컨텍스트가 떴다 = InitDB 가 PK 충돌 없이 회원/상품/주문을 넣었다
+
+        //when
+        Long memberId = fixtures.createMember("seed-");
+
+        //then
+        assertTrue(memberId > EXISTING_MAX_ID, "기존 최대 id 다음부터: " + memberId);
+    }
+}
@@ -0,0 +1,205 @@
+package jpabook.jpashop;
+
+import jpabook.jpashop.controller.OrderApiController;
+import jpabook.jpashop.domain.item.*;
+import jpabook.jpashop.repository.support.ReadOnlyQueryAspect;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * V3 / V3.1 주문 조회 - @ReadOnlyQuery 끔(기존) vs 켬
+ * OSIV 처럼 트랜잭션 없이 영속성 컨텍스트를 열어둔 채로 컨트롤러를 호출하고
+ * - 요청 1번당 스레드 CPU 시간
+ * - 응답을 만든 뒤 요청이 끝나기 전까지 영속성 컨텍스트가 붙잡고 있는 힙 (GC 후 사용량 차이, 응답 DTO 는 제외)
+ * 을 비교한다. 주문을 많이 넣으므로 별도 메모리 DB 에서 -Dbenchmark=true 일 때만 실행
+ * ex) ./gradlew test --tests "*ReadOnlyQueryBenchmarkTest" -Dbenchmark=true -Dbenchmark.orders=2000
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create",
+        "spring.datasource.url=jdbc:h2:tcp://localhost/mem:read-only-query-benchmark;DB_CLOSE_DELAY=-1"})
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class ReadOnlyQueryBenchmarkTest {
+
+    private static final int LINES_PER_ORDER = 3;
+    private static final int REQUESTS = 20;
+    private static final int ROUNDS = 5;
+    private static final int HEAP_RUNS = 5;
+    private static final int CONTEXTS = 10;
+
+    @Autowired
+    OrderApiController orderApiController;
+    @Autowired
+    ReadOnlyQueryAspect readOnlyQueryAspect;
+    @Autowired
+    EntityManagerFactory emf;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Test
+    public void V3_요청1번당_CPU시간과_영속성컨텍스트_힙_비교() {
+        int orders = Integer.getInteger("benchmark.orders", 2000);
+        seedOrders(orders);
+        int total = orderApiController.ordersV3().size();
+
+        compare("v3", total, orderApiController::ordersV3);
+        compare("v3.1", total, () -> orderApiController.ordersV3_page(0, total, new ServletWebRequest(new MockHttpServletRequest())));
+    }
+
+    private void compare(String endpoint, int orders, Supplier<List<?>> request) {
+        // 워밍업
+        for (int i = 0; i < REQUESTS / 2; i++) {
+            setEnabled(false);
+            openSessionInView(request);
+            setEnabled(true);
+            openSessionInView(request);
+        }
+
+        // 끔/켬을 번갈아 측정해서 JIT, GC 상태 변화가 한쪽에만 몰리지 않게 한다
+        double cpuOff = 0;
+        double cpuOn = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            setEnabled(false);
+            cpuOff += cpuPerRequest(request) / ROUNDS;
+            setEnabled(true);
+            cpuOn += cpuPerRequest(request) / ROUNDS;
+        }
+        setEnabled(false);
+        long heapOff = retainedHeap(request);
+        setEnabled(true);
+        long heapOn = retainedHeap(request);
+
+        System.out.printf("%s (%d orders): cpu %.2f ms -> %.2f ms/request (%.0f%% less), " +
+                        "persistence context heap %d KB -> %d KB (%.0f%% less)%n",
+                endpoint, orders, cpuOff, cpuOn, (1 - cpuOn / cpuOff) * 100,
+                heapOff / 1024, heapOn / 1024, (1 - (double) heapOn / heapOff) * 100);
+        assertTrue(heapOn < heapOff);
+    }
+
+    // 요청 1번당 평균 CPU 시간(ms)
+    private double cpuPerRequest(Supplier<List<?>> request) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long start = threads.getCurrentThreadCpuTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            openSessionInView(request);
+        }
+        return (threads.getCurrentThreadCpuTime() - start) / 1_000_000.0 / REQUESTS;
+    }
+
+    // 응답을 만든 직후 영속성 컨텍스트 하나가 붙잡고 있는 힙
+    // GC 오차에 묻히지 않도록 요청 CONTEXTS 개의 영속성 컨텍스트를 동시에 열어둔 상태와 모두 닫은 뒤를 비교해서 나눈다 (중앙값)
+    private long retainedHeap(Supplier<List<?>> request) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long[] retained = new long[HEAP_RUNS];
+        for (int run = 0; run < HEAP_RUNS; run++) {
+            List<EntityManager> open = new ArrayList<>();
+            long used;
+            try {
+                for (int i = 0; i < CONTEXTS; i++) {
+                    EntityManager em = emf.createEntityManager();
+                    open.add(em);
+                    TransactionSynchronizationManager.bindResource(emf, new EntityManagerHolder(em));
+                    try {
+                        request.get();
+                    } finally {
+                        TransactionSynchronizationManager.unbindResource(emf);
+                    }
+                }
+                used = usedAfterGc(memory);
+            } finally {
+                open.forEach(EntityManager::close);
+            }
+            retained[run] = (used - usedAfterGc(memory)) / CONTEXTS;
+        }
+        Arrays.sort(retained);
+        return retained[HEAP_RUNS / 2];
+    }
+
+    private static long usedAfterGc(MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    // 요청 하나 동안 트랜잭션 없이 영속성 컨텍스트를 열어두는 OSIV 필터 흉내
+    private void openSessionInView(Supplier<List<?>> request) {
+        EntityManager em = emf.createEntityManager();
+        TransactionSynchronizationManager.bindResource(emf, new EntityManagerHolder(em));
+        try {
+            request.get();
+        } finally {
+            TransactionSynchronizationManager.unbindResource(emf);
+            em.close();
+        }
+    }
+
+    private void setEnabled(boolean enabled) {
+        ReflectionTestUtils.setField(readOnlyQueryAspect, "enabled", enabled);
+    }
+
+    // 회원 100명, 상품 50개, 주문마다 상품 3개
+    private void seedOrders(int orders) {
+        Long[] itemIds = transactionTemplate.execute(status -> {
+            Long[] ids = new Long[50];
+            for (int i = 0; i < ids.length; i++) {
+                Book book = new Book();
+                book.setName("BENCH BOOK " + i);
+                book.setPrice(10000 + i * 100);
+                book.setStockQuantity(Integer.MAX_VALUE);
+                em.persist(book);
+                ids[i] = book.getId();
+            }
+            return ids;
+        });
+
+        int chunk = 500;
+        for (int done = 0; done < orders; done += chunk) {
+            int from = done;
+            int size = Math.min(chunk, orders - done);
+            transactionTemplate.executeWithoutResult(status -> {
+                Member[] members = new Member[100];
+                for (int i = 0; i < members.length; i++) {
+                    members[i] = new Member();
+                    members[i].setName("bench-" + from + "-" + i);
+                    members[i].setAddress(new Address("서울", String.valueOf(i), "1111"));
+                    em.persist(members[i]);
+                }
+                for (int i = 0; i < size; i++) {
+                    Member member = members[i % members.length];
+                    Delivery delivery = new Delivery();
+                    delivery.setAddress(member.getAddress());
+                    OrderItem[] lines = new OrderItem[LINES_PER_ORDER];
+                    for (int l = 0; l < LINES_PER_ORDER; l++) {
+                        Item item = em.find(Item.class, itemIds[(from + i + l * 17) % itemIds.length]);
+                        lines[l] = OrderItem.createOrderItem(item, item.getPrice(), 1);
+                    }
+                    em.persist(Order.createOrder(member, delivery, lines));
+                }
+                em.flush();
+                em.clear();
+            });
+        }
+    }
+}
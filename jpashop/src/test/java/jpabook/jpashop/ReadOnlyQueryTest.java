@@ -0,0 +1,128 @@
+package jpabook.jpashop;
+
+import jpabook.jpashop.controller.OrderApiController;
+import jpabook.jpashop.domain.item.Address;
+import jpabook.jpashop.domain.item.Order;
+import jpabook.jpashop.repository.OrderRepository;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @ReadOnlyQuery - OSIV 로 트랜잭션 밖에서 조회하는 V3 엔티티 조회는 읽기 전용으로, 읽기-쓰기 트랜잭션 안의 조회는 그대로
+ * InitDB 데이터만 있는 별도 메모리 DB 에서 실행
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create",
+        "spring.datasource.url=jdbc:h2:tcp://localhost/mem:read-only-query;DB_CLOSE_DELAY=-1"})
+public class ReadOnlyQueryTest {
+
+    @Autowired
+    OrderApiController orderApiController;
+    @Autowired
+    OrderRepository orderRepository;
+    @Autowired
+    EntityManagerFactory emf;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Test
+    public void 트랜잭션밖_V3_조회는_읽기전용() {
+        openSessionInView(em -> {
+            Session session = em.unwrap(Session.class);
+
+            //when
+            assertFalse(orderApiController.ordersV3().isEmpty());
+            orderApiController.ordersV3_page(0, 100, new ServletWebRequest(new MockHttpServletRequest()));
+
+            //then
+            // DTO 로 바꾸면서 지연 로딩한 주문상품/상품까지 읽기 전용, 끝나면 Session 설정은 원래대로
+            List<Object> entities = managedEntities(session);
+            assertFalse(entities.isEmpty());
+            for (Object entity : entities) {
+                assertTrue(session.isReadOnly(entity), entity::toString);
+            }
+            assertFalse(session.isDefaultReadOnly());
+            assertEquals(FlushMode.AUTO, session.getHibernateFlushMode());
+            return null;
+        });
+    }
+
+    @Test
+    public void 트랜잭션밖_리포지토리_조회는_뒤에서_수정할수있다() {
+        //given - 같은 요청(OSIV)에서 리포지토리로 읽은 주문을
+        Long orderId = openSessionInView(em -> {
+            Session session = em.unwrap(Session.class);
+            Order order = orderRepository.findAllWithItem().get(0);
+            assertFalse(session.isReadOnly(order), "리포지토리 조회만으로 읽기 전용이 되면 안 된다");
+
+            //when - 뒤쪽 쓰기 트랜잭션에서 고치면 (같은 영속성 컨텍스트에 참여)
+            transactionTemplate.executeWithoutResult(status ->
+                    order.getDelivery().setAddress(new Address("부산", "해운대", "48000")));
+            return order.getId();
+        });
+
+        //then
+        EntityManager other = emf.createEntityManager();
+        try {
+            assertEquals("48000", other.find(Order.class, orderId).getDelivery().getAddress().getZipcode());
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void 읽기쓰기_트랜잭션안의_조회는_그대로() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Session session = em.unwrap(Session.class);
+
+            //when
+            List<Order> orders = orderRepository.findAllWithItem();
+
+            //then
+            assertFalse(orders.isEmpty());
+            for (Order order : orders) {
+                assertFalse(session.isReadOnly(order));
+            }
+            assertEquals(FlushMode.AUTO, session.getHibernateFlushMode());
+        });
+    }
+
+    // 요청 하나 동안 트랜잭션 없이 영속성 컨텍스트를 열어두는 OSIV 필터 흉내
+    private <T> T openSessionInView(Function<EntityManager, T> request) {
+        EntityManager em = emf.createEntityManager();
+        TransactionSynchronizationManager.bindResource(emf, new EntityManagerHolder(em));
+        try {
+            return request.apply(em);
+        } finally {
+            TransactionSynchronizationManager.unbindResource(emf);
+            em.close();
+        }
+    }
+
+    private static List<Object> managedEntities(Session session) {
+        return Arrays.stream(session.unwrap(SessionImplementor.class).getPersistenceContext().reentrantSafeEntityEntries())
+                .map(Map.Entry::getKey)
+                .collect(toList());
+    }
+}
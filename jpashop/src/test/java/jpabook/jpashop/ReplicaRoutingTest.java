@@ -0,0 +1,210 @@
+package jpabook.jpashop;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jpabook.jpashop.config.ReplicaBalancing;
+import jpabook.jpashop.config.ReplicaRoutingDataSource;
+import jpabook.jpashop.domain.item.Member;
+import jpabook.jpashop.service.MemberService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.persistence.EntityManager;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 읽기 전용 트랜잭션은 복제 DB 로, 쓰기와 쓴 직후의 읽기는 원본으로
+ * 로컬 H2 서버의 메모리 DB 3개 (원본 1, 복제 2). 복제는 replicate() 로 원본을 통째로 복사해서 흉내낸다.
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create",
+        "spring.datasource.url=jdbc:h2:tcp://localhost/mem:routing-primary;DB_CLOSE_DELAY=-1",
+        "jpashop.datasource.replica-urls=jdbc:h2:tcp://localhost/mem:routing-replica-1;DB_CLOSE_DELAY=-1,"
+                + "jdbc:h2:tcp://localhost/mem:routing-replica-2;DB_CLOSE_DELAY=-1",
+        "jpashop.datasource.read-your-writes-window-ms=300"})
+@AutoConfigureMockMvc
+@Import(ReplicaRoutingTest.ReadThenWriteController.class)
+public class ReplicaRoutingTest {
+
+    @Autowired
+    ReplicaRoutingDataSource routing;
+    @Autowired
+    MemberService memberService;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    MeterRegistry meterRegistry;
+    @Autowired
+    MockMvc mockMvc;
+
+    @BeforeEach
+    public void replicate() throws SQLException {
+        List<String> script = new ArrayList<>();
+        try (Connection connection = routing.getPrimary().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("script")) {
+            while (rs.next()) {
+                script.add(rs.getString(1));
+            }
+        }
+        for (HikariDataSource replica : routing.getReplicas()) {
+            try (Connection connection = replica.getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("drop all objects");
+                for (String sql : script) {
+                    statement.execute(sql);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void 읽기전용은_복제DB_돌아가면서() {
+        Set<String> readOnly = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            readOnly.add(database(true));
+        }
+
+        assertEquals(Set.of("ROUTING-REPLICA-1", "ROUTING-REPLICA-2"), readOnly);
+        assertEquals("ROUTING-PRIMARY", database(false));
+        assertTrue(meterRegistry.get("jpashop.datasource.connections")
+                .tag("route", "replica-1").tag("reason", "read-only").counter().count() > 0);
+        assertNotNull(meterRegistry.get("hikaricp.connections.active").tag("pool", "replica-2").gauge());
+    }
+
+    @Test
+    public void 쓴_직후에는_같은_스레드의_읽기도_원본() throws Exception {
+        //given
+        Member member = new Member();
+        member.setName("routing-" + System.nanoTime());
+
+        //when
+        Long memberId = memberService.join(member);
+
+        //then
+        // 같은 스레드: read-your-writes 시간 동안 원본에서 읽음
+        assertNotNull(memberService.findOne(memberId));
+        // 다른 스레드: 아직 복제되지 않은 복제 DB 에서 읽음
+        assertNull(CompletableFuture.supplyAsync(() -> memberService.findOne(memberId)).get());
+
+        // 시간이 지나면 같은 스레드도 복제 DB, 복제된 뒤에는 보임
+        Thread.sleep(400);
+        assertNull(memberService.findOne(memberId));
+        replicate();
+        assertNotNull(memberService.findOne(memberId));
+    }
+
+    @Test
+    public void 사용중인_커넥션이_적은_복제DB() throws Exception {
+        //given
+        ReplicaRoutingDataSource leastOutstanding = new ReplicaRoutingDataSource(routing.getPrimary(),
+                routing.getReplicas(), ReplicaBalancing.of("least-outstanding"), 0, new SimpleMeterRegistry());
+        TransactionTemplate readOnly = readOnlyTemplate();
+
+        //when
+        // replica-1 커넥션 2개를 잡고 있는 동안
+        try (Connection busy1 = routing.getReplicas().get(0).getConnection();
+             Connection busy2 = routing.getReplicas().get(0).getConnection()) {
+            assertEquals(List.of("ROUTING-REPLICA-1", "ROUTING-REPLICA-1"), List.of(busy1.getCatalog(), busy2.getCatalog()));
+            List<String> routed = readOnly.execute(status -> {
+                List<String> names = new ArrayList<>();
+                for (int i = 0; i < 3; i++) {
+                    try (Connection connection = leastOutstanding.getConnection()) {
+                        names.add(connection.unwrap(Connection.class).getCatalog());
+                    } catch (SQLException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return names;
+            });
+
+            //then
+            assertEquals(List.of("ROUTING-REPLICA-2", "ROUTING-REPLICA-2", "ROUTING-REPLICA-2"), routed);
+        }
+    }
+
+    @Test
+    public void OSIV_한요청에서_읽은뒤_쓰기도_원본() throws Exception {
+        //given 복제된 회원
+        Member member = new Member();
+        member.setName("routing-" + System.nanoTime());
+        Long memberId = transactionTemplate.execute(status -> {
+            em.persist(member);
+            return member.getId();
+        });
+        replicate();
+
+        //when 한 요청에서 읽기 전용 트랜잭션(복제 DB) 다음에 쓰기 트랜잭션
+        String name = member.getName() + "-renamed";
+        mockMvc.perform(post("/test/members/{id}/rename/{name}", memberId, name))
+                .andExpect(status().isOk());
+
+        //then 쓰기는 원본에
+        assertEquals(name, memberName(routing.getPrimary(), memberId));
+        for (HikariDataSource replica : routing.getReplicas()) {
+            assertEquals(member.getName(), memberName(replica, memberId));
+        }
+    }
+
+    private static String memberName(HikariDataSource dataSource, Long memberId) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("select name from member where member_id = ?")) {
+            statement.setLong(1, memberId);
+            try (ResultSet rs = statement.executeQuery()) {
+                assertTrue(rs.next());
+                return rs.getString(1);
+            }
+        }
+    }
+
+    private String database(boolean readOnly) {
+        TransactionTemplate template = readOnly ? readOnlyTemplate() : transactionTemplate;
+        return template.execute(status -> (String) em.createNativeQuery("select database()").getSingleResult());
+    }
+
+    private TransactionTemplate readOnlyTemplate() {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnly.setReadOnly(true);
+        return readOnly;
+    }
+
+    // 읽기 전용 서비스 호출 다음에 쓰기 서비스 호출 (OSIV 라 요청 내내 같은 EntityManager)
+    @RestController
+    static class ReadThenWriteController {
+
+        @Autowired
+        MemberService memberService;
+
+        @PostMapping("/test/members/{id}/rename/{name}")
+        public Long rename(@PathVariable Long id, @PathVariable String name) {
+            Member member = memberService.findOne(id);
+            memberService.update(member.getId(), name);
+            return id;
+        }
+    }
+}
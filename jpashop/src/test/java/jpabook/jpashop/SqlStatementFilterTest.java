@@ -0,0 +1,97 @@
+package jpabook.jpashop;
+
+import jpabook.jpashop.domain.item.Member;
+import jpabook.jpashop.exception.StatementBudgetExceededException;
+import jpabook.jpashop.monitoring.SqlStatementFilter;
+import jpabook.jpashop.monitoring.StatementBudget;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * 요청별 SQL 문 수 헤더, N+1 감지, @StatementBudget
+ * InitDB 의 주문 2건만 있는 별도 메모리 DB 에서 실행 (주문 수에 따라 문장 수가 달라지므로)
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create",
+        "spring.datasource.url=jdbc:h2:tcp://localhost/mem:sql-stats;DB_CLOSE_DELAY=-1",
+        "jpashop.sql-stats.enabled=true",
+        "jpashop.sql-stats.fail-on-budget-exceeded=true",
+        "jpashop.sql-stats.n-plus-one-threshold=2"})
+@AutoConfigureMockMvc
+@Import(SqlStatementFilterTest.BudgetTestController.class)
+public class SqlStatementFilterTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Test
+    public void 주문마다_컬렉션조회_N플러스1_감지() throws Exception {
+        // V4: 주문 1번 + 주문마다 주문상품 1번
+        mockMvc.perform(get("/api/v4/orders"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(SqlStatementFilter.COUNT_HEADER, "3"))
+                .andExpect(header().string(SqlStatementFilter.N_PLUS_ONE_HEADER, "1"))
+                .andExpect(header().exists(SqlStatementFilter.TIME_HEADER));
+    }
+
+    @Test
+    public void 페치조인은_예산안에서_1번() throws Exception {
+        mockMvc.perform(get("/api/v3/orders"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(SqlStatementFilter.COUNT_HEADER, "1"))
+                .andExpect(header().doesNotExist(SqlStatementFilter.N_PLUS_ONE_HEADER));
+        mockMvc.perform(get("/api/v3.1/orders").param("limit", "10"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(SqlStatementFilter.COUNT_HEADER, "3"));
+    }
+
+    @Test
+    public void 다른스레드에서_실행한_조회도_집계() throws Exception {
+        // V5.1: 주문 조회와 주문상품 조회를 별도 커넥션에서 동시에 실행
+        MvcResult result = mockMvc.perform(get("/api/v5.1/orders")
+                        .param("fromId", "1").param("toId", String.valueOf(Long.MAX_VALUE)))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        assertEquals("2", result.getResponse().getHeader(SqlStatementFilter.COUNT_HEADER));
+    }
+
+    @Test
+    public void 예산초과면_요청실패() throws Exception {
+        Exception e = assertThrows(Exception.class, () -> mockMvc.perform(get("/test/statement-budget")));
+
+        assertTrue(e instanceof StatementBudgetExceededException || e.getCause() instanceof StatementBudgetExceededException);
+    }
+
+    @RestController
+    static class BudgetTestController {
+
+        @Autowired
+        EntityManager em;
+
+        // 허용 1문인데 2문 실행
+        @StatementBudget(1)
+        @GetMapping("/test/statement-budget")
+        public int overBudget() {
+            List<Member> first = em.createQuery("select m from Member m where m.name = :name", Member.class)
+                    .setParameter("name", "userA").getResultList();
+            List<Member> second = em.createQuery("select m from Member m where m.name = :name", Member.class)
+                    .setParameter("name", "userB").getResultList();
+            return first.size() + second.size();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package jpabook.jpashop;
+
+import jpabook.jpashop.domain.item.Address;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Item;
+import jpabook.jpashop.domain.item.Member;
+import jpabook.jpashop.exception.NotEnoughStockException;
+import jpabook.jpashop.service.OrderService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 한 상품에 동시 주문이 몰릴 때 재고보다 많이 팔리지 않는지 확인
+ * (초당 주문 수는 OrderIntakePipelineTest 벤치마크에서 -Dbenchmark=true 로 측정)
+ * 실제 커밋된 데이터로 여러 스레드가 경쟁해야 하므로 @Transactional 을 걸지 않는다.
+ */
+@SpringBootTest
+public class StockConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int ORDERS_PER_THREAD = 25;
+    private static final int STOCK = 300;
+
+    @Autowired
+    TestFixtures fixtures;
+    @Autowired
+    OrderService orderService;
+    @Autowired
+    EntityManager em;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Test
+    public void 동시주문_재고초과_판매없음() throws Exception {
+        //given
+        Long[] ids = transactionTemplate.execute(status -> {
+            Member member = new Member();
+            member.setName("동시주문-" + System.nanoTime());
+            member.setAddress(new Address("서울", "강가", "01234"));
+            em.persist(member);
+
+            Book book = new Book();
+            book.setName("HOT BOOK");
+            book.setPrice(10000);
+            book.setStockQuantity(STOCK);
+            em.persist(book);
+            return new Long[]{member.getId(), book.getId()};
+        });
+
+        AtomicInteger success = new AtomicInteger();
+        AtomicInteger soldOut = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        //when 재고 300개에 400건 주문
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ORDERS_PER_THREAD; i++) {
+                    try {
+                        orderService.order(ids[0], ids[1], 1);
+                        success.incrementAndGet();
+                    } catch (NotEnoughStockException e) {
+                        soldOut.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        //then
+        Item item = transactionTemplate.execute(status -> em.find(Item.class, ids[1]));
+        assertEquals(STOCK, success.get());
+        assertEquals(THREADS * ORDERS_PER_THREAD - STOCK, soldOut.get());
+        assertEquals(0, item.getStockQuantity());
+    }
+
+    @Test
+    public void 동시_주문_취소_재고유실없음() throws Exception {
+        //given
+        Long memberId = fixtures.createMember("동시취소-");
+        Long itemId = fixtures.createBook(STOCK);
+        int half = THREADS / 2;
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        //when 절반은 주문만, 절반은 주문하고 바로 취소
+        for (int t = 0; t < THREADS; t++) {
+            boolean cancel = t < half;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ORDERS_PER_THREAD / 2; i++) {
+                    Long orderId = orderService.order(memberId, itemId, 1);
+                    if (cancel) {
+                        orderService.cancelOrder(orderId);
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        //then 취소가 상품 재고를 읽은 값 기준으로 덮어쓰면 그 사이의 차감이 사라져서 재고가 남는다
+        Item item = transactionTemplate.execute(status -> em.find(Item.class, itemId));
+        assertEquals(STOCK - half * (ORDERS_PER_THREAD / 2), item.getStockQuantity());
+    }
+
+    @Test
+    public void 같은_주문_동시취소_재고는_한번만_복구() throws Exception {
+        //given 주문 여러 건 (건마다 두 스레드가 동시에 취소)
+        int orders = 20;
+        Long memberId = fixtures.createMember("동시같은취소-");
+        Long itemId = fixtures.createBook(STOCK);
+        List<Long> orderIds = new ArrayList<>();
+        for (int i = 0; i < orders; i++) {
+            orderIds.add(orderService.order(memberId, itemId, 1));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        AtomicInteger cancelled = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        //when
+        try {
+            for (Long orderId : orderIds) {
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < 2; t++) {
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        try {
+                            orderService.cancelOrder(orderId);
+                            cancelled.incrementAndGet();
+                        } catch (IllegalStateException e) {
+                            rejected.incrementAndGet();
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        //then 건마다 한쪽만 취소되고, 재고는 주문 수량만큼만 돌아온다
+        Item item = transactionTemplate.execute(status -> em.find(Item.class, itemId));
+        assertEquals(orders, cancelled.get());
+        assertEquals(orders, rejected.get());
+        assertEquals(STOCK, item.getStockQuantity());
+    }
+}
@@ -0,0 +1,55 @@
+package jpabook.jpashop;
+
+import jpabook.jpashop.domain.item.Address;
+import jpabook.jpashop.domain.item.Book;
+import jpabook.jpashop.domain.item.Member;
+import jpabook.jpashop.service.ItemService;
+import jpabook.jpashop.service.MemberService;
+import org.springframework.stereotype.Component;
+
+/**
+ * 테스트 공통 데이터 (회원, 상품)
+ * create* 는 서비스로 저장해서 각자 커밋된 상태로 만든다 (테스트에 @Transactional 이 있으면 그 트랜잭션에 참여)
+ * member/book 은 저장하지 않은 엔티티만 만든다 (직접 persist 하는 테스트용)
+ */
+@Component
+public class TestFixtures {
+
+    private final MemberService memberService;
+    private final ItemService itemService;
+
+    public TestFixtures(MemberService memberService, ItemService itemService) {
+        this.memberService = memberService;
+        this.itemService = itemService;
+    }
+
+    // 이름이 겹치지 않게 namePrefix 뒤에 현재 시각(ns)을 붙인다 (회원 이름 중복 검증)
+    public Long createMember(String namePrefix) {
+        return memberService.join(member(namePrefix + System.nanoTime()));
+    }
+
+    public Long createBook(String name, int price, int stock) {
+        Book book = book(name, price, stock);
+        itemService.saveItem(book);
+        return book.getId();
+    }
+
+    public Long createBook(int stock) {
+        return createBook("TEST BOOK", 10000, stock);
+    }
+
+    public static Member member(String name) {
+        Member member = new Member();
+        member.setName(name);
+        member.setAddress(new Address("서울", "강가", "01234"));
+        return member;
+    }
+
+    public static Book book(String name, int price, int stock) {
+        Book book = new Book();
+        book.setName(name);
+        book.setPrice(price);
+        book.setStockQuantity(stock);
+        return book;
+    }
+}